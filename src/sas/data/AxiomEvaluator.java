@@ -0,0 +1,385 @@
+package sas.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Evaluates the axioms of a problem to determine the value of all derived predicates in a state. Axioms
+ * are evaluated one layer (stratum) at a time, in ascending order. Within a layer, a worklist is used so that
+ * only axioms whose conditions may have changed are re-tested.
+ * <p>
+ * A dependency index from each variable to the axioms which have a condition on it is built once. When
+ * a state is produced by applying an action to a state whose derived predicates are already correct,
+ * only those derived predicates which depend (transitively) on a variable changed by the action are
+ * reset and recomputed.
+ * <p>
+ * Once built, the indices are never modified, so a single instance may be used by many threads at once,
+ * provided they evaluate distinct state instances. The queues and marks used during an evaluation are held
+ * in a {@link Workspace} created for each thread on its first evaluation.
+ *
+ * @author David Pattison
+ * @see SASProblem#getAxiomState(SASState)
+ * @see SASProblem#getSuccessorState(SASState, SASAction)
+ */
+public class AxiomEvaluator
+{
+	private final SASProblem problem;
+
+	//axioms, sorted by layer
+	private final SASAxiom[] axioms;
+	private final int[] axiomLayer;
+	private final int[] headVar, headValue;
+	private final int[][] conditionVars, conditionValues;
+	private final int[] layerStart; //index of the first axiom in each layer, plus an end marker
+
+	//derived predicates, with their default values
+	private final int[] derivedVars;
+	private final int[] defaultValues; //indexed by variable ID, -1 if not derived
+
+	//var -> axioms with a condition on it
+	private final int[][] axiomsByCondition;
+	//var -> derived vars whose axioms have a condition on it
+	private final int[][] dependentDerivedVars;
+
+	private final ThreadLocal<Workspace> workspaces; //the scratch buffers of each thread using this object
+
+	/**
+	 * Builds the evaluator for all axioms and derived predicates in the problem.
+	 * @param problem
+	 */
+	public AxiomEvaluator(SASProblem problem)
+	{
+		this.problem = problem;
+
+		int maxVar = -1;
+		for (Integer id : problem.variables.keySet())
+		{
+			maxVar = Math.max(maxVar, id);
+		}
+		int varCount = maxVar + 1;
+
+		//flatten axioms in layer order
+		List<SASAxiom> sorted = new ArrayList<SASAxiom>();
+		List<Integer> layers = new ArrayList<Integer>();
+		for (Entry<Integer, Map<Integer, SASAxiom>> layer : problem.axioms.entrySet())
+		{
+			for (SASAxiom ax : layer.getValue().values())
+			{
+				sorted.add(ax);
+				layers.add(layer.getKey());
+			}
+		}
+		//problem.axioms is not guaranteed to be sorted by layer, so do it here
+		Integer[] order = new Integer[sorted.size()];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		final List<Integer> layerRef = layers;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return layerRef.get(a).compareTo(layerRef.get(b));
+			}
+		});
+
+		int count = sorted.size();
+		this.axioms = new SASAxiom[count];
+		this.axiomLayer = new int[count];
+		this.headVar = new int[count];
+		this.headValue = new int[count];
+		this.conditionVars = new int[count][];
+		this.conditionValues = new int[count][];
+
+		List<Integer> starts = new ArrayList<Integer>();
+		for (int i = 0; i < count; i++)
+		{
+			SASAxiom ax = sorted.get(order[i]);
+			this.axioms[i] = ax;
+			this.axiomLayer[i] = layers.get(order[i]);
+			if (i == 0 || this.axiomLayer[i] != this.axiomLayer[i - 1])
+				starts.add(i);
+
+			int[] effVars = ax.getEffectVariables();
+			if (effVars.length != 1)
+				throw new IllegalArgumentException("Axiom "+ax+" must have exactly one effect, found "+effVars.length);
+
+			this.headVar[i] = effVars[0];
+			this.headValue[i] = ax.getEffectValues()[0];
+
+			//the effect's precondition is the default value of the head, which is not a real condition
+			Map<Integer, Integer> conditions = new HashMap<Integer, Integer>();
+			int[] pcVars = ax.getPreconditionVariables();
+			int[] pcVals = ax.getPreconditionValues();
+			for (int p = 0; p < pcVars.length; p++)
+			{
+				if (pcVars[p] != this.headVar[i] || ax.getEffectConditions().containsKey(pcVars[p]))
+					conditions.put(pcVars[p], pcVals[p]);
+			}
+			conditions.putAll(ax.getAxiomCondition());
+
+			this.conditionVars[i] = new int[conditions.size()];
+			this.conditionValues[i] = new int[conditions.size()];
+			int c = 0;
+			for (Entry<Integer, Integer> e : conditions.entrySet())
+			{
+				this.conditionVars[i][c] = e.getKey();
+				this.conditionValues[i][c] = e.getValue();
+				++c;
+			}
+		}
+		starts.add(count);
+		this.layerStart = new int[starts.size()];
+		for (int i = 0; i < starts.size(); i++)
+			this.layerStart[i] = starts.get(i);
+
+		//derived predicates
+		this.defaultValues = new int[varCount];
+		Arrays.fill(this.defaultValues, -1);
+		List<Integer> derived = new ArrayList<Integer>();
+		for (SASVariable v : problem.variables.values())
+		{
+			if (v instanceof SASDerivedPredicate)
+			{
+				derived.add(v.getId());
+				this.defaultValues[v.getId()] = ((SASDerivedPredicate) v).getDefaultValue();
+			}
+		}
+		this.derivedVars = new int[derived.size()];
+		for (int i = 0; i < derived.size(); i++)
+			this.derivedVars[i] = derived.get(i);
+
+		//dependency indices
+		List<List<Integer>> byCondition = new ArrayList<List<Integer>>(varCount);
+		List<List<Integer>> dependents = new ArrayList<List<Integer>>(varCount);
+		for (int v = 0; v < varCount; v++)
+		{
+			byCondition.add(new ArrayList<Integer>());
+			dependents.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < count; i++)
+		{
+			for (int var : this.conditionVars[i])
+			{
+				byCondition.get(var).add(i);
+				if (dependents.get(var).contains(this.headVar[i]) == false)
+					dependents.get(var).add(this.headVar[i]);
+			}
+		}
+		this.axiomsByCondition = this.toArrays(byCondition);
+		this.dependentDerivedVars = this.toArrays(dependents);
+
+		final int axiomCount = count;
+		final int variableCount = varCount;
+		this.workspaces = new ThreadLocal<Workspace>()
+		{
+			@Override
+			protected Workspace initialValue()
+			{
+				return new Workspace(variableCount, axiomCount);
+			}
+		};
+	}
+
+	private int[][] toArrays(List<List<Integer>> lists)
+	{
+		int[][] arrays = new int[lists.size()][];
+		for (int i = 0; i < arrays.length; i++)
+		{
+			List<Integer> l = lists.get(i);
+			arrays[i] = new int[l.size()];
+			for (int j = 0; j < l.size(); j++)
+				arrays[i][j] = l.get(j);
+		}
+
+		return arrays;
+	}
+
+	/**
+	 * Returns true if the problem has any axioms.
+	 * @return
+	 */
+	public boolean hasAxioms()
+	{
+		return this.axioms.length > 0;
+	}
+
+	/**
+	 * Resets all derived predicates in the state to their default values and evaluates every axiom. The state
+	 * is modified.
+	 * @param state
+	 */
+	public void evaluate(SASState state)
+	{
+		Workspace ws = this.workspaces.get();
+		int stamp = ws.nextStamp();
+		for (int var : this.derivedVars)
+		{
+			ws.affectedStamp[var] = stamp;
+			state.setValue(var, this.defaultValues[var]);
+		}
+
+		this.evaluateAffected(state, ws, stamp);
+	}
+
+	/**
+	 * Updates the derived predicates in the state after the specified variables have changed. The state must
+	 * have had correct derived predicate values before the variables changed, for instance because it was
+	 * cloned from an evaluated state before an action was applied to it. Only derived predicates which depend
+	 * on the changed variables are recomputed. The state is modified.
+	 * @param state
+	 * @param changedVars The IDs of the variables whose values have changed.
+	 * @param changedCount The number of entries in changedVars to use.
+	 */
+	public void evaluate(SASState state, int[] changedVars, int changedCount)
+	{
+		if (this.axioms.length == 0)
+			return;
+
+		Workspace ws = this.workspaces.get();
+		int[] affectedStamp = ws.affectedStamp;
+		int[] varQueue = ws.varQueue;
+		int stamp = ws.nextStamp();
+
+		//find all derived predicates which depend on the changes, directly or otherwise
+		int head = 0, tail = 0;
+		for (int i = 0; i < changedCount; i++)
+		{
+			int var = changedVars[i];
+			if (var >= this.dependentDerivedVars.length)
+				continue;
+
+			for (int dep : this.dependentDerivedVars[var])
+			{
+				if (affectedStamp[dep] != stamp)
+				{
+					affectedStamp[dep] = stamp;
+					varQueue[tail++] = dep;
+				}
+			}
+		}
+		while (head < tail)
+		{
+			int var = varQueue[head++];
+			for (int dep : this.dependentDerivedVars[var])
+			{
+				if (affectedStamp[dep] != stamp)
+				{
+					affectedStamp[dep] = stamp;
+					varQueue[tail++] = dep;
+				}
+			}
+		}
+
+		if (tail == 0)
+			return;
+
+		for (int i = 0; i < tail; i++)
+		{
+			int var = varQueue[i];
+			state.setValue(var, this.defaultValues[var]);
+		}
+
+		this.evaluateAffected(state, ws, stamp);
+	}
+
+	/**
+	 * Evaluates all axioms whose head has been marked as affected with the specified stamp, layer by layer.
+	 */
+	private void evaluateAffected(SASState state, Workspace ws, int stamp)
+	{
+		int[] affectedStamp = ws.affectedStamp;
+		int[] queuedStamp = ws.queuedStamp;
+		int[] axiomQueue = ws.axiomQueue;
+		for (int l = 0; l < this.layerStart.length - 1; l++)
+		{
+			int head = 0, tail = 0;
+			for (int i = this.layerStart[l]; i < this.layerStart[l + 1]; i++)
+			{
+				if (affectedStamp[this.headVar[i]] == stamp)
+				{
+					queuedStamp[i] = stamp;
+					axiomQueue[tail++] = i;
+				}
+			}
+
+			//an axiom is never in the queue twice at once, so a circular buffer the size of the axiom set suffices
+			while (head < tail)
+			{
+				int ax = axiomQueue[head++ % axiomQueue.length];
+				queuedStamp[ax] = 0;
+
+				int var = this.headVar[ax];
+				if (state.getValueIndex(var) == this.headValue[ax] || this.isSatisfied(ax, state) == false)
+					continue;
+
+				if (state.containsVariable(var) == false)
+					state.addVariable(this.problem.variables.get(var));
+				state.setValue(var, this.headValue[ax]);
+
+				for (int dep : this.axiomsByCondition[var])
+				{
+					if (this.axiomLayer[dep] == this.axiomLayer[ax] && affectedStamp[this.headVar[dep]] == stamp
+							&& queuedStamp[dep] != stamp)
+					{
+						queuedStamp[dep] = stamp;
+						axiomQueue[tail++ % axiomQueue.length] = dep;
+					}
+				}
+			}
+		}
+	}
+
+	private boolean isSatisfied(int axiom, SASState state)
+	{
+		int[] vars = this.conditionVars[axiom];
+		int[] values = this.conditionValues[axiom];
+		for (int i = 0; i < vars.length; i++)
+		{
+			if (state.getValueIndex(vars[i]) != values[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * The queues and marks used by a single thread's evaluations, which are reused by each evaluation.
+	 */
+	private static class Workspace
+	{
+		final int[] affectedStamp; //indexed by variable ID
+		final int[] queuedStamp; //indexed by axiom
+		final int[] varQueue;
+		final int[] axiomQueue;
+		int stamp;
+
+		Workspace(int variableCount, int axiomCount)
+		{
+			this.affectedStamp = new int[variableCount];
+			this.queuedStamp = new int[axiomCount];
+			this.varQueue = new int[variableCount];
+			this.axiomQueue = new int[axiomCount];
+			this.stamp = 0;
+		}
+
+		int nextStamp()
+		{
+			//0 is reserved for unmarked entries
+			this.stamp++;
+			if (this.stamp <= 0)
+			{
+				Arrays.fill(this.affectedStamp, 0);
+				Arrays.fill(this.queuedStamp, 0);
+				this.stamp = 1;
+			}
+
+			return this.stamp;
+		}
+	}
+}
@@ -29,6 +29,7 @@ public class CausalGraph extends CachedStandardGraph<DomainTransitionGraph, Caus
 	private Map<Integer, DomainTransitionGraph> dtgs;
 	private Set<DomainTransitionGraph> leaves;
 	private HashSet<DomainTransitionGraph> roots;	
+	private volatile CompiledCausalGraph compiled; //built on first use, discarded when the graph changes
 	
 	public CausalGraph()//Map<Integer, DomainTransitionGraph> dtgs)
 	{
@@ -47,10 +48,80 @@ public class CausalGraph extends CachedStandardGraph<DomainTransitionGraph, Caus
 	@Override
 	public boolean addVertex(DomainTransitionGraph v)
 	{
+		this.compiled = null;
 		this.dtgs.put(v.getDTGIndex(), v);
 		return super.addVertex(v);
 	}
 	
+	@Override
+	public CausalGraphLink addEdge(DomainTransitionGraph sourceVertex, DomainTransitionGraph targetVertex)
+	{
+		this.compiled = null;
+		return super.addEdge(sourceVertex, targetVertex);
+	}
+	
+	@Override
+	public boolean addEdge(DomainTransitionGraph sourceVertex, DomainTransitionGraph targetVertex, CausalGraphLink e)
+	{
+		this.compiled = null;
+		return super.addEdge(sourceVertex, targetVertex, e);
+	}
+	
+	@Override
+	public boolean removeEdge(CausalGraphLink e)
+	{
+		this.compiled = null;
+		return super.removeEdge(e);
+	}
+	
+	@Override
+	public CausalGraphLink removeEdge(DomainTransitionGraph sourceVertex, DomainTransitionGraph targetVertex)
+	{
+		this.compiled = null;
+		return super.removeEdge(sourceVertex, targetVertex);
+	}
+	
+	@Override
+	public boolean removeVertex(DomainTransitionGraph v)
+	{
+		this.compiled = null;
+		return super.removeVertex(v);
+	}
+	
+	/**
+	 * Gets the compressed sparse row form of this causal graph and its DTGs, compiling it on the first call. 
+	 * It is discarded if vertices or edges are added to or removed from this graph, but changes made directly 
+	 * to the DTGs are not detected, so {@link #invalidateCompiledForm()} must be called after modifying them.
+	 * @return
+	 */
+	public CompiledCausalGraph getCompiledForm()
+	{
+		CompiledCausalGraph c = this.compiled;
+		if (c == null)
+		{
+			synchronized (this)
+			{
+				c = this.compiled;
+				if (c == null)
+				{
+					c = new CompiledCausalGraph(this);
+					this.compiled = c;
+				}
+			}
+		}
+		
+		return c;
+	}
+	
+	/**
+	 * Discards the compiled form of this graph, so that it is recompiled on next use.
+	 * @see #getCompiledForm()
+	 */
+	public void invalidateCompiledForm()
+	{
+		this.compiled = null;
+	}
+	
 	@Override
 	public Object clone()
 	{
@@ -0,0 +1,375 @@
+package sas.data;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable compressed sparse row (CSR) form of a {@link CausalGraph}, along with the {@link CompiledDTG} of
+ * each of its DTGs. Variables are identified by their ID, and the variables whose DTGs have an arc from variable v
+ * in the causal graph are {@link #getSuccessor(int)} for each index in the range [{@link #getSuccessorsBegin(int)},
+ * {@link #getSuccessorsEnd(int)}). Predecessors are laid out in the same way.
+ * <p>
+ * The strongly connected components of the graph are found by Tarjan's algorithm when it is compiled. Along with
+ * the arcs of the causal graph, there is an arc to each DTG's variable from the variable of every associated 
+ * precondition of its transitions, so any cycle followed by recursing through preconditions lies within a
+ * component. Each variable is given the topological level of its component in the DAG of components -- 0 if 
+ * no other component has an arc into it, otherwise one more than the greatest level of any such component.
+ * <p>
+ * A compiled causal graph does not reflect any later changes to the causal graph or its DTGs.
+ *
+ * @author David Pattison
+ * @see CausalGraph#getCompiledForm()
+ */
+public final class CompiledCausalGraph
+{
+	private final CompiledDTG[] dtgs; //indexed by variable ID, null if the CG has no DTG for the variable
+
+	private final int[] succOffsets, successors;
+	private final int[] predOffsets, predecessors;
+	
+	private final int[] components; //indexed by variable ID, numbered in reverse topological order
+	private final boolean[] cyclicComponents;
+	private final int[] levels; //indexed by variable ID
+	private final int levelCount;
+
+	/**
+	 * Compiles the causal graph and each of its DTGs.
+	 * @param cg
+	 */
+	public CompiledCausalGraph(CausalGraph cg)
+	{
+		int varCount = 0;
+		for (DomainTransitionGraph dtg : cg.getDTGs())
+			varCount = Math.max(varCount, dtg.getVariable().getId() + 1);
+
+		this.dtgs = new CompiledDTG[varCount];
+		for (DomainTransitionGraph dtg : cg.getDTGs())
+			this.dtgs[dtg.getVariable().getId()] = new CompiledDTG(dtg);
+
+		this.succOffsets = new int[varCount + 1];
+		this.predOffsets = new int[varCount + 1];
+		int succCount = 0, predCount = 0;
+		for (int v = 0; v < varCount; v++)
+		{
+			if (this.dtgs[v] == null)
+				continue;
+
+			DomainTransitionGraph dtg = this.dtgs[v].getDTG();
+			if (cg.containsVertex(dtg) == false)
+				continue;
+
+			succCount += cg.getOutgoingVertices(dtg).size();
+			predCount += cg.getIncomingVertices(dtg).size();
+		}
+
+		this.successors = new int[succCount];
+		this.predecessors = new int[predCount];
+		int succ = 0, pred = 0;
+		for (int v = 0; v < varCount; v++)
+		{
+			this.succOffsets[v] = succ;
+			this.predOffsets[v] = pred;
+			if (this.dtgs[v] == null)
+				continue;
+
+			DomainTransitionGraph dtg = this.dtgs[v].getDTG();
+			if (cg.containsVertex(dtg) == false)
+				continue;
+
+			succ = fill(cg.getOutgoingVertices(dtg), this.successors, succ);
+			pred = fill(cg.getIncomingVertices(dtg), this.predecessors, pred);
+		}
+		this.succOffsets[varCount] = succ;
+		this.predOffsets[varCount] = pred;
+		
+		this.components = new int[varCount];
+		this.levels = new int[varCount];
+		int[][] arcs = this.getDependencyArcs();
+		int componentCount = this.findComponents(arcs[0], arcs[1]);
+		this.cyclicComponents = new boolean[componentCount];
+		this.levelCount = this.findLevels(arcs[0], arcs[1], componentCount);
+	}
+	
+	/**
+	 * Gets the arcs searched for components, as an offset and target array in the same layout as the successors.
+	 */
+	private int[][] getDependencyArcs()
+	{
+		int varCount = this.dtgs.length;
+		int[] degree = new int[varCount];
+		for (int v = 0; v < varCount; v++)
+		{
+			degree[v] += this.getSuccessorsEnd(v) - this.getSuccessorsBegin(v);
+			if (this.dtgs[v] == null)
+				continue;
+			
+			for (int pc = 0; pc < this.dtgs[v].getPcCount(); pc++)
+			{
+				int u = this.dtgs[v].getPcVariable(pc);
+				if (u < varCount)
+					degree[u]++;
+			}
+		}
+		
+		int[] offsets = new int[varCount + 1];
+		for (int v = 0; v < varCount; v++)
+			offsets[v + 1] = offsets[v] + degree[v];
+		
+		int[] targets = new int[offsets[varCount]];
+		int[] next = Arrays.copyOf(offsets, varCount);
+		for (int v = 0; v < varCount; v++)
+		{
+			for (int i = this.getSuccessorsBegin(v); i < this.getSuccessorsEnd(v); i++)
+				targets[next[v]++] = this.getSuccessor(i);
+			
+			if (this.dtgs[v] == null)
+				continue;
+			
+			for (int pc = 0; pc < this.dtgs[v].getPcCount(); pc++)
+			{
+				int u = this.dtgs[v].getPcVariable(pc);
+				if (u < varCount)
+					targets[next[u]++] = v;
+			}
+		}
+		
+		return new int[][] { offsets, targets };
+	}
+	
+	/**
+	 * Finds the strongly connected components using an iterative form of Tarjan's algorithm, so that long 
+	 * chains of variables cannot overflow the stack. A component is numbered once every component reachable 
+	 * from it has been, so components are numbered in reverse topological order.
+	 * @return The number of components.
+	 */
+	private int findComponents(int[] offsets, int[] targets)
+	{
+		int varCount = this.dtgs.length;
+		int[] index = new int[varCount];
+		int[] low = new int[varCount];
+		int[] nextArc = new int[varCount];
+		boolean[] onStack = new boolean[varCount];
+		int[] stack = new int[varCount];
+		int[] callStack = new int[varCount];
+		Arrays.fill(index, -1);
+		
+		int counter = 0, top = 0, componentCount = 0;
+		for (int root = 0; root < varCount; root++)
+		{
+			if (index[root] >= 0)
+				continue;
+			
+			int calls = 0;
+			index[root] = low[root] = counter++;
+			nextArc[root] = offsets[root];
+			stack[top++] = root;
+			onStack[root] = true;
+			callStack[calls++] = root;
+			while (calls > 0)
+			{
+				int v = callStack[calls - 1];
+				if (nextArc[v] < offsets[v + 1])
+				{
+					int w = targets[nextArc[v]++];
+					if (index[w] < 0)
+					{
+						index[w] = low[w] = counter++;
+						nextArc[w] = offsets[w];
+						stack[top++] = w;
+						onStack[w] = true;
+						callStack[calls++] = w;
+					}
+					else if (onStack[w])
+					{
+						low[v] = Math.min(low[v], index[w]);
+					}
+					continue;
+				}
+				
+				//all arcs of v have been followed
+				calls--;
+				if (calls > 0)
+				{
+					int parent = callStack[calls - 1];
+					low[parent] = Math.min(low[parent], low[v]);
+				}
+				
+				if (low[v] == index[v])
+				{
+					int w;
+					do
+					{
+						w = stack[--top];
+						onStack[w] = false;
+						this.components[w] = componentCount;
+					}
+					while (w != v);
+					componentCount++;
+				}
+			}
+		}
+		
+		return componentCount;
+	}
+	
+	/**
+	 * Marks the cyclic components and finds the level of each variable.
+	 * @return The number of levels.
+	 */
+	private int findLevels(int[] offsets, int[] targets, int componentCount)
+	{
+		int varCount = this.dtgs.length;
+		
+		//group the variables by component, in topological order (decreasing component number)
+		int[] start = new int[componentCount + 1];
+		for (int v = 0; v < varCount; v++)
+			start[componentCount - this.components[v]]++;
+		for (int c = 0; c < componentCount; c++)
+			start[c + 1] += start[c];
+		
+		int[] order = new int[varCount];
+		int[] next = Arrays.copyOf(start, componentCount);
+		for (int v = 0; v < varCount; v++)
+			order[next[componentCount - 1 - this.components[v]]++] = v;
+		
+		//each component has its final level before its arcs are followed
+		int[] componentLevels = new int[componentCount];
+		int levelCount = varCount == 0 ? 0 : 1;
+		for (int v : order)
+		{
+			int c = this.components[v];
+			int size = start[componentCount - c] - start[componentCount - 1 - c];
+			if (size > 1)
+				this.cyclicComponents[c] = true;
+			
+			for (int i = offsets[v]; i < offsets[v + 1]; i++)
+			{
+				int d = this.components[targets[i]];
+				if (d == c)
+				{
+					this.cyclicComponents[c] = true; //self-loop
+				}
+				else if (componentLevels[d] < componentLevels[c] + 1)
+				{
+					componentLevels[d] = componentLevels[c] + 1;
+					levelCount = Math.max(levelCount, componentLevels[d] + 1);
+				}
+			}
+		}
+		
+		for (int v = 0; v < varCount; v++)
+			this.levels[v] = componentLevels[this.components[v]];
+		
+		return levelCount;
+	}
+
+	private static int fill(Collection<DomainTransitionGraph> vertices, int[] array, int index)
+	{
+		for (DomainTransitionGraph dtg : vertices)
+			array[index++] = dtg.getVariable().getId();
+
+		return index;
+	}
+
+	/**
+	 * Gets the number of variables, which is one greater than the largest variable ID of any DTG.
+	 * @return
+	 */
+	public int getVariableCount()
+	{
+		return this.dtgs.length;
+	}
+
+	/**
+	 * Gets the compiled DTG of the variable.
+	 * @param varId
+	 * @return The compiled DTG, or null if the causal graph had no DTG for the variable.
+	 */
+	public CompiledDTG getDTG(int varId)
+	{
+		return this.dtgs[varId];
+	}
+
+	public int getSuccessorsBegin(int varId)
+	{
+		return this.succOffsets[varId];
+	}
+
+	public int getSuccessorsEnd(int varId)
+	{
+		return this.succOffsets[varId + 1];
+	}
+
+	public int getSuccessor(int index)
+	{
+		return this.successors[index];
+	}
+
+	public int getPredecessorsBegin(int varId)
+	{
+		return this.predOffsets[varId];
+	}
+
+	public int getPredecessorsEnd(int varId)
+	{
+		return this.predOffsets[varId + 1];
+	}
+
+	public int getPredecessor(int index)
+	{
+		return this.predecessors[index];
+	}
+
+	/**
+	 * Gets the strongly connected component of the variable. If there is a path from component a to a different 
+	 * component b then a is greater than b.
+	 * @param varId
+	 * @return
+	 */
+	public int getComponent(int varId)
+	{
+		return this.components[varId];
+	}
+	
+	public int getComponentCount()
+	{
+		return this.cyclicComponents.length;
+	}
+	
+	/**
+	 * Returns true if the variable lies on a cycle -- its component has more than one variable, or the variable
+	 * depends upon itself.
+	 * @param varId
+	 * @return
+	 */
+	public boolean isCyclic(int varId)
+	{
+		return this.cyclicComponents[this.components[varId]];
+	}
+	
+	/**
+	 * Gets the topological level of the variable's component. Every arc between components leads to a 
+	 * component with a higher level.
+	 * @param varId
+	 * @return
+	 */
+	public int getLevel(int varId)
+	{
+		return this.levels[varId];
+	}
+	
+	/**
+	 * Gets the number of levels, which is one greater than the highest level of any variable.
+	 * @return
+	 */
+	public int getLevelCount()
+	{
+		return this.levelCount;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CompiledCausalGraph(V"+this.dtgs.length+", E"+this.successors.length+")";
+	}
+}
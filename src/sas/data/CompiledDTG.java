@@ -0,0 +1,338 @@
+package sas.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable compressed sparse row (CSR) form of a {@link DomainTransitionGraph}. Values are identified by
+ * their value ID, and the outgoing transitions of value v are the edge indices in the range
+ * [{@link #getEdgesBegin(int)}, {@link #getEdgesEnd(int)}). The target, action cost, operator ID and associated
+ * preconditions of each edge are held in parallel arrays, so walking the adjacency of a value requires no hashing
+ * of {@link SASLiteral}s. The associated preconditions of edge e are the indices in the range
+ * [{@link #getPcsBegin(int)}, {@link #getPcsEnd(int)}) of {@link #getPcVariable(int)} and {@link #getPcValue(int)}.
+ * <p>
+ * The transitions of each value are in the same order as they are returned by
+ * {@link DomainTransitionGraph#outgoingEdgesOf(Object)}. A compiled DTG does not reflect any later changes to
+ * the DTG it was created from.
+ * <p>
+ * If the DTG has universal transitions, they are compiled once as the outgoing transitions of the
+ * {@link #getUniversalValue()}, rather than being copied to every value. Searches should walk the
+ * {@link #getTransitionCount(int)} transitions of a value given by {@link #getTransition(int, int)}, which 
+ * are its own outgoing transitions followed by the universal transitions. A universal transition may lead 
+ * back to the value it is taken from, which never shortens a path.
+ *
+ * @author David Pattison
+ * @see CausalGraph#getCompiledForm()
+ */
+public final class CompiledDTG
+{
+	private final DomainTransitionGraph dtg;
+	private final int variableId;
+	private final int valueCount;
+	private final int universalValue; //-1 if the DTG has no universal transitions
+	private final SASLiteral[] literals; //indexed by value, null if the DTG has no vertex for the value
+
+	private final int[] offsets; //indexed by value, valueCount + 1 entries
+	private final int[] targets;
+	private final int[] operatorIds;
+	private final double[] costs;
+	private final SASAction[] actions;
+	private final DTGActionEdge[] edges;
+
+	private final int[] pcOffsets; //indexed by edge, edgeCount + 1 entries
+	private final int[] pcVariables;
+	private final int[] pcValues;
+
+	/**
+	 * Compiles the DTG's current transitions.
+	 * @param dtg
+	 */
+	public CompiledDTG(DomainTransitionGraph dtg)
+	{
+		this.dtg = dtg;
+		this.variableId = dtg.getVariable().getId();
+
+		int valueCount = dtg.getVariable().getDomain().size();
+		List<SASLiteral> sources = new ArrayList<SASLiteral>(dtg.vertexSet());
+		for (SASLiteral v : sources)
+		{
+			valueCount = Math.max(valueCount, v.getValueId() + 1);
+			for (DTGActionEdge e : dtg.outgoingEdgesOf(v))
+				valueCount = Math.max(valueCount, e.getEffect().getValueId() + 1);
+		}
+		this.valueCount = valueCount;
+		this.universalValue = dtg.hasUniversalTransitions() ? dtg.getUniversalVertex().getValueId() : -1;
+		
+		this.literals = new SASLiteral[valueCount];
+		for (SASLiteral v : sources)
+			this.literals[v.getValueId()] = v;
+
+		//group the transitions by source value, as this is the order they are laid out in
+		List<List<DTGActionEdge>> outgoing = new ArrayList<List<DTGActionEdge>>(valueCount);
+		for (int value = 0; value < valueCount; value++)
+			outgoing.add(null);
+		
+		int edgeCount = 0, pcCount = 0;
+		for (SASLiteral v : sources)
+		{
+			Collection<DTGActionEdge> out = dtg.outgoingEdgesOf(v);
+			if (out.isEmpty())
+				continue;
+
+			if (outgoing.get(v.getValueId()) == null)
+				outgoing.set(v.getValueId(), new ArrayList<DTGActionEdge>(out.size()));
+
+			outgoing.get(v.getValueId()).addAll(out);
+			edgeCount += out.size();
+			for (DTGActionEdge e : out)
+				pcCount += e.getAssociatedPcs().size();
+		}
+
+		this.offsets = new int[valueCount + 1];
+		this.targets = new int[edgeCount];
+		this.operatorIds = new int[edgeCount];
+		this.costs = new double[edgeCount];
+		this.actions = new SASAction[edgeCount];
+		this.edges = new DTGActionEdge[edgeCount];
+		this.pcOffsets = new int[edgeCount + 1];
+		this.pcVariables = new int[pcCount];
+		this.pcValues = new int[pcCount];
+
+		int edge = 0, pc = 0;
+		for (int value = 0; value < valueCount; value++)
+		{
+			this.offsets[value] = edge;
+			if (outgoing.get(value) == null)
+				continue;
+
+			for (DTGActionEdge e : outgoing.get(value))
+			{
+				this.targets[edge] = e.getEffect().getValueId();
+				this.operatorIds[edge] = e.getAction().getOperatorId();
+				this.costs[edge] = e.getAction().getCost();
+				this.actions[edge] = e.getAction();
+				this.edges[edge] = e;
+
+				this.pcOffsets[edge] = pc;
+				for (SASLiteral l : e.getAssociatedPcs())
+				{
+					this.pcVariables[pc] = l.getVariableId();
+					this.pcValues[pc] = l.getValueId();
+					pc++;
+				}
+				edge++;
+			}
+		}
+		this.offsets[valueCount] = edge;
+		this.pcOffsets[edgeCount] = pc;
+	}
+
+	/**
+	 * Gets the DTG this was compiled from.
+	 * @return
+	 */
+	public DomainTransitionGraph getDTG()
+	{
+		return dtg;
+	}
+
+	public int getVariableId()
+	{
+		return variableId;
+	}
+
+	/**
+	 * Gets the number of values, which is one greater than the largest value ID of any vertex or transition target.
+	 * @return
+	 */
+	public int getValueCount()
+	{
+		return valueCount;
+	}
+
+	/**
+	 * Gets the vertex of the DTG with the value ID.
+	 * @param value
+	 * @return The vertex, or null if the DTG has no vertex for the value.
+	 */
+	public SASLiteral getLiteral(int value)
+	{
+		return this.literals[value];
+	}
+
+	public int getEdgeCount()
+	{
+		return this.targets.length;
+	}
+
+	/**
+	 * Gets the index of the first outgoing transition of the value.
+	 * @param value
+	 * @return
+	 */
+	public int getEdgesBegin(int value)
+	{
+		return this.offsets[value];
+	}
+
+	/**
+	 * Gets the index after the last outgoing transition of the value.
+	 * @param value
+	 * @return
+	 */
+	public int getEdgesEnd(int value)
+	{
+		return this.offsets[value + 1];
+	}
+
+	public int getOutDegree(int value)
+	{
+		return this.offsets[value + 1] - this.offsets[value];
+	}
+
+	/**
+	 * Gets the value whose outgoing transitions can be taken from any value.
+	 * @return The value ID of the DTG's NoneOfThose vertex, or -1 if the DTG has no universal transitions.
+	 * @see DomainTransitionGraph#decompileUniversalTransitions()
+	 */
+	public int getUniversalValue()
+	{
+		return universalValue;
+	}
+
+	public boolean hasUniversalTransitions()
+	{
+		return this.universalValue >= 0;
+	}
+
+	/**
+	 * Gets the number of transitions which can be taken from the value, including any universal transitions.
+	 * @param value
+	 * @return
+	 */
+	public int getTransitionCount(int value)
+	{
+		int count = this.offsets[value + 1] - this.offsets[value];
+		if (this.universalValue >= 0 && value != this.universalValue)
+			count += this.offsets[this.universalValue + 1] - this.offsets[this.universalValue];
+
+		return count;
+	}
+
+	/**
+	 * Gets the edge index of the i'th transition which can be taken from the value. The value's own outgoing
+	 * transitions come before any universal transitions.
+	 * @param value
+	 * @param i An index in the range [0, {@link #getTransitionCount(int)}).
+	 * @return
+	 */
+	public int getTransition(int value, int i)
+	{
+		int degree = this.offsets[value + 1] - this.offsets[value];
+		if (i < degree)
+			return this.offsets[value] + i;
+
+		return this.offsets[this.universalValue] + (i - degree);
+	}
+
+	/**
+	 * Gets the value ID which the transition leads to.
+	 * @param edge
+	 * @return
+	 */
+	public int getTarget(int edge)
+	{
+		return this.targets[edge];
+	}
+
+	/**
+	 * Gets the cost of the transition's action.
+	 * @param edge
+	 * @return
+	 */
+	public double getCost(int edge)
+	{
+		return this.costs[edge];
+	}
+
+	/**
+	 * Gets the operator ID of the transition's action. Note that operators and axioms are numbered separately.
+	 * @param edge
+	 * @return
+	 */
+	public int getOperatorId(int edge)
+	{
+		return this.operatorIds[edge];
+	}
+
+	public SASAction getAction(int edge)
+	{
+		return this.actions[edge];
+	}
+
+	/**
+	 * Gets the transition which was compiled into the edge.
+	 * @param edge
+	 * @return
+	 */
+	public DTGActionEdge getEdge(int edge)
+	{
+		return this.edges[edge];
+	}
+
+	/**
+	 * Gets the index of the transition's first associated precondition.
+	 * @param edge
+	 * @return
+	 */
+	public int getPcsBegin(int edge)
+	{
+		return this.pcOffsets[edge];
+	}
+
+	/**
+	 * Gets the index after the transition's last associated precondition.
+	 * @param edge
+	 * @return
+	 */
+	public int getPcsEnd(int edge)
+	{
+		return this.pcOffsets[edge + 1];
+	}
+
+	/**
+	 * Gets the total number of associated preconditions over all transitions.
+	 * @return
+	 */
+	public int getPcCount()
+	{
+		return this.pcVariables.length;
+	}
+
+	public int getPcVariable(int pc)
+	{
+		return this.pcVariables[pc];
+	}
+
+	public int getPcValue(int pc)
+	{
+		return this.pcValues[pc];
+	}
+
+	/**
+	 * Returns true if any transition has an associated precondition, in which case the distances between values
+	 * depend upon the values of other variables.
+	 * @return
+	 */
+	public boolean hasAssociatedPcs()
+	{
+		return this.pcVariables.length > 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CompiledDTG("+this.variableId+" = (V"+this.valueCount+", E"+this.targets.length+"))";
+	}
+}
@@ -73,12 +73,12 @@ public class DTGActionEdge
 	
 	public boolean isApplicable(SASState state)
 	{
-		if ((state.vars.get(this.pc.getVariableId()).getCurrentIndex() == this.pc.getValueId()) == false)
+		if ((state.getValueIndex(this.pc.getVariableId()) == this.pc.getValueId()) == false)
 			return false;
 		
 		for (SASLiteral apc : this.associatedPcs)
 		{
-			if ((state.vars.get(apc.getVariableId()).getCurrentIndex() == apc.getValueId()) == false)
+			if ((state.getValueIndex(apc.getVariableId()) == apc.getValueId()) == false)
 				return false;
 		}
 		
@@ -18,6 +18,7 @@ public class DomainTransitionGraph extends CachedStandardGraph<SASLiteral, DTGAc
 {
 	private int index;
 	private SASVariable sasVariable;
+	private SASLiteral universalVertex; //the NOTP vertex if its transitions are universal, otherwise null
 	
 	public DomainTransitionGraph(int index, SASVariable variable)
 	{
@@ -37,18 +38,16 @@ public class DomainTransitionGraph extends CachedStandardGraph<SASLiteral, DTGAc
 	}
 	
 	/**
-	 * If this DTG contains a Universal transition, calling this method will return a copy
-	 * of the DTG with the universal transition explicitly enumerated. The major drawback
-	 * to this is that the action edges will be stubs and have no real meaning. The original 
-	 * universal state is retained for Dijkstra searches. The universal state means that
-	 * the successor states can be transitioned into regardless of their initial value. The 
-	 * universal state only has outgoing edges, so can only be re-entered by explicit invocation.
-	 * @return
+	 * If this DTG contains a Universal transition, calling this method marks the outgoing transitions of the
+	 * NoneOfThose state as universal, meaning that their effect can be transitioned into regardless of the 
+	 * variable's current value. Rather than enumerating an explicit copy of each universal transition from every 
+	 * other vertex, they are held once and are returned alongside the outgoing edges of every vertex by 
+	 * {@link #getTransitionsFrom(SASLiteral)}, and by the adjacency of the DTG's {@link CompiledDTG}. The universal
+	 * state itself is retained, and only has outgoing edges, so can only be re-entered by explicit invocation.
 	 */
 	public void decompileUniversalTransitions()
 	{		
-		DomainTransitionGraph compiled = this;// (DomainTransitionGraph) this.clone();
-		if (compiled.containsNoneOfThoseState())
+		if (this.containsNoneOfThoseState())
 		{
 			//if there are only 2 states and one of those is a NOTP state, this is the same as saying that
 			//the value of the variable is either true or false. Compiling it out would have no effect
@@ -56,39 +55,67 @@ public class DomainTransitionGraph extends CachedStandardGraph<SASLiteral, DTGAc
 			if (this.vertexSet().size() == 2)
 				return;
 				
-			SASLiteral notpVert = null;
 			for (SASLiteral v : this.vertexSet())
 			{
 				if (v instanceof NoneOfThoseProposition)
 				{
-					notpVert = v;
+					this.universalVertex = v;
 					break; //can break because there should be only 1
 				}
 			}
-			
-			//get the outgoing edges from the NOTP node
-			Collection<DTGActionEdge> outgoingEdges = this.outgoingEdgesOf(notpVert);
-		
-			
-			//loop over every non-NOTP vertex in the DTG and create a new edge to/from it and everything else
-			
-			//add a transition from V to the edge's end state
-			for (DTGActionEdge e : outgoingEdges)
-			{
-				SASLiteral w = e.getEffect();
-				for (SASLiteral v : this.vertexSet())
-				{
-					if (v == w || v instanceof NoneOfThoseProposition)
-						continue;
-				
-					compiled.addTransition(v, e.getAction(), w, e.getAssociatedPcs());
-				}
-			}
-//			compiled.removeVertex(notpVert); //delete the NOTP node and associated edges from the compiled DTG
 		}
+	}
+	
+	/**
+	 * Returns true if {@link #decompileUniversalTransitions()} has marked this DTG's universal transitions.
+	 * @return
+	 */
+	public boolean hasUniversalTransitions()
+	{
+		return this.universalVertex != null;
+	}
+	
+	/**
+	 * Gets the NoneOfThose vertex whose outgoing transitions are universal.
+	 * @return The vertex, or null if universal transitions have not been marked.
+	 */
+	public SASLiteral getUniversalVertex()
+	{
+		return universalVertex;
+	}
+	
+	/**
+	 * Gets the transitions which can be taken from any value of the variable.
+	 * @return The transitions, which are empty if universal transitions have not been marked.
+	 */
+	public Collection<DTGActionEdge> getUniversalTransitions()
+	{
+		if (this.universalVertex == null)
+			return Collections.emptySet();
+		
+		return this.outgoingEdgesOf(this.universalVertex);
+	}
+	
+	/**
+	 * Gets every transition which can be taken from the vertex -- its outgoing edges, and any universal
+	 * transitions which lead to a different vertex. Note that the precondition of a universal transition is
+	 * the NoneOfThose vertex, not the vertex it is taken from.
+	 * @param v
+	 * @return
+	 */
+	public Collection<DTGActionEdge> getTransitionsFrom(SASLiteral v)
+	{
+		if (this.universalVertex == null || v.equals(this.universalVertex))
+			return this.outgoingEdgesOf(v);
 		
+		List<DTGActionEdge> transitions = new ArrayList<DTGActionEdge>(this.outgoingEdgesOf(v));
+		for (DTGActionEdge e : this.outgoingEdgesOf(this.universalVertex))
+		{
+			if (e.getEffect().equals(v) == false)
+				transitions.add(e);
+		}
 		
-//		return compiled;
+		return transitions;
 	}
 	
 	public boolean isDomainGeneratedVariable()
@@ -176,6 +203,9 @@ public class DomainTransitionGraph extends CachedStandardGraph<SASLiteral, DTGAc
 		
 		for (DTGActionEdge e : super.edgeSet())
 			clone.addTransition((DTGActionEdge) e.clone());
+		
+		if (this.universalVertex != null)
+			clone.universalVertex = clone.containsProposition((SASProposition) this.universalVertex);
 				
 		return clone;
 	}
@@ -0,0 +1,176 @@
+package sas.data;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A compiled, read-only view of the actions of a {@link SASProblem}. Every action is assigned a dense index, and
+ * its preconditions, effects and cost are held in parallel primitive arrays, so that applicability testing and
+ * successor generation do not box or iterate over maps. Preconditions and effects are sorted by variable ID.
+ * <p>
+ * The table must be built after parsing has completed. Modifying an action afterwards will not
+ * be reflected in the table.
+ *
+ * @author David Pattison
+ * @see SASProblem#getOperatorTable()
+ */
+public class OperatorTable
+{
+	private final SASAction[] actions;
+	private final int[][] preconditionVars, preconditionValues;
+	private final int[][] effectVars, effectValues;
+	private final double[] costs;
+
+	private final int[] indexById; //operator ID -> index, or -1
+
+	/**
+	 * Compiles all actions in the problem.
+	 * @param problem
+	 */
+	public OperatorTable(SASProblem problem)
+	{
+		this(problem.actions.values());
+	}
+
+	/**
+	 * Compiles the specified actions. Indices are assigned in iteration order.
+	 * @param actions
+	 */
+	public OperatorTable(Collection<SASAction> actions)
+	{
+		int count = actions.size();
+		this.actions = actions.toArray(new SASAction[count]);
+		this.preconditionVars = new int[count][];
+		this.preconditionValues = new int[count][];
+		this.effectVars = new int[count][];
+		this.effectValues = new int[count][];
+		this.costs = new double[count];
+
+		int maxId = -1;
+		for (int i = 0; i < count; i++)
+		{
+			SASAction a = this.actions[i];
+			this.preconditionVars[i] = a.getPreconditionVariables();
+			this.preconditionValues[i] = a.getPreconditionValues();
+			this.effectVars[i] = a.getEffectVariables();
+			this.effectValues[i] = a.getEffectValues();
+			this.costs[i] = a.getCost();
+
+			maxId = Math.max(maxId, a.getOperatorId());
+		}
+
+		this.indexById = new int[maxId + 1];
+		Arrays.fill(this.indexById, -1);
+		for (int i = 0; i < count; i++)
+		{
+			this.indexById[this.actions[i].getOperatorId()] = i;
+		}
+	}
+
+	/**
+	 * Returns the number of actions in the table.
+	 * @return
+	 */
+	public int size()
+	{
+		return this.actions.length;
+	}
+
+	public SASAction getAction(int index)
+	{
+		return this.actions[index];
+	}
+
+	/**
+	 * Gets the index of the specified action in this table.
+	 * @param a
+	 * @return The index, or -1 if the action is not in the table.
+	 */
+	public int getIndex(SASAction a)
+	{
+		int id = a.getOperatorId();
+		if (id < 0 || id >= this.indexById.length)
+			return -1;
+
+		int index = this.indexById[id];
+		if (index < 0 || this.actions[index] != a)
+			return -1;
+
+		return index;
+	}
+
+	public double getCost(int index)
+	{
+		return this.costs[index];
+	}
+
+	/**
+	 * Returns the cost of every action, indexed by action index. The array is not copied, so should not be modified.
+	 * @return
+	 */
+	public double[] getCosts()
+	{
+		return this.costs;
+	}
+
+	public int[] getPreconditionVariables(int index)
+	{
+		return this.preconditionVars[index];
+	}
+
+	public int[] getPreconditionValues(int index)
+	{
+		return this.preconditionValues[index];
+	}
+
+	public int[] getEffectVariables(int index)
+	{
+		return this.effectVars[index];
+	}
+
+	public int[] getEffectValues(int index)
+	{
+		return this.effectValues[index];
+	}
+
+	/**
+	 * Determines whether the action at the specified index is applicable in the state.
+	 * @param index
+	 * @param state
+	 * @return
+	 * @see SASAction#isApplicable(SASState)
+	 */
+	public boolean isApplicable(int index, SASState state)
+	{
+		return this.actions[index].isApplicable(state);
+	}
+
+	/**
+	 * Applies the action at the specified index to the state. The state is modified.
+	 * @param index
+	 * @param state
+	 */
+	public void apply(int index, SASState state)
+	{
+		int[] vars = this.effectVars[index];
+		int[] values = this.effectValues[index];
+		for (int i = 0; i < vars.length; i++)
+		{
+			state.setValue(vars[i], values[i]);
+		}
+	}
+
+	/**
+	 * Creates the successor of the state produced by applying the action at the specified index. The
+	 * original state is not modified.
+	 * @param index
+	 * @param state
+	 * @return
+	 */
+	public SASState getSuccessor(int index, SASState state)
+	{
+		SASState succ = (SASState) state.clone();
+		this.apply(index, succ);
+		return succ;
+	}
+}
@@ -2,6 +2,7 @@ package sas.data;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -35,6 +36,10 @@ public class SASAction implements PDDLConvertable<STRIPSInstantAction>//, Compar
 	
 	private Map<Integer, Integer> allPreconditions; //cache this here -- massive speedups 
 	
+	//flat forms of the above, sorted by variable and rebuilt along with allPreconditions
+	private int[] preconditionVars, preconditionValues;
+	private int[] effectVars, effectPreconditions, effectValues;
+	
 	//common
 	/**
 	 * Defaults to 1.
@@ -93,6 +98,94 @@ public class SASAction implements PDDLConvertable<STRIPSInstantAction>//, Compar
 		pcs.putAll(this.sasEffectConditions);
 		
 		this.allPreconditions = pcs;
+		
+		//-1 preconditions on effects are not real preconditions, so are not compiled
+		int pcCount = 0;
+		for (Integer value : pcs.values())
+		{
+			if (value >= 0)
+				++pcCount;
+		}
+		
+		this.preconditionVars = new int[pcCount];
+		int c = 0;
+		for (Entry<Integer, Integer> pc : pcs.entrySet())
+		{
+			if (pc.getValue() >= 0)
+				this.preconditionVars[c++] = pc.getKey();
+		}
+		Arrays.sort(this.preconditionVars);
+		
+		this.preconditionValues = new int[pcCount];
+		for (int i = 0; i < pcCount; i++)
+		{
+			this.preconditionValues[i] = pcs.get(this.preconditionVars[i]);
+		}
+		
+		this.effectVars = new int[this.sasEffects.size()];
+		this.effectPreconditions = new int[this.sasEffects.size()];
+		this.effectValues = new int[this.sasEffects.size()];
+		c = 0;
+		for (Entry<Integer, SASEffect> eff : new TreeMap<Integer, SASEffect>(this.sasEffects).entrySet())
+		{
+			this.effectVars[c] = eff.getKey();
+			this.effectPreconditions[c] = eff.getValue().precondition;
+			this.effectValues[c] = eff.getValue().effect;
+			++c;
+		}
+	}
+	
+	/**
+	 * Returns the variables of all preconditions of this action, as returned by {@link #getPreconditions()}, in
+	 * ascending order. Effects which can be applied from any value (-1) are not included. The array
+	 * returned is the internal cache, so should not be modified.
+	 * @return
+	 * @see #getPreconditionValues()
+	 */
+	public int[] getPreconditionVariables()
+	{
+		return this.preconditionVars;
+	}
+	
+	/**
+	 * Returns the value of each precondition variable, in the same order as {@link #getPreconditionVariables()}.
+	 * The array returned is the internal cache, so should not be modified.
+	 * @return
+	 */
+	public int[] getPreconditionValues()
+	{
+		return this.preconditionValues;
+	}
+	
+	/**
+	 * Returns the variables of all effects of this action in ascending order. The array
+	 * returned is the internal cache, so should not be modified.
+	 * @return
+	 * @see #getEffectValues()
+	 */
+	public int[] getEffectVariables()
+	{
+		return this.effectVars;
+	}
+	
+	/**
+	 * Returns the precondition of each effect, in the same order as {@link #getEffectVariables()}. This is -1 if the 
+	 * effect can be applied from any value. The array returned is the internal cache, so should not be modified.
+	 * @return
+	 */
+	public int[] getEffectPreconditions()
+	{
+		return this.effectPreconditions;
+	}
+	
+	/**
+	 * Returns the value each effect variable is set to, in the same order as {@link #getEffectVariables()}.
+	 * The array returned is the internal cache, so should not be modified.
+	 * @return
+	 */
+	public int[] getEffectValues()
+	{
+		return this.effectValues;
 	}
 	
 	
@@ -148,34 +241,28 @@ public class SASAction implements PDDLConvertable<STRIPSInstantAction>//, Compar
 	
 	public boolean isApplicable(SASState s)
 	{
-		for (Entry<Integer, Integer> e : sasPrevails.entrySet())
-		{
-			if (s.containsVariable(e.getKey()) == false || s.getValueIndex(e.getKey()) != e.getValue())
-				return false;
-		}
-		
-		for (Entry<Integer, SASEffect> e : sasEffects.entrySet())
+		for (int i = 0; i < this.preconditionVars.length; i++)
 		{
-			if (s.containsVariable(e.getKey()) == false || s.getValueIndex(e.getKey()) != e.getValue().precondition)
+			//absent variables have a value of -1, so never satisfy a precondition
+			if (s.getValueIndex(this.preconditionVars[i]) != this.preconditionValues[i])
 				return false;
 		}
 		
-		//effect conditions?
-		for (Entry<Integer, Integer> e : sasEffectConditions.entrySet())
+		//effects which can be applied from any value still require the variable to be present
+		for (int i = 0; i < this.effectVars.length; i++)
 		{
-			if (s.containsVariable(e.getKey()) == false || s.getValueIndex(e.getKey()) != e.getValue())
+			if (s.containsVariable(this.effectVars[i]) == false)
 				return false;
 		}
 		
-		
 		return true;
 	}
 	
 	public void apply(SASState s)
 	{
-		for (Entry<Integer, SASEffect> e : sasEffects.entrySet())
+		for (int i = 0; i < this.effectVars.length; i++)
 		{
-			s.getVariable(e.getKey()).setCurrentValue(e.getValue().effect);
+			s.setValue(this.effectVars[i], this.effectValues[i]);
 		}
 	}
 
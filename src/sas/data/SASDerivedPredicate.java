@@ -79,6 +79,7 @@ package sas.data;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -274,6 +275,20 @@ public class SASDerivedPredicate extends SASVariable
 	}
 
 
+	public SASDerivedPredicateSymbol getSymbol()
+	{
+		return symbol;
+	}
+
+	/**
+	 * Returns an unmodifiable list of this derived predicate's parameters.
+	 * @return
+	 */
+	public List<SASParameter> getParameters()
+	{
+		return Collections.unmodifiableList(params);
+	}
+
 	public int getDefaultValue()
 	{
 		return defaultValue;
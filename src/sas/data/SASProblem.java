@@ -53,6 +53,10 @@ public class SASProblem implements Cloneable, PDDLConvertable<GroundProblem>
 	
 	public Map<Integer, SASMutexGroup> mutexes;
 	
+	//compiled lazily from the actions and axioms once parsing is complete
+	private OperatorTable operatorTable;
+	private volatile AxiomEvaluator axiomEvaluator;
+	
 	public SASProblem()
 	{
 		this.reset();
@@ -96,6 +100,8 @@ public class SASProblem implements Cloneable, PDDLConvertable<GroundProblem>
 		this.variables = new TreeMap<Integer, SASVariable>();
 		this.axioms = new TreeMap<Integer, Map<Integer, SASAxiom>>();
 		this.mutexes = new TreeMap<Integer, SASMutexGroup>();
+		this.operatorTable = null;
+		this.axiomEvaluator = null;
 		
 		this.setupInitialState();
 	}
@@ -106,6 +112,10 @@ public class SASProblem implements Cloneable, PDDLConvertable<GroundProblem>
 	 */
 	public void setupInitialState()
 	{
+		//anything compiled before parsing finished is out of date
+		this.operatorTable = null;
+		this.axiomEvaluator = null;
+		
 		this.state = new SASState();
 		for (Entry<Integer, Integer> e : this.initial.entrySet())
 		{
@@ -189,6 +199,9 @@ public class SASProblem implements Cloneable, PDDLConvertable<GroundProblem>
 		
 //		sas.setupInitialState();
 		
+		//the evaluator was built while the clone had no variables or axioms
+		sas.resetAxiomEvaluator();
+		
 		return sas;
 	}
 	
@@ -206,6 +219,29 @@ public class SASProblem implements Cloneable, PDDLConvertable<GroundProblem>
 	}
 	
 
+	/**
+	 * Gets the compiled form of this problem's actions. The table is built on the first call, so this
+	 * should not be called until all actions have been parsed.
+	 * @return
+	 * @see #resetOperatorTable()
+	 */
+	public OperatorTable getOperatorTable()
+	{
+		if (this.operatorTable == null)
+			this.operatorTable = new OperatorTable(this);
+		
+		return this.operatorTable;
+	}
+	
+	/**
+	 * Discards the compiled operator table, so that it is rebuilt on the next call to {@link #getOperatorTable()}.
+	 * This must be called if the set of actions is modified after the table has been built.
+	 */
+	public void resetOperatorTable()
+	{
+		this.operatorTable = null;
+	}
+	
 	/**
 	 * Evaluate the initial state. This must be done manually rather than held because
 	 * of derived predicates. All derived predicates are evaluated against all current axioms 
@@ -268,34 +304,73 @@ public class SASProblem implements Cloneable, PDDLConvertable<GroundProblem>
 	public SASState getAxiomState(SASState s)
 	{
 		SASState current = (SASState) s.clone();
-		for (SASVariable v : current.vars.values())
+		this.getAxiomEvaluator().evaluate(current);
+		
+		return current;
+	}
+	
+	/**
+	 * Applies the action to the specified state, and updates any derived predicates affected by the action's
+	 * effects. Only axioms which depend on a variable changed by the action are re-evaluated, so the
+	 * state provided must already have correct values for all derived predicates, as is the case with any
+	 * state returned by this method, {@link #getAxiomState(SASState)} or {@link #getCurrentState()}.
+	 * The state provided is not modified.
+	 * @param s The state to apply the action in.
+	 * @param a The action to apply. Applicability is not checked.
+	 * @return The successor state.
+	 */
+	public SASState getSuccessorState(SASState s, SASAction a)
+	{
+		SASState succ = (SASState) s.clone();
+		
+		int[] effectVars = a.getEffectVariables();
+		int[] effectValues = a.getEffectValues();
+		int[] changed = new int[effectVars.length];
+		int changedCount = 0;
+		for (int i = 0; i < effectVars.length; i++)
 		{
-			if (v instanceof SASDerivedPredicate)
-			{
-				((SASDerivedPredicate)v).reset();//setCurrentValue(((SASDerivedPredicate) v).getDefaultValue());
-			}
+			if (succ.getValueIndex(effectVars[i]) != effectValues[i] && succ.setValue(effectVars[i], effectValues[i]))
+				changed[changedCount++] = effectVars[i];
 		}
 		
-		//should be sorted according to layer
-		SASState previousState = null;
-		do
+		if (changedCount > 0)
+			this.getAxiomEvaluator().evaluate(succ, changed, changedCount);
+		
+		return succ;
+	}
+	
+	/**
+	 * Gets the evaluator used to compute derived predicates. This is built on the first call, and is shared
+	 * by every thread.
+	 * @return
+	 * @see #resetAxiomEvaluator()
+	 */
+	public AxiomEvaluator getAxiomEvaluator()
+	{
+		AxiomEvaluator evaluator = this.axiomEvaluator;
+		if (evaluator == null)
 		{
-			previousState = (SASState) current.clone();
-			
-			for (Entry<Integer, Map<Integer, SASAxiom>> layerSet : this.axioms.entrySet())
+			synchronized (this)
 			{
-				for (Entry<Integer, SASAxiom> axiom : layerSet.getValue().entrySet())
+				evaluator = this.axiomEvaluator;
+				if (evaluator == null)
 				{
-					if (axiom.getValue().isApplicable(current) == true)
-					{
-						axiom.getValue().apply(current);
-					}
+					evaluator = new AxiomEvaluator(this);
+					this.axiomEvaluator = evaluator;
 				}
 			}
 		}
-		while (previousState.equals(current) == false);
 		
-		return current;
+		return evaluator;
+	}
+	
+	/**
+	 * Discards the axiom evaluator, so that it is rebuilt on the next call to {@link #getAxiomEvaluator()}.
+	 * This must be called if the variables or axioms are modified after the evaluator has been built.
+	 */
+	public void resetAxiomEvaluator()
+	{
+		this.axiomEvaluator = null;
 	}
 
 	/**
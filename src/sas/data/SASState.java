@@ -1,40 +1,60 @@
 package sas.data;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.SortedSet;
-import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.Map.Entry;
 
 import sas.util.PDDLConvertable;
-import sas.util.SASException;
 
 import javaff.data.Action;
 import javaff.data.Fact;
 import javaff.data.GroundProblem;
 import javaff.data.strips.And;
-import javaff.data.strips.Proposition;
 import javaff.planning.STRIPSState;
 
 
+/**
+ * A state in SAS+. The value of each variable is held as an index into its domain, keyed by variable ID.
+ * The variables themselves are held in a table which is shared between a state and all states cloned
+ * from it, so cloning a state only copies the value array.
+ * A value of {@link #Undefined} indicates that the variable is not present in this state.
+ * <p>
+ * Note that the {@link SASVariable} objects held in the shared table do not track the value
+ * of the variable in this state -- use {@link #getValueIndex(int)} or {@link #getValue(int)}.
+ *
+ * @author David Pattison
+ *
+ */
 public class SASState implements PDDLConvertable<STRIPSState>
 {
-	public SortedMap<Integer, SASVariable> vars;
+	/**
+	 * Value used to indicate that a variable is not part of a state.
+	 */
+	public static final int Undefined = -1;
+
+	private static final SASVariable[] EmptyVariables = new SASVariable[0];
+	private static final int[] EmptyValues = new int[0];
+
+	private SASVariable[] variables; //shared between clones -- copied on write
+	private boolean ownsVariables; //false if the variable table is shared with another state
+	private int[] values;
+	private int size;
 	
 	public SASState()
 	{
-		this.vars = new TreeMap<Integer, SASVariable>();
+		this.variables = EmptyVariables;
+		this.ownsVariables = true;
+		this.values = EmptyValues;
+		this.size = 0;
 	}
 	
 	public SASState(Collection<SASVariable> vars)
 	{
 		this();
-		this.vars = new TreeMap<Integer, SASVariable>();
 		for (SASVariable v : vars)
 		{
 			this.addVariable(v);
@@ -47,6 +67,26 @@ public class SASState implements PDDLConvertable<STRIPSState>
 		this.addVariable(v);
 	}
 	
+	/**
+	 * Creates a state which shares the specified variable table. The values array is used directly,
+	 * and is not copied.
+	 * @param variables The variable table, indexed by variable ID. This is not copied.
+	 * @param values The value of each variable, or {@link #Undefined} if the variable is not in this state.
+	 */
+	SASState(SASVariable[] variables, int[] values)
+	{
+		this.variables = variables;
+		this.ownsVariables = false;
+		this.values = values;
+
+		this.size = 0;
+		for (int v : values)
+		{
+			if (v != Undefined)
+				++this.size;
+		}
+	}
+
 	/**
 	 * Sets the value of the specified variable.
 	 * @param variable
@@ -55,12 +95,15 @@ public class SASState implements PDDLConvertable<STRIPSState>
 	 */
 	public boolean setValue(int variable, int value)
 	{
-		if (this.vars.containsKey(variable) == false)
+		if (this.containsVariable(variable) == false)
 		{
 			return false;
 		}
 		
-		this.vars.get(variable).setCurrentValue(value);
+		if (value == Undefined)
+			--this.size;
+		
+		this.values[variable] = value;
 		return true;
 	}
 	
@@ -77,7 +120,7 @@ public class SASState implements PDDLConvertable<STRIPSState>
 	
 	public boolean isTrue(int variable, int value)
 	{
-		return this.vars.get(variable).getCurrentIndex() == value;
+		return this.getValueIndex(variable) == value;
 	}
 	
 	public boolean isTrue(SASLiteral l)
@@ -95,9 +138,11 @@ public class SASState implements PDDLConvertable<STRIPSState>
 	{
 		SASState succ = (SASState) this.clone();
 		
-		for (Entry<Integer, SASEffect> eff : a.getEffects().entrySet())
+		int[] vars = a.getEffectVariables();
+		int[] values = a.getEffectValues();
+		for (int i = 0; i < vars.length; i++)
 		{
-			succ.vars.get(eff.getKey()).setCurrentValue(eff.getValue().effect);
+			succ.setValue(vars[i], values[i]);
 		}
 		
 		return succ;
@@ -106,27 +151,106 @@ public class SASState implements PDDLConvertable<STRIPSState>
 	public Map<Integer, Integer> getMap()
 	{
 		Map<Integer, Integer> map = new HashMap<Integer, Integer>();
-		for (Entry<Integer, SASVariable> v : this.vars.entrySet())
+		for (int i = 0; i < this.values.length; i++)
 		{
-			map.put(v.getKey(), v.getValue().getCurrentIndex());
+			if (this.values[i] != Undefined)
+				map.put(i, this.values[i]);
 		}
 		
 		return map;
 	}
 	
+	/**
+	 * Gets the variable with the specified ID. Note that the current value of the returned variable
+	 * is not guaranteed to be the value it has in this state.
+	 * @param id
+	 * @return The variable, or null if it is not in this state.
+	 * @see #getValueIndex(int)
+	 */
 	public SASVariable getVariable(int id)
 	{
-		return this.vars.get(id);
+		if (this.containsVariable(id) == false)
+			return null;
+
+		return this.variables[id];
 	}
 	
+	/**
+	 * Adds the specified variable to this state, with its value set to the variable's current value.
+	 * If the variable is already present its value is overwritten.
+	 * @param v
+	 */
 	public void addVariable(SASVariable v)
 	{
-		this.vars.put(v.getId(), v);
+		int id = v.getId();
+		if (id >= this.values.length)
+		{
+			int length = Math.max(id + 1, this.values.length * 2);
+
+			int oldLength = this.values.length;
+			this.values = Arrays.copyOf(this.values, length);
+			Arrays.fill(this.values, oldLength, length, Undefined);
+		}
+
+		if (id >= this.variables.length || this.variables[id] != v)
+		{
+			if (this.ownsVariables == false || id >= this.variables.length)
+			{
+				this.variables = Arrays.copyOf(this.variables, Math.max(this.values.length, this.variables.length));
+				this.ownsVariables = true;
+			}
+			this.variables[id] = v;
+		}
+
+		int value = v.getCurrentIndex();
+		if (this.values[id] == Undefined && value != Undefined)
+			++this.size;
+		else if (this.values[id] != Undefined && value == Undefined)
+			--this.size;
+
+		this.values[id] = value;
 	}
 	
 	public boolean containsVariable(int id)
 	{
-		return this.vars.containsKey(id);
+		return id >= 0 && id < this.values.length && this.values[id] != Undefined;
+	}
+
+	/**
+	 * Returns the number of variables in this state.
+	 * @return
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Returns one more than the largest variable ID which this state can hold without
+	 * resizing. Variables with an ID lower than this are not necessarily present in the state.
+	 * @return
+	 * @see #containsVariable(int)
+	 */
+	public int getCapacity()
+	{
+		return this.values.length;
+	}
+
+	/**
+	 * Returns the IDs of all variables in this state, in ascending order.
+	 * @return
+	 */
+	public int[] getVariableIds()
+	{
+		int[] ids = new int[this.size];
+		int c = 0;
+		for (int i = 0; i < this.values.length; i++)
+		{
+			if (this.values[i] != Undefined)
+				ids[c++] = i;
+		}
+
+		return ids;
 	}
 	
 //	public Set<SASProposition> getValue(SortedSet<SASAxiom> axioms)
@@ -148,12 +272,20 @@ public class SASState implements PDDLConvertable<STRIPSState>
 
 	public SASLiteral getValue(int varIndex)
 	{
-		return this.vars.get(varIndex).getValue();
+		return this.variables[varIndex].getValue(this.values[varIndex]);
 	}
 	
+	/**
+	 * Get the index of the value which the specified variable has in this state.
+	 * @param varIndex
+	 * @return The value index, or {@link #Undefined} if the variable is not in this state.
+	 */
 	public int getValueIndex(int varIndex)
 	{
-		return this.vars.get(varIndex).getCurrentIndex();
+		if (varIndex >= this.values.length)
+			return Undefined;
+
+		return this.values[varIndex];
 	}
 
 	
@@ -167,9 +299,9 @@ public class SASState implements PDDLConvertable<STRIPSState>
 		SASState eva = sproblem.getCurrentState();
 		
 		Set<Fact> pddl = new HashSet<Fact>();
-		for (SASVariable p : eva.vars.values())
+		for (int v : eva.getVariableIds())
 		{
-			pddl.add(p.getValue().convertToPDDL(sproblem));
+			pddl.add(eva.getValue(v).convertToPDDL(sproblem));
 		}
 		
 		STRIPSState s = new STRIPSState(new HashSet<Action>(), pddl, new And());
@@ -189,9 +321,9 @@ public class SASState implements PDDLConvertable<STRIPSState>
 		SASState eva = sproblem.getCurrentState();
 		
 		Set<Fact> pddl = new HashSet<Fact>();
-		for (SASVariable p : eva.vars.values())
+		for (int v : eva.getVariableIds())
 		{
-			pddl.add(p.getValue().convertToPDDL(sproblem, pddlProblem));
+			pddl.add(eva.getValue(v).convertToPDDL(sproblem, pddlProblem));
 		}
 		
 		STRIPSState s = new STRIPSState(new HashSet<Action>(), pddl, new And());
@@ -202,7 +334,13 @@ public class SASState implements PDDLConvertable<STRIPSState>
 	@Override
 	public int hashCode()
 	{
-		int hash = this.vars.hashCode() ^ 31;
+		//only defined values contribute, so that states of differing capacity hash identically
+		int hash = 31;
+		for (int i = 0; i < this.values.length; i++)
+		{
+			if (this.values[i] != Undefined)
+				hash = (hash * 31 + i) * 31 + this.values[i];
+		}
 		return hash;
 	}
 	
@@ -210,27 +348,29 @@ public class SASState implements PDDLConvertable<STRIPSState>
 	public boolean equals(Object obj)
 	{
 		SASState other = (SASState) obj;
-		if (this.vars.size() != other.vars.size())
+		if (this.size != other.size)
 			return false;
 		
-		for (Integer v : this.vars.keySet())
+		int length = Math.max(this.values.length, other.values.length);
+		for (int i = 0; i < length; i++)
 		{
-			int thisValue = this.vars.get(v).getCurrentIndex();
-			int otherValue = other.vars.get(v).getCurrentIndex();
-			
-			if (thisValue != otherValue)
+			if (this.getValueIndex(i) != other.getValueIndex(i))
 				return false;
 		}
 		return true;
 	}
 	
+	/**
+	 * Clones this state. The variable table is shared with the clone, only the values are copied.
+	 */
 	public Object clone()
 	{
 		SASState clone = new SASState();
-		for (SASVariable v : this.vars.values())
-		{
-			clone.addVariable((SASVariable) v.clone());
-		}
+		clone.variables = this.variables;
+		clone.ownsVariables = false;
+		this.ownsVariables = false;
+		clone.values = this.values.clone();
+		clone.size = this.size;
 		
 		return clone;
 	}
@@ -239,9 +379,22 @@ public class SASState implements PDDLConvertable<STRIPSState>
 	public String toString()
 	{
 		StringBuffer buf = new StringBuffer();
-		for (SASVariable v : this.vars.values())
+		for (int i = 0; i < this.values.length; i++)
 		{
-			buf.append(v.toString()+"\n");
+			if (this.values[i] == Undefined)
+				continue;
+
+			SASVariable v = this.variables[i];
+			buf.append("["+v.getObject()+"] - ID- "+v.getId() + " ("+v.getZeroId()+")");
+			for (int j = 0; j < v.getDomain().size(); j++)
+			{
+				buf.append("\n\t");
+				if (j == this.values[i])
+					buf.append("*");
+
+				buf.append(v.getValue(j).toString());
+			}
+			buf.append("\n\n");
 		}
 		
 		return buf.toString();
@@ -0,0 +1,305 @@
+package sas.data;
+
+import java.util.Arrays;
+
+/**
+ * Interns {@link SASState}s for use in search. Each state is packed into the minimum number of bits
+ * required to hold the value of every variable, and stored in a single segmented pool of longs. Every
+ * unique state is handed a dense integer ID, so that closed lists, parent pointers and g-values can
+ * be held in primitive arrays indexed by state ID rather than in hash-based collections of states.
+ * <p>
+ * Duplicate detection uses an open-addressing hash table over the packed representation, so
+ * looking up a state does not allocate.
+ *
+ * @author David Pattison
+ *
+ */
+public class StateRegistry
+{
+	/**
+	 * Value returned by {@link #lookup(SASState)} when a state has not been registered.
+	 */
+	public static final int NotFound = -1;
+
+	private static final int SegmentShift = 14; //16384 states per segment
+	private static final int StatesPerSegment = 1 << SegmentShift;
+	private static final int SegmentMask = StatesPerSegment - 1;
+	private static final float MaxLoad = 0.75f;
+
+	//the variable table used to reconstruct states
+	private final SASVariable[] variables;
+
+	//packing layout, indexed by variable ID
+	private final int[] wordIndex;
+	private final int[] shift;
+	private final long[] mask;
+	private final int wordsPerState;
+
+	private long[][] segments;
+	private int[] hashes; //cached hash of each registered state, used when resizing the table
+	private int size;
+
+	private int[] table; //state IDs, or NotFound if the slot is empty
+	private int tableMask;
+
+	private final long[] buffer; //scratch space for packing a state before it is looked up
+
+	/**
+	 * Creates a registry for states of the specified problem. The number of bits used for each variable is
+	 * derived from the size of its domain.
+	 * @param problem
+	 */
+	public StateRegistry(SASProblem problem)
+	{
+		int maxId = -1;
+		for (Integer id : problem.variables.keySet())
+		{
+			maxId = Math.max(maxId, id);
+		}
+
+		this.variables = new SASVariable[maxId + 1];
+		for (SASVariable v : problem.variables.values())
+		{
+			this.variables[v.getId()] = v;
+		}
+
+		this.wordIndex = new int[this.variables.length];
+		this.shift = new int[this.variables.length];
+		this.mask = new long[this.variables.length];
+
+		int word = 0;
+		int bit = 0;
+		for (int i = 0; i < this.variables.length; i++)
+		{
+			//values are stored offset by one, so that 0 can represent an undefined variable
+			int range = this.variables[i] == null ? 1 : this.variables[i].getDomain().size() + 1;
+			int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(range - 1));
+
+			//variables never straddle two words
+			if (bit + bits > 64)
+			{
+				++word;
+				bit = 0;
+			}
+
+			this.wordIndex[i] = word;
+			this.shift[i] = bit;
+			this.mask[i] = (1L << bits) - 1;
+
+			bit += bits;
+		}
+		this.wordsPerState = word + 1;
+
+		this.segments = new long[1][];
+		this.hashes = new int[StatesPerSegment];
+		this.size = 0;
+
+		this.table = new int[1024];
+		Arrays.fill(this.table, NotFound);
+		this.tableMask = this.table.length - 1;
+
+		this.buffer = new long[this.wordsPerState];
+	}
+
+	/**
+	 * Registers the specified state, if it has not already been registered.
+	 * @param state
+	 * @return The ID of the state. This is the ID it was previously assigned if it was already present in the registry.
+	 */
+	public int insert(SASState state)
+	{
+		this.pack(state, this.buffer);
+		int hash = this.hash(this.buffer);
+
+		int slot = this.findSlot(this.buffer, hash);
+		if (this.table[slot] != NotFound)
+			return this.table[slot];
+
+		int id = this.size++;
+		this.ensureCapacity(id);
+
+		long[] segment = this.segments[id >>> SegmentShift];
+		System.arraycopy(this.buffer, 0, segment, (id & SegmentMask) * this.wordsPerState, this.wordsPerState);
+		this.hashes[id] = hash;
+		this.table[slot] = id;
+
+		if (this.size > this.table.length * MaxLoad)
+			this.resizeTable();
+
+		return id;
+	}
+
+	/**
+	 * Gets the ID of the specified state.
+	 * @param state
+	 * @return The ID of the state, or {@link #NotFound} if it has not been registered.
+	 */
+	public int lookup(SASState state)
+	{
+		this.pack(state, this.buffer);
+		return this.table[this.findSlot(this.buffer, this.hash(this.buffer))];
+	}
+
+	/**
+	 * Determines whether the specified state has been registered.
+	 * @param state
+	 * @return
+	 */
+	public boolean contains(SASState state)
+	{
+		return this.lookup(state) != NotFound;
+	}
+
+	/**
+	 * Reconstructs the state with the specified ID. A new state is returned on every call.
+	 * @param id
+	 * @return
+	 * @throws IndexOutOfBoundsException Thrown if the ID has not been assigned to a state.
+	 */
+	public SASState getState(int id)
+	{
+		if (id < 0 || id >= this.size)
+			throw new IndexOutOfBoundsException("No state with ID "+id);
+
+		long[] segment = this.segments[id >>> SegmentShift];
+		int offset = (id & SegmentMask) * this.wordsPerState;
+
+		int[] values = new int[this.variables.length];
+		for (int i = 0; i < this.variables.length; i++)
+		{
+			values[i] = (int) ((segment[offset + this.wordIndex[i]] >>> this.shift[i]) & this.mask[i]) - 1;
+		}
+
+		return new SASState(this.variables, values);
+	}
+
+	/**
+	 * Gets the value of a single variable in the state with the specified ID, without reconstructing the state.
+	 * @param id
+	 * @param variable
+	 * @return The value index, or {@link SASState#Undefined} if the variable is not in the state.
+	 */
+	public int getValueIndex(int id, int variable)
+	{
+		long[] segment = this.segments[id >>> SegmentShift];
+		int offset = (id & SegmentMask) * this.wordsPerState;
+
+		return (int) ((segment[offset + this.wordIndex[variable]] >>> this.shift[variable]) & this.mask[variable]) - 1;
+	}
+
+	/**
+	 * Returns the number of unique states which have been registered. State IDs are in the range [0, size).
+	 * @return
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of longs used to store a single state.
+	 * @return
+	 */
+	public int getWordsPerState()
+	{
+		return this.wordsPerState;
+	}
+
+	/**
+	 * Removes all states from the registry. Previously assigned IDs are invalidated.
+	 */
+	public void clear()
+	{
+		this.size = 0;
+		Arrays.fill(this.table, NotFound);
+	}
+
+	private void pack(SASState state, long[] packed)
+	{
+		Arrays.fill(packed, 0);
+
+		int length = Math.min(state.getCapacity(), this.variables.length);
+		for (int i = 0; i < length; i++)
+		{
+			long value = state.getValueIndex(i) + 1;
+			packed[this.wordIndex[i]] |= (value & this.mask[i]) << this.shift[i];
+		}
+	}
+
+	private int hash(long[] packed)
+	{
+		long h = 0x9E3779B97F4A7C15L;
+		for (long w : packed)
+		{
+			h ^= w;
+			h *= 0xBF58476D1CE4E5B9L;
+			h ^= h >>> 31;
+		}
+
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Finds the slot which either holds the packed state or is the empty slot where it should be inserted.
+	 */
+	private int findSlot(long[] packed, int hash)
+	{
+		int slot = hash & this.tableMask;
+		while (true)
+		{
+			int id = this.table[slot];
+			if (id == NotFound || (this.hashes[id] == hash && this.equalsPacked(id, packed)))
+				return slot;
+
+			slot = (slot + 1) & this.tableMask;
+		}
+	}
+
+	private boolean equalsPacked(int id, long[] packed)
+	{
+		long[] segment = this.segments[id >>> SegmentShift];
+		int offset = (id & SegmentMask) * this.wordsPerState;
+		for (int i = 0; i < this.wordsPerState; i++)
+		{
+			if (segment[offset + i] != packed[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	private void ensureCapacity(int id)
+	{
+		int segmentIndex = id >>> SegmentShift;
+		if (segmentIndex >= this.segments.length)
+		{
+			this.segments = Arrays.copyOf(this.segments, this.segments.length * 2);
+		}
+		if (this.segments[segmentIndex] == null)
+		{
+			this.segments[segmentIndex] = new long[StatesPerSegment * this.wordsPerState];
+		}
+
+		if (id >= this.hashes.length)
+		{
+			this.hashes = Arrays.copyOf(this.hashes, this.hashes.length * 2);
+		}
+	}
+
+	private void resizeTable()
+	{
+		this.table = new int[this.table.length * 2];
+		Arrays.fill(this.table, NotFound);
+		this.tableMask = this.table.length - 1;
+
+		for (int id = 0; id < this.size; id++)
+		{
+			int slot = this.hashes[id] & this.tableMask;
+			while (this.table[slot] != NotFound)
+			{
+				slot = (slot + 1) & this.tableMask;
+			}
+			this.table[slot] = id;
+		}
+	}
+}
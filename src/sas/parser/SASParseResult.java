@@ -0,0 +1,58 @@
+package sas.parser;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import sas.data.SASProblem;
+
+/**
+ * The result of parsing a single set of translator files -- the unfiltered problem from "output.sas", 
+ * "test.groups" and "all.groups", the optimised problem from the preprocessor's "output", and the map of 
+ * preprocess variable indices to variable IDs. Each parse produces new problems which are not shared with
+ * any other result.
+ * 
+ * @author David Pattison
+ * @see SASplusParser#parseProblem(java.io.File, java.io.File, java.io.File, java.io.File)
+ */
+public final class SASParseResult
+{
+	private final SASProblem allProblem;
+	private final SASProblem optimisedProblem;
+	private final Map<Integer, Integer> varIndexMap;
+	
+	public SASParseResult(SASProblem allProblem, SASProblem optimisedProblem, Map<Integer, Integer> varIndexMap)
+	{
+		this.allProblem = allProblem;
+		this.optimisedProblem = optimisedProblem;
+		this.varIndexMap = Collections.unmodifiableMap(new HashMap<Integer, Integer>(varIndexMap));
+	}
+
+	/**
+	 * Gets the problem containing all, unfiltered information from "output.sas", "test.groups" and 
+	 * "all.groups". This has no DTGs or causal graph.
+	 * @return
+	 */
+	public SASProblem getAllProblem()
+	{
+		return allProblem;
+	}
+
+	/**
+	 * Gets the filtered problem parsed from the preprocessor output, which includes the DTGs and causal graph.
+	 * @return
+	 */
+	public SASProblem getOptimisedProblem()
+	{
+		return optimisedProblem;
+	}
+
+	/**
+	 * Gets the (unmodifiable) map of preprocess variable indices to variable IDs.
+	 * @return
+	 */
+	public Map<Integer, Integer> getVariableIndexMap()
+	{
+		return varIndexMap;
+	}
+}
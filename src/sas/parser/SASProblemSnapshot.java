@@ -0,0 +1,956 @@
+package sas.parser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import sas.data.CausalGraph;
+import sas.data.DTGActionEdge;
+import sas.data.DomainTransitionGraph;
+import sas.data.NoneOfThoseProposition;
+import sas.data.SASAction;
+import sas.data.SASAxiom;
+import sas.data.SASDerivedPredicate;
+import sas.data.SASDerivedProposition;
+import sas.data.SASDomainObject;
+import sas.data.SASEffect;
+import sas.data.SASLiteral;
+import sas.data.SASMutexGroup;
+import sas.data.SASParameter;
+import sas.data.SASProblem;
+import sas.data.SASProposition;
+import sas.data.SASState;
+import sas.data.SASVariable;
+import sas.util.CausalGraphLink;
+
+/**
+ * A versioned binary snapshot of a parsed {@link SASProblem}, which can be loaded far faster than the
+ * translator's text files can be re-parsed. A snapshot holds the problem's variables and their domains,
+ * initial state, goal, actions, axioms, mutex groups, reachable facts, current state, the edges of every
+ * DTG and of the causal graph, and whether each DTG's universal transitions have been marked.
+ * <p>
+ * The file is a header, a table of every string used, and a single table of ints holding everything else,
+ * in which variables, values, actions and axioms are referred to by their IDs. Doubles are stored as the two
+ * halves of their bit pattern. Snapshots are read through a memory map, with the int table copied out in
+ * one bulk transfer, and then decoded into the object model -- DTG vertices and edges refer to the same
+ * literal and action objects as the rest of the problem, as they do after parsing.
+ * <p>
+ * Snapshots written by a different version of this class are rejected rather than misread.
+ *
+ * @author David Pattison
+ * @see SASplusParser#parseProblem(File, File, File, File)
+ */
+public class SASProblemSnapshot
+{
+	/**
+	 * The first int of every snapshot, "SASP" in ASCII.
+	 */
+	public static final int Magic = 0x53415350;
+
+	/**
+	 * The version of the format written by this class. Incremented whenever the format changes.
+	 */
+	public static final int Version = 2;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int HeaderSize = 16; //magic, version, string table length, int table length
+
+	//tags which begin each section of the int table, checked when reading
+	private static final int VariablesSection = 1;
+	private static final int DerivedPredicatesSection = 2;
+	private static final int InitialSection = 3;
+	private static final int GoalSection = 4;
+	private static final int AxiomsSection = 5;
+	private static final int ActionsSection = 6;
+	private static final int MutexesSection = 7;
+	private static final int ReachableFactsSection = 8;
+	private static final int StateSection = 9;
+	private static final int CausalGraphSection = 10;
+	private static final int EndSection = 11;
+
+	//parameter types
+	private static final int NoParameter = 0;
+	private static final int NamedParameter = 1;
+	private static final int DomainObjectParameter = 2;
+
+	//literal types
+	private static final int NoneOfThoseLiteral = 0;
+	private static final int PropositionLiteral = 1;
+	private static final int DerivedPropositionLiteral = 2;
+
+	//action types
+	private static final int ActionEntry = 0;
+	private static final int AxiomEntry = 1;
+
+	private SASProblemSnapshot()
+	{
+	}
+
+	/**
+	 * Writes a snapshot of the problem, replacing the file if it exists.
+	 * @param problem
+	 * @param file
+	 * @throws IOException Thrown if the file cannot be written.
+	 * @throws IllegalArgumentException Thrown if the problem refers to a literal or action which is not part of it,
+	 * such as a DTG edge whose action is not in the problem's actions or axioms.
+	 */
+	public static void write(SASProblem problem, File file) throws IOException
+	{
+		Encoder encoder = new Encoder();
+		encoder.encode(problem);
+
+		ByteBuffer buffer = encoder.toBuffer();
+		FileOutputStream out = new FileOutputStream(file);
+		try
+		{
+			FileChannel channel = out.getChannel();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a snapshot.
+	 * @param file
+	 * @return A new problem, equivalent to the one written.
+	 * @throws IOException Thrown if the file cannot be read, was written by a different version, or is corrupt.
+	 */
+	public static SASProblem read(File file) throws IOException
+	{
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = in.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			return new Decoder(buffer, file).decode();
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException("Snapshot "+file+" is truncated", e);
+		}
+		catch (RuntimeException e)
+		{
+			//an index or count out of range
+			throw new IOException("Snapshot "+file+" is corrupt", e);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns true if the file begins with a snapshot header of the current version.
+	 * @param file
+	 * @return
+	 */
+	public static boolean isSnapshot(File file)
+	{
+		if (file.isFile() == false || file.length() < HeaderSize)
+			return false;
+
+		try
+		{
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try
+			{
+				return in.readInt() == Magic && in.readInt() == Version;
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Flattens a problem into the string and int tables.
+	 */
+	private static class Encoder
+	{
+		private int[] table = new int[4096];
+		private int size = 0;
+		private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+
+		private SASProblem problem;
+		private final Map<SASAxiom, Integer> axiomIds = new IdentityHashMap<SASAxiom, Integer>();
+		private final Map<SASAction, Integer> actionIds = new IdentityHashMap<SASAction, Integer>();
+
+		public void encode(SASProblem problem)
+		{
+			this.problem = problem;
+
+			this.add(problem.optimisePlanLength ? 1 : 0);
+			this.addString(problem.name);
+
+			this.add(VariablesSection);
+			this.add(problem.variables.size());
+			for (SASVariable v : problem.variables.values())
+				this.addVariable(v);
+
+			this.add(DerivedPredicatesSection);
+			this.add(problem.derivedPredicates.size());
+			for (Entry<Integer, SASDerivedPredicate> e : problem.derivedPredicates.entrySet())
+			{
+				this.add(e.getKey());
+				this.add(e.getValue().getId());
+			}
+
+			this.add(InitialSection);
+			this.addMap(problem.initial);
+			this.add(GoalSection);
+			this.addMap(problem.goal);
+
+			this.add(AxiomsSection);
+			this.add(problem.axioms.size());
+			for (Entry<Integer, Map<Integer, SASAxiom>> layer : problem.axioms.entrySet())
+			{
+				this.add(layer.getKey());
+				this.add(layer.getValue().size());
+				for (Entry<Integer, SASAxiom> e : layer.getValue().entrySet())
+				{
+					this.add(e.getKey());
+					this.addAxiom(e.getValue());
+					this.axiomIds.put(e.getValue(), e.getKey());
+				}
+			}
+
+			this.add(ActionsSection);
+			this.add(problem.actions.size());
+			for (Entry<Integer, SASAction> e : problem.actions.entrySet())
+			{
+				this.add(e.getKey());
+				if (e.getValue() instanceof SASAxiom)
+				{
+					this.add(AxiomEntry);
+					this.add(this.getAxiomId((SASAxiom) e.getValue()));
+				}
+				else
+				{
+					this.add(ActionEntry);
+					this.addAction(e.getValue());
+					this.actionIds.put(e.getValue(), e.getKey());
+				}
+			}
+
+			this.add(MutexesSection);
+			this.add(problem.mutexes.size());
+			for (Entry<Integer, SASMutexGroup> e : problem.mutexes.entrySet())
+			{
+				this.add(e.getKey());
+				this.addParameter(e.getValue().getObject());
+				this.add(e.getValue().getMutexes().size());
+				for (SASLiteral l : e.getValue().getMutexes())
+					this.addLiteral(l);
+			}
+
+			this.add(ReachableFactsSection);
+			this.add(problem.reachableFacts.size());
+			for (SASProposition p : problem.reachableFacts)
+				this.addLiteral(p);
+
+			this.add(StateSection);
+			if (problem.state == null)
+			{
+				this.add(-1);
+			}
+			else
+			{
+				int[] ids = problem.state.getVariableIds();
+				this.add(ids.length);
+				for (int id : ids)
+				{
+					this.add(id);
+					this.add(problem.state.getValueIndex(id));
+				}
+			}
+
+			this.add(CausalGraphSection);
+			this.addCausalGraph(problem.causalGraph);
+
+			this.add(EndSection);
+		}
+
+		private void addVariable(SASVariable v)
+		{
+			boolean derived = v instanceof SASDerivedPredicate;
+
+			this.add(derived ? 1 : 0);
+			this.add(v.getId());
+			this.add(v.getZeroId());
+			this.add(v.getDomain().size());
+			this.add(v.getCurrentIndex());
+			this.addParameter(v.getObject());
+			if (derived)
+			{
+				SASDerivedPredicate dp = (SASDerivedPredicate) v;
+				this.add(dp.getAxiomLayer());
+				this.add(dp.getDefaultValue());
+				this.addString(dp.getSymbol().getName());
+				this.add(dp.getParameters().size());
+				for (SASParameter p : dp.getParameters())
+					this.addParameter(p);
+			}
+
+			List<SASLiteral> values = v.getValues();
+			this.add(values.size());
+			for (SASLiteral l : values)
+				this.addLiteral(l);
+		}
+
+		private void addAction(SASAction a)
+		{
+			this.add(a.getOperatorId());
+			this.addString(a.getOperatorName());
+			this.addDouble(a.getCost());
+			this.addMap(a.getPrevails());
+
+			this.add(a.getEffects().size());
+			for (Entry<Integer, SASEffect> e : a.getEffects().entrySet())
+			{
+				this.add(e.getKey());
+				this.add(e.getValue().precondition);
+				this.add(e.getValue().effect);
+			}
+
+			this.addMap(a.getEffectConditions());
+		}
+
+		private void addAxiom(SASAxiom a)
+		{
+			this.addAction(a);
+			this.add(a.getDerivedPredicate().getId());
+			this.addMap(a.getAxiomCondition());
+		}
+
+		private void addCausalGraph(CausalGraph cg)
+		{
+			if (cg == null)
+			{
+				this.add(-1);
+				return;
+			}
+
+			//vertices are written in the causal graph's order, and edges refer to them by position
+			Map<DomainTransitionGraph, Integer> positions = new IdentityHashMap<DomainTransitionGraph, Integer>();
+			this.add(cg.vertexSet().size());
+			for (DomainTransitionGraph dtg : cg.vertexSet())
+			{
+				positions.put(dtg, positions.size());
+				this.addDTG(dtg);
+			}
+
+			this.add(cg.edgeSet().size());
+			for (CausalGraphLink e : cg.edgeSet())
+			{
+				this.add(positions.get(cg.getEdgeSource(e)));
+				this.add(positions.get(cg.getEdgeTarget(e)));
+				this.add(Float.floatToIntBits(e.getWeight()));
+			}
+		}
+
+		private void addDTG(DomainTransitionGraph dtg)
+		{
+			this.add(dtg.getDTGIndex());
+			this.add(dtg.getVariable().getId());
+
+			this.add(dtg.vertexSet().size());
+			for (SASLiteral l : dtg.vertexSet())
+				this.addValueReference(l);
+
+			this.add(dtg.edgeSet().size());
+			for (DTGActionEdge e : dtg.edgeSet())
+			{
+				this.addValueReference(e.getPc());
+				this.addValueReference(e.getEffect());
+				this.addActionReference(e.getAction());
+				this.addDouble(e.getWeight());
+				this.add(e.getAssociatedPcs().size());
+				for (SASLiteral pc : e.getAssociatedPcs())
+					this.addValueReference(pc);
+			}
+
+			this.add(dtg.hasUniversalTransitions() ? 1 : 0);
+		}
+
+		/**
+		 * Adds a literal which is one of the values of a variable as its variable and value IDs.
+		 */
+		private void addValueReference(SASLiteral l)
+		{
+			SASVariable v = this.problem.variables.get(l.getVariableId());
+			if (v == null || l.getValueId() < 0 || l.getValueId() >= v.getValues().size() || v.getValue(l.getValueId()) != l)
+				throw new IllegalArgumentException("Literal "+l+" is not a value of any variable in the problem");
+
+			this.add(l.getVariableId());
+			this.add(l.getValueId());
+		}
+
+		private void addActionReference(SASAction a)
+		{
+			if (a instanceof SASAxiom)
+			{
+				this.add(AxiomEntry);
+				this.add(this.getAxiomId((SASAxiom) a));
+			}
+			else
+			{
+				Integer id = this.actionIds.get(a);
+				if (id == null)
+					throw new IllegalArgumentException("Action "+a+" is not one of the problem's actions");
+
+				this.add(ActionEntry);
+				this.add(id);
+			}
+		}
+
+		private int getAxiomId(SASAxiom a)
+		{
+			Integer id = this.axiomIds.get(a);
+			if (id == null)
+				throw new IllegalArgumentException("Axiom "+a+" is not one of the problem's axioms");
+
+			return id;
+		}
+
+		private void addLiteral(SASLiteral l)
+		{
+			if (l instanceof NoneOfThoseProposition)
+			{
+				this.add(NoneOfThoseLiteral);
+			}
+			else if (l instanceof SASDerivedProposition)
+			{
+				this.add(DerivedPropositionLiteral);
+			}
+			else if (l instanceof SASProposition)
+			{
+				this.add(PropositionLiteral);
+			}
+			else
+			{
+				throw new IllegalArgumentException("Cannot write literal of type "+l.getClass());
+			}
+
+			this.add(l.getVariableId());
+			this.add(l.getValueId());
+			if (l instanceof NoneOfThoseProposition)
+				return;
+
+			SASProposition p = (SASProposition) l;
+			this.addString(p.getPredicateSymbol().getName());
+			this.add(p.getParameters().size());
+			for (SASParameter param : p.getParameters())
+				this.addParameter(param);
+		}
+
+		private void addParameter(SASParameter p)
+		{
+			if (p == null)
+			{
+				this.add(NoParameter);
+				this.add(0);
+			}
+			else if (p instanceof SASDomainObject)
+			{
+				this.add(DomainObjectParameter);
+				this.add(((SASDomainObject) p).getObjectID());
+			}
+			else
+			{
+				this.add(NamedParameter);
+				this.addString(p.getName());
+			}
+		}
+
+		private void addMap(Map<Integer, Integer> map)
+		{
+			this.add(map.size());
+			for (Entry<Integer, Integer> e : map.entrySet())
+			{
+				this.add(e.getKey());
+				this.add(e.getValue());
+			}
+		}
+
+		private void addString(String s)
+		{
+			if (s == null)
+			{
+				this.add(-1);
+				return;
+			}
+
+			Integer index = this.strings.get(s);
+			if (index == null)
+			{
+				index = this.strings.size();
+				this.strings.put(s, index);
+			}
+
+			this.add(index);
+		}
+
+		private void addDouble(double d)
+		{
+			long bits = Double.doubleToLongBits(d);
+			this.add((int) (bits >>> 32));
+			this.add((int) bits);
+		}
+
+		private void add(int value)
+		{
+			if (this.size == this.table.length)
+				this.table = Arrays.copyOf(this.table, this.table.length * 2);
+
+			this.table[this.size++] = value;
+		}
+
+		/**
+		 * Lays out the header, string table and int table in a buffer ready to be written.
+		 */
+		public ByteBuffer toBuffer()
+		{
+			List<byte[]> encoded = new ArrayList<byte[]>(this.strings.size());
+			int stringBytes = 4;
+			for (String s : this.strings.keySet())
+			{
+				byte[] b = s.getBytes(UTF8);
+				encoded.add(b);
+				stringBytes += 4 + b.length;
+			}
+			int padding = (4 - (stringBytes & 3)) & 3; //keeps the int table aligned
+			stringBytes += padding;
+
+			ByteBuffer buffer = ByteBuffer.allocate(HeaderSize + stringBytes + this.size * 4);
+			buffer.putInt(Magic);
+			buffer.putInt(Version);
+			buffer.putInt(stringBytes);
+			buffer.putInt(this.size);
+
+			buffer.putInt(encoded.size());
+			for (byte[] b : encoded)
+			{
+				buffer.putInt(b.length);
+				buffer.put(b);
+			}
+			for (int i = 0; i < padding; i++)
+				buffer.put((byte) 0);
+
+			buffer.asIntBuffer().put(this.table, 0, this.size);
+			buffer.position(0);
+
+			return buffer;
+		}
+	}
+
+	/**
+	 * Rebuilds a problem from the string and int tables.
+	 */
+	private static class Decoder
+	{
+		private final File file;
+		private final String[] strings;
+		private final int[] table;
+		private int position;
+
+		private SASProblem problem;
+
+		public Decoder(ByteBuffer buffer, File file) throws IOException
+		{
+			this.file = file;
+
+			if (buffer.remaining() < HeaderSize || buffer.getInt() != Magic)
+				throw new IOException(file+" is not a SAS+ problem snapshot");
+			int version = buffer.getInt();
+			if (version != Version)
+				throw new IOException("Snapshot "+file+" has version "+version+", expected "+Version);
+
+			int stringBytes = buffer.getInt();
+			int tableSize = buffer.getInt();
+			if (stringBytes < 4 || tableSize < 0 || buffer.remaining() != stringBytes + (long) tableSize * 4)
+				throw new IOException("Snapshot "+file+" has the wrong length");
+
+			int tableStart = buffer.position() + stringBytes;
+			this.strings = new String[buffer.getInt()];
+			for (int i = 0; i < this.strings.length; i++)
+			{
+				byte[] b = new byte[buffer.getInt()];
+				buffer.get(b);
+				this.strings[i] = new String(b, UTF8);
+			}
+
+			buffer.position(tableStart);
+			this.table = new int[tableSize];
+			buffer.asIntBuffer().get(this.table);
+			this.position = 0;
+		}
+
+		public SASProblem decode() throws IOException
+		{
+			SASProblem problem = new SASProblem();
+			this.problem = problem;
+
+			problem.optimisePlanLength = this.next() != 0;
+			problem.name = this.nextString();
+
+			this.expect(VariablesSection);
+			for (int i = this.next(); i > 0; i--)
+			{
+				SASVariable v = this.nextVariable();
+				problem.variables.put(v.getId(), v);
+			}
+
+			this.expect(DerivedPredicatesSection);
+			for (int i = this.next(); i > 0; i--)
+			{
+				int key = this.next();
+				problem.derivedPredicates.put(key, (SASDerivedPredicate) problem.variables.get(this.next()));
+			}
+
+			this.expect(InitialSection);
+			this.nextMap(problem.initial);
+			this.expect(GoalSection);
+			this.nextMap(problem.goal);
+
+			this.expect(AxiomsSection);
+			for (int i = this.next(); i > 0; i--)
+			{
+				int layer = this.next();
+				int count = this.next();
+				Map<Integer, SASAxiom> axioms = new HashMap<Integer, SASAxiom>(count * 2);
+				for (int j = 0; j < count; j++)
+				{
+					int key = this.next();
+					axioms.put(key, this.nextAxiom());
+				}
+				problem.axioms.put(layer, axioms);
+			}
+
+			this.expect(ActionsSection);
+			for (int i = this.next(); i > 0; i--)
+			{
+				int key = this.next();
+				if (this.next() == AxiomEntry)
+					problem.actions.put(key, this.getAxiom(this.next()));
+				else
+					problem.actions.put(key, this.nextAction());
+			}
+
+			this.expect(MutexesSection);
+			for (int i = this.next(); i > 0; i--)
+			{
+				int key = this.next();
+				SASMutexGroup m = new SASMutexGroup(this.nextParameter());
+				for (int j = this.next(); j > 0; j--)
+					m.addMutex(this.nextLiteral());
+
+				problem.mutexes.put(key, m);
+			}
+
+			this.expect(ReachableFactsSection);
+			for (int i = this.next(); i > 0; i--)
+				problem.reachableFacts.add((SASProposition) this.nextLiteral());
+
+			this.expect(StateSection);
+			int stateSize = this.next();
+			if (stateSize >= 0)
+			{
+				SASState state = new SASState();
+				for (int i = 0; i < stateSize; i++)
+				{
+					int var = this.next();
+					int value = this.next();
+					state.addVariable(problem.variables.get(var));
+					state.setValue(var, value);
+				}
+				problem.setCurrentState(state);
+			}
+			else
+			{
+				problem.setCurrentState(null);
+			}
+
+			this.expect(CausalGraphSection);
+			problem.causalGraph = this.nextCausalGraph();
+
+			this.expect(EndSection);
+			if (this.position != this.table.length)
+				throw new IOException("Snapshot "+this.file+" has unexpected data after the end of the problem");
+
+			//the evaluator was built while the problem had no variables or axioms
+			problem.resetAxiomEvaluator();
+
+			return problem;
+		}
+
+		private SASVariable nextVariable()
+		{
+			boolean derived = this.next() != 0;
+			int id = this.next();
+			int zeroId = this.next();
+			int domainSize = this.next();
+			int current = this.next();
+			SASParameter object = this.nextParameter();
+
+			SASVariable v;
+			if (derived)
+			{
+				int layer = this.next();
+				int defaultValue = this.next();
+				SASDerivedPredicate dp = new SASDerivedPredicate(id, zeroId, domainSize, layer, defaultValue, this.nextString());
+				for (int i = this.next(); i > 0; i--)
+					dp.addParameter(this.nextParameter());
+
+				v = dp;
+			}
+			else
+			{
+				v = new SASVariable(id, zeroId, domainSize);
+			}
+
+			int valueCount = this.next();
+			for (int i = 0; i < valueCount; i++)
+			{
+				SASLiteral l = this.nextLiteral();
+				if (i < domainSize)
+					v.getDomain().set(i, l);
+				else
+					v.getDomain().add(l);
+			}
+
+			if (object != null)
+				v.setObject(object);
+			v.setCurrentValue(current);
+
+			return v;
+		}
+
+		private SASAction nextAction()
+		{
+			SASAction a = new SASAction(this.next(), this.nextString());
+			this.nextActionBody(a);
+
+			return a;
+		}
+
+		private SASAxiom nextAxiom()
+		{
+			int id = this.next();
+			String name = this.nextString();
+
+			//the derived predicate follows the body, so is set once the body has been read
+			SASAxiom a = new SASAxiom(id, null);
+			a.setOperatorName(name);
+			this.nextActionBody(a);
+			a.setDerivedPredicate((SASDerivedPredicate) this.problem.variables.get(this.next()));
+
+			Map<Integer, Integer> condition = new HashMap<Integer, Integer>();
+			this.nextMap(condition);
+			a.setAxiomCondition(condition);
+
+			return a;
+		}
+
+		private void nextActionBody(SASAction a)
+		{
+			a.setCost(this.nextDouble());
+
+			Map<Integer, Integer> prevails = new TreeMap<Integer, Integer>();
+			this.nextMap(prevails);
+
+			Map<Integer, SASEffect> effects = new TreeMap<Integer, SASEffect>();
+			for (int i = this.next(); i > 0; i--)
+			{
+				int var = this.next();
+				int pc = this.next();
+				effects.put(var, new SASEffect(pc, this.next()));
+			}
+
+			Map<Integer, Integer> effectConditions = new HashMap<Integer, Integer>();
+			this.nextMap(effectConditions);
+
+			a.setPrevails(prevails);
+			a.setEffects(effects);
+			a.setEffectConditions(effectConditions);
+		}
+
+		private CausalGraph nextCausalGraph()
+		{
+			int vertexCount = this.next();
+			if (vertexCount < 0)
+				return null;
+
+			CausalGraph cg = new CausalGraph();
+			DomainTransitionGraph[] dtgs = new DomainTransitionGraph[vertexCount];
+			for (int i = 0; i < vertexCount; i++)
+			{
+				dtgs[i] = this.nextDTG();
+				cg.addVertex(dtgs[i]);
+			}
+
+			for (int i = this.next(); i > 0; i--)
+			{
+				DomainTransitionGraph from = dtgs[this.next()];
+				DomainTransitionGraph to = dtgs[this.next()];
+				CausalGraphLink e = cg.addEdge(from.getDTGIndex(), to.getDTGIndex());
+				e.setWeight(Float.intBitsToFloat(this.next()));
+			}
+			cg.findLeavesAndRoots();
+
+			return cg;
+		}
+
+		private DomainTransitionGraph nextDTG()
+		{
+			int index = this.next();
+			DomainTransitionGraph dtg = new DomainTransitionGraph(index, this.problem.variables.get(this.next()));
+
+			for (int i = this.next(); i > 0; i--)
+				dtg.addVertex(this.nextValueReference());
+
+			for (int i = this.next(); i > 0; i--)
+			{
+				SASLiteral pc = this.nextValueReference();
+				SASLiteral effect = this.nextValueReference();
+				SASAction action = this.nextActionReference();
+				double weight = this.nextDouble();
+
+				DTGActionEdge edge = new DTGActionEdge(pc, action, effect);
+				for (int j = this.next(); j > 0; j--)
+					edge.addAssociatedPrecondition(this.nextValueReference());
+				edge.setWeight(weight);
+
+				dtg.addTransition(edge);
+			}
+
+			if (this.next() != 0)
+				dtg.decompileUniversalTransitions();
+
+			return dtg;
+		}
+
+		private SASLiteral nextValueReference()
+		{
+			int var = this.next();
+			return this.problem.variables.get(var).getValue(this.next());
+		}
+
+		private SASAction nextActionReference()
+		{
+			if (this.next() == AxiomEntry)
+				return this.getAxiom(this.next());
+
+			return this.problem.actions.get(this.next());
+		}
+
+		private SASAxiom getAxiom(int id)
+		{
+			SASAxiom a = this.problem.getAxiom(id);
+			if (a == null)
+				throw new IllegalStateException("Unknown axiom "+id);
+
+			return a;
+		}
+
+		private SASLiteral nextLiteral()
+		{
+			int type = this.next();
+			int var = this.next();
+			int value = this.next();
+
+			SASProposition p;
+			if (type == NoneOfThoseLiteral)
+			{
+				p = new NoneOfThoseProposition();
+			}
+			else
+			{
+				String symbol = this.nextString();
+				if (type == DerivedPropositionLiteral)
+					p = new SASDerivedProposition(symbol);
+				else
+					p = new SASProposition(symbol);
+
+				for (int i = this.next(); i > 0; i--)
+					p.addParameter(this.nextParameter());
+			}
+
+			p.setVariableId(var);
+			p.setValueId(value);
+
+			return p;
+		}
+
+		private SASParameter nextParameter()
+		{
+			int type = this.next();
+			if (type == NamedParameter)
+				return new SASParameter(this.nextString());
+
+			int value = this.next();
+			if (type == DomainObjectParameter)
+				return new SASDomainObject(value);
+
+			return null;
+		}
+
+		private void nextMap(Map<Integer, Integer> map)
+		{
+			for (int i = this.next(); i > 0; i--)
+			{
+				int key = this.next();
+				map.put(key, this.next());
+			}
+		}
+
+		private String nextString()
+		{
+			int index = this.next();
+			return index < 0 ? null : this.strings[index];
+		}
+
+		private double nextDouble()
+		{
+			long high = this.next();
+			long low = this.next() & 0xFFFFFFFFL;
+			return Double.longBitsToDouble((high << 32) | low);
+		}
+
+		private int next()
+		{
+			return this.table[this.position++];
+		}
+
+		private void expect(int section) throws IOException
+		{
+			int found = this.next();
+			if (found != section)
+				throw new IOException("Snapshot "+this.file+" is corrupt -- expected section "+section+", found "+found);
+		}
+	}
+}
@@ -0,0 +1,681 @@
+package sas.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import sas.data.CausalGraph;
+import sas.data.DTGActionEdge;
+import sas.data.DomainTransitionGraph;
+import sas.data.SASAction;
+import sas.data.SASAxiom;
+import sas.data.SASDerivedPredicate;
+import sas.data.SASEffect;
+import sas.data.SASLiteral;
+import sas.data.SASProblem;
+import sas.data.SASVariable;
+import sas.parser.SASplusParser.ParseContext;
+import sas.util.CausalGraphLink;
+
+/**
+ * A hand-written parser for the translator's "output.sas" and the preprocessor's "output", used in place of
+ * the generated parser when it is requested by {@link SASplusParser#parseProblem(File, File, File, File, boolean)},
+ * or by the "sas.parser.streaming" system property. The file is
+ * read through a fixed size buffer which is refilled from the file's channel, and is scanned a byte at a
+ * time -- integers are accumulated directly from their digits and keywords are compared against the bytes
+ * in the buffer, so no strings are created other than for variable and action names.
+ * <p>
+ * Each method mirrors the grammar rule of the same name in SAS+.jj, reading the same values in the same order
+ * and building the problem in the same way, so both parsers produce identical problems from the same file.
+ *
+ * @author David Pattison
+ * @see SASplusParser#parseProblem(File, File, File, File)
+ */
+class SASStreamingParser
+{
+	private static final int BufferSize = 1 << 16;
+
+	private final ReadableByteChannel channel;
+	private final File file;
+	private final ParseContext context;
+
+	private final byte[] buffer;
+	private final ByteBuffer wrapper;
+	private int position, limit;
+	private boolean endOfFile;
+	private int line;
+
+	private SASStreamingParser(File file, ReadableByteChannel channel, ParseContext context)
+	{
+		this.file = file;
+		this.channel = channel;
+		this.context = context;
+
+		this.buffer = new byte[BufferSize];
+		this.wrapper = ByteBuffer.wrap(this.buffer);
+		this.position = 0;
+		this.limit = 0;
+		this.endOfFile = false;
+		this.line = 1;
+	}
+
+	/**
+	 * Parses "output.sas" into the context's unfiltered problem.
+	 */
+	static void parseOutputSAS(File file, ParseContext context) throws IOException, ParseException
+	{
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			SASStreamingParser parser = new SASStreamingParser(file, in.getChannel(), context);
+			parser.parseOutputSAS(context.all);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Parses the preprocessor's "output" into the context's optimised problem.
+	 */
+	static void parsePreprocess(File file, ParseContext context) throws IOException, ParseException
+	{
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			SASStreamingParser parser = new SASStreamingParser(file, in.getChannel(), context);
+			parser.parsePreprocess(context.optimised);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private void parseOutputSAS(SASProblem sp) throws IOException, ParseException
+	{
+		if (this.isNextKeyword("begin_metric"))
+			this.parseMetric(sp);
+		this.parseVariableSection(sp);
+		this.parseInitialState(sp);
+		this.parseGoal(sp);
+		this.parseOperators(sp);
+		if (this.isNextNumber())
+			this.parseAxioms(sp);
+
+		this.skipWhitespace();
+		if (this.peek() >= 0)
+			throw this.error("Expected end of file");
+	}
+
+	private void parsePreprocess(SASProblem sp) throws IOException, ParseException
+	{
+		this.nextInt(); //the legacy fast downward mpt solveable flag
+		if (this.isNextKeyword("begin_metric"))
+			this.parseMetric(sp);
+		this.parseVariableSection(sp);
+		this.parseInitialState(sp);
+		this.parseGoal(sp);
+		this.parseOperators(sp);
+		this.parseAxioms(sp);
+		this.parseSG();
+		Map<Integer, DomainTransitionGraph> dtgs = this.parseDTGs(sp);
+		this.parseCG(sp, dtgs.values());
+	}
+
+	private void parseMetric(SASProblem sp) throws IOException, ParseException
+	{
+		this.expect("begin_metric");
+		sp.optimisePlanLength = this.nextInt() == 0;
+		this.expect("end_metric");
+	}
+
+	private void parseVariableSection(SASProblem sp) throws IOException, ParseException
+	{
+		int varCount = 0;
+		int axiomCount = 0;
+
+		this.expect("begin_variables");
+		this.nextInt();
+		do
+		{
+			String name = this.nextName();
+			int variable = this.parseInt(name.substring(Math.min(3, name.length())));
+			this.context.varIndexMap.put(varCount, variable);
+
+			if (sp.variables.containsKey(variable) == false)
+			{
+				int valueCount = this.nextInt();
+				int axiomLayer = this.nextInt();
+
+				SASVariable v = new SASVariable(variable, varCount, valueCount);
+				if (axiomLayer > -1)
+				{
+					v = new SASDerivedPredicate(variable, varCount, valueCount, axiomLayer, "axiom_variable" + axiomCount);
+
+					if (sp.derivedPredicates.containsKey(axiomCount) == false)
+						sp.derivedPredicates.put(axiomCount, (SASDerivedPredicate) v);
+					else
+						v = sp.derivedPredicates.get(axiomCount);
+
+					sp.axioms.put(axiomLayer, new HashMap<Integer, SASAxiom>());
+
+					axiomCount++;
+				}
+
+				sp.variables.put(variable, v);
+			}
+			else
+			{
+				this.nextInt();
+				this.nextInt();
+			}
+
+			varCount++;
+		}
+		while (this.isNextKeyword("end_variables") == false);
+		this.expect("end_variables");
+	}
+
+	private void parseInitialState(SASProblem sp) throws IOException, ParseException
+	{
+		int count = 0;
+
+		this.expect("begin_state");
+		do
+		{
+			int varId = this.context.varIndexMap.get(count);
+			int varIndex = this.nextInt();
+
+			SASVariable v = sp.variables.get(varId);
+			//if var is a derived predicate then it also must memorise the default value.
+			if (v instanceof SASDerivedPredicate)
+				((SASDerivedPredicate) v).setDefaultValue(varIndex);
+
+			v.setCurrentValue(varIndex);
+			sp.initial.put(varId, varIndex);
+
+			count++;
+		}
+		while (this.isNextNumber());
+		this.expect("end_state");
+	}
+
+	private void parseGoal(SASProblem sp) throws IOException, ParseException
+	{
+		this.expect("begin_goal");
+		this.nextInt();
+		do
+		{
+			int varId = this.context.varIndexMap.get(this.nextInt());
+			sp.goal.put(varId, this.nextInt());
+		}
+		while (this.isNextNumber());
+		this.expect("end_goal");
+	}
+
+	private void parseOperators(SASProblem sp) throws IOException, ParseException
+	{
+		int operatorCount = 0;
+
+		this.nextInt();
+		do
+		{
+			sp.actions.put(operatorCount, this.parseOperator(operatorCount));
+			operatorCount++;
+		}
+		while (this.isNextKeyword("begin_operator"));
+	}
+
+	/**
+	 * Parses an operator. Its conditions and effects are collected before being set on the action, rather than
+	 * set one at a time, as the action's compiled preconditions are rebuilt on every change.
+	 */
+	private SASAction parseOperator(int operatorId) throws IOException, ParseException
+	{
+		this.expect("begin_operator");
+		SASAction a = new SASAction(operatorId, this.nextActionName());
+
+		Map<Integer, Integer> prevails = new TreeMap<Integer, Integer>();
+		int prevailCount = this.nextInt();
+		for (int i = 0; i < prevailCount; i++)
+		{
+			int var = this.context.varIndexMap.get(this.nextInt());
+			prevails.put(var, this.nextInt());
+		}
+
+		Map<Integer, SASEffect> effects = new TreeMap<Integer, SASEffect>();
+		Map<Integer, Integer> effectConditions = new HashMap<Integer, Integer>();
+		int effectCount = this.nextInt();
+		for (int i = 0; i < effectCount; i++)
+		{
+			int[] conditions = this.parseEffectConditions();
+			for (int j = 0; j < conditions.length; j += 2)
+				effectConditions.put(conditions[j], conditions[j + 1]);
+
+			int varId = this.context.varIndexMap.get(this.nextInt());
+			int oldVal = this.nextInt();
+			int newVal = this.nextInt();
+			effects.put(varId, new SASEffect(oldVal, newVal));
+		}
+
+		a.setPrevails(prevails);
+		a.setEffects(effects);
+		a.setEffectConditions(effectConditions);
+
+		a.setCost(this.nextInt());
+		this.expect("end_operator");
+
+		return a;
+	}
+
+	/**
+	 * Reads the count of effect conditions followed by each variable-value pair.
+	 * @return The conditions as consecutive variable and value entries.
+	 */
+	private int[] parseEffectConditions() throws IOException, ParseException
+	{
+		int effectConditions = this.nextInt();
+		int[] arr = new int[effectConditions * 2];
+		for (int i = 0; i < effectConditions; i++)
+		{
+			arr[i * 2] = this.nextInt();
+			arr[i * 2 + 1] = this.nextInt();
+		}
+
+		return arr;
+	}
+
+	private void parseAxioms(SASProblem sp) throws IOException, ParseException
+	{
+		int count = 0;
+
+		this.nextInt(); //0 if no axioms or > 0
+		while (this.isNextKeyword("begin_rule"))
+		{
+			this.expect("begin_rule");
+			SASAxiom p = new SASAxiom(count, sp.derivedPredicates.get(count));
+
+			Map<Integer, Integer> conditions = new HashMap<Integer, Integer>();
+			int conditionCount = this.nextInt();
+			for (int i = 0; i < conditionCount; i++)
+			{
+				int var = this.context.varIndexMap.get(this.nextInt());
+				conditions.put(var, this.nextInt());
+			}
+
+			Map<Integer, SASEffect> effects = new TreeMap<Integer, SASEffect>();
+			while (this.isNextNumber())
+			{
+				int var = this.context.varIndexMap.get(this.nextInt());
+				int oldVal = this.nextInt();
+				int newVal = this.nextInt();
+				effects.put(var, new SASEffect(oldVal, newVal));
+			}
+
+			p.setEffectConditions(conditions);
+			p.setEffects(effects);
+
+			sp.axioms.get(p.getDerivedPredicate().getAxiomLayer()).put(count, p);
+			count++;
+
+			this.expect("end_rule");
+		}
+	}
+
+	private void parseSG() throws IOException, ParseException
+	{
+		this.expect("begin_SG");
+		while (this.isNextKeyword("end_SG") == false)
+		{
+			if (this.skipToken() == false)
+				throw this.error("Expected end_SG");
+		}
+		this.expect("end_SG");
+	}
+
+	/**
+	 * Parses the DTG section of the preprocess file. The map returned is of the form
+	 * (original var ID -> DTG).
+	 */
+	private Map<Integer, DomainTransitionGraph> parseDTGs(SASProblem sp) throws IOException, ParseException
+	{
+		Map<Integer, DomainTransitionGraph> dtgs = new HashMap<Integer, DomainTransitionGraph>();
+		int varCount = 0;
+		while (this.isNextKeyword("begin_DTG"))
+		{
+			int varId = this.context.varIndexMap.get(varCount);
+			dtgs.put(varId, this.parseDTG(varId, sp));
+
+			varCount++;
+		}
+
+		return dtgs;
+	}
+
+	private DomainTransitionGraph parseDTG(int varId, SASProblem sp) throws IOException, ParseException
+	{
+		DomainTransitionGraph dtg = new DomainTransitionGraph(varId, sp.variables.get(varId));
+		int valueCount = 0; //we are working on this value's outgoing transitions
+
+		this.expect("begin_DTG");
+		while (this.isNextNumber())
+		{
+			int numberOfTransitions = this.nextInt();
+			for (int i = 0; i < numberOfTransitions; i++)
+				this.parseDTGTransition(varId, valueCount, dtg, sp);
+
+			valueCount++;
+		}
+		this.expect("end_DTG");
+
+		return dtg;
+	}
+
+	private void parseDTGTransition(int varId, int sourceValue, DomainTransitionGraph dtg, SASProblem sp) throws IOException, ParseException
+	{
+		int targetValue = this.nextInt();
+		int operatorIndex = this.nextInt();
+		int numberOfConditions = this.nextInt();
+
+		SASLiteral source = sp.variables.get(varId).getValue(sourceValue);
+		SASLiteral target = sp.variables.get(varId).getValue(targetValue);
+
+		//transitions of derived variables are made by axioms, all others by actions
+		SASAction operator;
+		if (dtg.getVariable() instanceof SASDerivedPredicate)
+			operator = this.context.optimised.getAxiom(operatorIndex);
+		else
+			operator = this.context.optimised.actions.get(operatorIndex);
+
+		DTGActionEdge edge = new DTGActionEdge(source, operator, target);
+		for (int i = 0; i < numberOfConditions; i++)
+		{
+			int var = this.context.varIndexMap.get(this.nextInt());
+			edge.addAssociatedPrecondition(sp.variables.get(var).getValue(this.nextInt()));
+		}
+
+		dtg.addTransition(edge);
+	}
+
+	private void parseCG(SASProblem sp, Collection<DomainTransitionGraph> dtgs) throws IOException, ParseException
+	{
+		CausalGraph cg = new CausalGraph();
+		//must explicitely add every dtg vertex first
+		for (DomainTransitionGraph dtg : dtgs)
+			cg.addVertex(dtg);
+
+		int varCounter = 0;
+		this.expect("begin_CG");
+		while (this.isNextNumber())
+		{
+			int varId = this.context.varIndexMap.get(varCounter);
+			int arcs = this.nextInt();
+			for (int i = 0; i < arcs; i++)
+			{
+				int target = this.context.varIndexMap.get(this.nextInt());
+				CausalGraphLink e = cg.addEdge(varId, target);
+				e.setWeight(this.nextInt());
+			}
+
+			varCounter++;
+		}
+		this.expect("end_CG");
+
+		cg.findLeavesAndRoots();
+		sp.causalGraph = cg;
+	}
+
+	/**
+	 * Reads an action name, which is the rest of the line, with its words separated by single spaces. Any
+	 * brackets or separators are dropped, as they are by the generated parser.
+	 */
+	private String nextActionName() throws IOException, ParseException
+	{
+		this.skipWhitespace();
+
+		StringBuilder name = new StringBuilder();
+		boolean space = false;
+		int c;
+		while ((c = this.peek()) >= 0 && c != '\n' && c != '\r')
+		{
+			this.position++;
+			if (isNameByte(c))
+			{
+				if (space && name.length() > 0)
+					name.append(' ');
+				name.append((char) c);
+				space = false;
+			}
+			else
+			{
+				space = true;
+			}
+		}
+
+		if (name.length() == 0)
+			throw this.error("Expected action name");
+
+		return name.toString();
+	}
+
+	/**
+	 * Reads a name made of letters, digits, underscores and hyphens.
+	 */
+	private String nextName() throws IOException, ParseException
+	{
+		this.skipWhitespace();
+
+		StringBuilder name = new StringBuilder();
+		int c;
+		while ((c = this.peek()) >= 0 && isNameByte(c))
+		{
+			name.append((char) c);
+			this.position++;
+		}
+
+		if (name.length() == 0)
+			throw this.error("Expected name");
+
+		return name.toString();
+	}
+
+	/**
+	 * Reads an integer directly from the buffer.
+	 */
+	private int nextInt() throws IOException, ParseException
+	{
+		this.skipWhitespace();
+
+		boolean negative = false;
+		if (this.peek() == '-')
+		{
+			negative = true;
+			this.position++;
+		}
+
+		int c = this.peek();
+		if (c < '0' || c > '9')
+			throw this.error("Expected integer");
+
+		long value = 0;
+		while ((c = this.peek()) >= '0' && c <= '9')
+		{
+			value = value * 10 + (c - '0');
+			if (value > (long) Integer.MAX_VALUE + 1)
+				throw this.error("Integer out of range");
+
+			this.position++;
+		}
+
+		if (c >= 0 && (isNameByte(c) || c == '.'))
+			throw this.error("Expected integer");
+
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE)
+			throw this.error("Integer out of range");
+
+		return (int) value;
+	}
+
+	private int parseInt(String s) throws ParseException
+	{
+		try
+		{
+			return Integer.parseInt(s);
+		}
+		catch (NumberFormatException e)
+		{
+			throw this.error("Expected integer, found "+s);
+		}
+	}
+
+	/**
+	 * Returns true if the next token is an integer, without consuming it.
+	 */
+	private boolean isNextNumber() throws IOException
+	{
+		this.skipWhitespace();
+
+		int c = this.peek();
+		if (c == '-' && this.fill(2))
+			c = this.buffer[this.position + 1];
+
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Returns true if the next token is the keyword, without consuming it. Keywords are not case sensitive.
+	 */
+	private boolean isNextKeyword(String keyword) throws IOException
+	{
+		this.skipWhitespace();
+
+		int length = keyword.length();
+		if (this.fill(length) == false)
+			return false;
+
+		for (int i = 0; i < length; i++)
+		{
+			if (Character.toLowerCase((char) this.buffer[this.position + i]) != Character.toLowerCase(keyword.charAt(i)))
+				return false;
+		}
+
+		//the keyword must not be the start of a longer name
+		return this.fill(length + 1) == false || isNameByte(this.buffer[this.position + length]) == false;
+	}
+
+	private void expect(String keyword) throws IOException, ParseException
+	{
+		if (this.isNextKeyword(keyword) == false)
+			throw this.error("Expected "+keyword);
+
+		this.position += keyword.length();
+	}
+
+	/**
+	 * Skips the next token.
+	 * @return False if the end of the file has been reached.
+	 */
+	private boolean skipToken() throws IOException
+	{
+		this.skipWhitespace();
+		if (this.peek() < 0)
+			return false;
+
+		int c;
+		while ((c = this.peek()) >= 0 && c != ' ' && c != '\t' && c != '\r' && c != '\n')
+			this.position++;
+
+		return true;
+	}
+
+	/**
+	 * Skips whitespace and comments, which run from a semicolon to the end of the line.
+	 */
+	private void skipWhitespace() throws IOException
+	{
+		int c;
+		while ((c = this.peek()) >= 0)
+		{
+			if (c == '\n')
+			{
+				this.line++;
+			}
+			else if (c == ';')
+			{
+				while ((c = this.peek()) >= 0 && c != '\n' && c != '\r')
+					this.position++;
+				continue;
+			}
+			else if (c != ' ' && c != '\t' && c != '\r')
+			{
+				return;
+			}
+
+			this.position++;
+		}
+	}
+
+	/**
+	 * Returns the next byte without consuming it, or -1 at the end of the file.
+	 */
+	private int peek() throws IOException
+	{
+		if (this.position < this.limit || this.fill(1))
+			return this.buffer[this.position] & 0xFF;
+
+		return -1;
+	}
+
+	/**
+	 * Ensures that at least the number of bytes specified are in the buffer after the current position,
+	 * moving the remaining bytes to the start of the buffer and reading more if necessary.
+	 * @return False if the end of the file is reached first.
+	 */
+	private boolean fill(int count) throws IOException
+	{
+		if (this.limit - this.position >= count)
+			return true;
+		if (this.endOfFile)
+			return false;
+
+		int remaining = this.limit - this.position;
+		System.arraycopy(this.buffer, this.position, this.buffer, 0, remaining);
+		this.position = 0;
+		this.limit = remaining;
+
+		while (this.limit < count)
+		{
+			this.wrapper.clear();
+			this.wrapper.position(this.limit);
+			int read = this.channel.read(this.wrapper);
+			if (read < 0)
+			{
+				this.endOfFile = true;
+				return false;
+			}
+
+			this.limit += read;
+		}
+
+		return true;
+	}
+
+	private ParseException error(String message)
+	{
+		return new ParseException(message+" at line "+this.line+" of "+this.file);
+	}
+
+	private static boolean isNameByte(int c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+	}
+}
@@ -0,0 +1,472 @@
+package sas.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An on-disk cache of translated and preprocessed SAS+ problems. Each entry is a directory holding the files
+ * "output.sas", "test.groups", "all.groups" and "output", named by the SHA-256 hash of the translator version
+ * and the contents of the domain and problem files, so a renamed copy of a problem still hits the cache and
+ * an edited one never does. The cache is checked before any process is started.
+ * <p>
+ * Entries are written to a temporary directory and then renamed into place, so a partially written entry is
+ * never read, and several processes can share one cache directory. The last-modified time of an entry's directory
+ * is updated whenever it is used, and once the cache is larger than its maximum size the least recently used
+ * entries are deleted.
+ *
+ * @author David Pattison
+ * @see SASTranslator#translate(File, File, PrintStream)
+ */
+public class SASTranslationCache
+{
+	/**
+	 * The default maximum size of the cache, in bytes.
+	 */
+	public static final long DefaultMaxSize = 256L * 1024 * 1024;
+
+	private static final String[] EntryFiles = {"output.sas", "test.groups", "all.groups", "output"};
+	private static final String TempPrefix = "tmp-";
+
+	private final File directory;
+	private final long maxSize;
+	private final String translatorVersion;
+
+	private final AtomicInteger hits, misses;
+
+	/**
+	 * Creates a cache with the default maximum size, whose translator version is found from the translator and
+	 * preprocessor in the SAS+ directory.
+	 * @param directory The directory the cache is stored in. Created if it does not exist.
+	 * @throws IOException Thrown if the directory cannot be created, or the translator cannot be read.
+	 */
+	public SASTranslationCache(File directory) throws IOException
+	{
+		this(directory, DefaultMaxSize, getDefaultTranslatorVersion());
+	}
+
+	/**
+	 * Creates a cache.
+	 * @param directory The directory the cache is stored in. Created if it does not exist.
+	 * @param maxSize The maximum size of all entries, in bytes.
+	 * @param translatorVersion A string which identifies the translator and preprocessor. Entries created by
+	 * other versions are never returned.
+	 * @throws IOException Thrown if the directory cannot be created.
+	 */
+	public SASTranslationCache(File directory, long maxSize, String translatorVersion) throws IOException
+	{
+		if (maxSize < 0)
+			throw new IllegalArgumentException("Maximum cache size must be non-negative, found "+maxSize);
+
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.translatorVersion = translatorVersion;
+		this.hits = new AtomicInteger();
+		this.misses = new AtomicInteger();
+
+		Files.createDirectories(directory.toPath());
+	}
+
+	/**
+	 * Gets a version string for the translator and preprocessor in the SAS+ directory -- the hash of the path and
+	 * contents of every Python module under "lama/translate", in path order, and the preprocessor binary for the
+	 * current OS.
+	 * @return
+	 * @throws IOException Thrown if any file cannot be read.
+	 */
+	public static String getDefaultTranslatorVersion() throws IOException
+	{
+		File home = SASTranslator.getDownwardHome();
+		File translateDir = new File(home, "lama/translate");
+
+		List<File> modules = new ArrayList<File>();
+		findModules(translateDir, modules);
+		if (modules.isEmpty())
+			throw new IOException("No translator modules found in "+translateDir.getAbsolutePath());
+
+		final String root = translateDir.getAbsolutePath();
+		Collections.sort(modules, new Comparator<File>()
+		{
+			@Override
+			public int compare(File a, File b)
+			{
+				return relativePath(root, a).compareTo(relativePath(root, b));
+			}
+		});
+
+		MessageDigest digest = createDigest();
+		for (File m : modules)
+		{
+			update(digest, relativePath(root, m));
+			update(digest, m);
+		}
+		update(digest, SASTranslator.getPreprocessBinary(home));
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Adds every ".py" file in the directory and its subdirectories to the list.
+	 */
+	private static void findModules(File directory, List<File> modules)
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+
+		for (File f : files)
+		{
+			if (f.isDirectory())
+				findModules(f, modules);
+			else if (f.getName().endsWith(".py"))
+				modules.add(f);
+		}
+	}
+
+	/**
+	 * Gets the path of the file relative to the root, with '/' separators so it is the same on every OS.
+	 */
+	private static String relativePath(String root, File file)
+	{
+		return file.getAbsolutePath().substring(root.length()).replace(File.separatorChar, '/');
+	}
+
+	/**
+	 * Gets the translation of the domain and problem from the cache, or translates them and adds the result
+	 * to the cache if there is no entry for them.
+	 * @param domain
+	 * @param pfileNoGoal
+	 * @param sasOutputStream The stream the output of the translator and preprocessor is printed to on a miss.
+	 * @return The parsed problems.
+	 * @throws IOException Thrown if either process cannot be run or exits with a non-zero code, or the
+	 * cache cannot be written.
+	 * @throws InterruptedException
+	 * @throws ParseException
+	 */
+	public SASParseResult translate(File domain, File pfileNoGoal, PrintStream sasOutputStream) throws IOException, InterruptedException, ParseException
+	{
+		File entry = this.getEntry(domain, pfileNoGoal);
+		if (this.isComplete(entry))
+		{
+			try
+			{
+				SASParseResult result = parse(entry);
+				entry.setLastModified(System.currentTimeMillis());
+				this.hits.incrementAndGet();
+
+				return result;
+			}
+			catch (IOException e)
+			{
+				//evicted while being read, so treat as a miss
+			}
+			catch (ParseException e)
+			{
+				//corrupt, so replace it
+				SASTranslator.delete(entry);
+			}
+		}
+		this.misses.incrementAndGet();
+
+		File temp = Files.createTempDirectory(this.directory.toPath(), TempPrefix).toFile();
+		try
+		{
+			SASTranslator.translateToSAS(domain, pfileNoGoal, temp, sasOutputStream);
+
+			SASParseResult result = parse(temp);
+			this.commit(temp, entry);
+			this.evict();
+
+			return result;
+		}
+		finally
+		{
+			SASTranslator.delete(temp);
+		}
+	}
+
+	/**
+	 * Gets the translation of the domain and problem, printing any translator output to System.out.
+	 * @see #translate(File, File, PrintStream)
+	 */
+	public SASParseResult translate(File domain, File pfileNoGoal) throws IOException, InterruptedException, ParseException
+	{
+		return this.translate(domain, pfileNoGoal, System.out);
+	}
+
+	/**
+	 * Returns true if there is an entry for the domain and problem.
+	 * @param domain
+	 * @param pfileNoGoal
+	 * @return
+	 * @throws IOException Thrown if either file cannot be read.
+	 */
+	public boolean contains(File domain, File pfileNoGoal) throws IOException
+	{
+		return this.isComplete(this.getEntry(domain, pfileNoGoal));
+	}
+
+	/**
+	 * Gets the directory of the entry for the domain and problem, which may not exist.
+	 * @param domain
+	 * @param pfileNoGoal
+	 * @return
+	 * @throws IOException Thrown if either file cannot be read.
+	 */
+	public File getEntry(File domain, File pfileNoGoal) throws IOException
+	{
+		MessageDigest digest = createDigest();
+		update(digest, this.translatorVersion);
+		update(digest, domain);
+		update(digest, pfileNoGoal);
+
+		return new File(this.directory, toHex(digest.digest()));
+	}
+
+	/**
+	 * Deletes every entry.
+	 */
+	public void clear()
+	{
+		for (File e : this.getEntries())
+			SASTranslator.delete(e);
+	}
+
+	/**
+	 * Gets the total size of all entries, in bytes.
+	 * @return
+	 */
+	public long getSize()
+	{
+		long size = 0;
+		for (File e : this.getEntries())
+			size += sizeOf(e);
+
+		return size;
+	}
+
+	public long getMaxSize()
+	{
+		return maxSize;
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	public String getTranslatorVersion()
+	{
+		return translatorVersion;
+	}
+
+	/**
+	 * Returns the number of translations which were loaded from the cache.
+	 * @return
+	 */
+	public int getHitCount()
+	{
+		return this.hits.get();
+	}
+
+	/**
+	 * Returns the number of translations which had to be run.
+	 * @return
+	 */
+	public int getMissCount()
+	{
+		return this.misses.get();
+	}
+
+	/**
+	 * Moves a completed translation into place as an entry. If another thread or process has already
+	 * added the entry, the translation is discarded.
+	 */
+	protected void commit(File temp, File entry) throws IOException
+	{
+		try
+		{
+			Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (FileAlreadyExistsException e)
+		{
+			//added concurrently
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			//should not happen, as the temporary directory is inside the cache directory
+			throw new IOException("Cannot move translation into cache directory "+this.directory, e);
+		}
+		catch (IOException e)
+		{
+			//a non-empty target directory also fails, so check whether it was added concurrently
+			if (this.isComplete(entry) == false)
+				throw e;
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the cache is no larger than its maximum size.
+	 */
+	protected void evict()
+	{
+		File[] entries = this.getEntries();
+		long[] sizes = new long[entries.length];
+		long total = 0;
+		for (int i = 0; i < entries.length; i++)
+		{
+			sizes[i] = sizeOf(entries[i]);
+			total += sizes[i];
+		}
+
+		if (total <= this.maxSize)
+			return;
+
+		final long[] used = new long[entries.length];
+		Integer[] order = new Integer[entries.length];
+		for (int i = 0; i < entries.length; i++)
+		{
+			used[i] = entries[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return Long.compare(used[a], used[b]);
+			}
+		});
+
+		for (int i = 0; i < order.length && total > this.maxSize; i++)
+		{
+			SASTranslator.delete(entries[order[i]]);
+			total -= sizes[order[i]];
+		}
+	}
+
+	protected boolean isComplete(File entry)
+	{
+		for (String f : EntryFiles)
+		{
+			if (new File(entry, f).isFile() == false)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets the directory of every entry, excluding translations in progress.
+	 */
+	protected File[] getEntries()
+	{
+		File[] files = this.directory.listFiles();
+		if (files == null)
+			return new File[0];
+
+		List<File> entries = new ArrayList<File>();
+		for (File f : files)
+		{
+			if (f.isDirectory() && f.getName().startsWith(TempPrefix) == false)
+				entries.add(f);
+		}
+
+		return entries.toArray(new File[entries.size()]);
+	}
+
+	private static SASParseResult parse(File entry) throws IOException, ParseException
+	{
+		return SASplusParser.parseProblem(new File(entry, EntryFiles[0]), new File(entry, EntryFiles[1]),
+				new File(entry, EntryFiles[2]), new File(entry, EntryFiles[3]));
+	}
+
+	private static long sizeOf(File entry)
+	{
+		long size = 0;
+		File[] files = entry.listFiles();
+		if (files != null)
+		{
+			for (File f : files)
+				size += f.length();
+		}
+
+		return size;
+	}
+
+	private static MessageDigest createDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			//every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Adds the length of the string's UTF-8 encoding to the digest, followed by the encoding itself.
+	 */
+	private static void update(MessageDigest digest, String string) throws IOException
+	{
+		byte[] bytes = string.getBytes("UTF-8");
+		updateLength(digest, bytes.length);
+		digest.update(bytes);
+	}
+
+	/**
+	 * Adds the length of the file to the digest, followed by its contents. Prefixing the length means that no
+	 * two different sequences of files can produce the same input to the digest.
+	 */
+	private static void update(MessageDigest digest, File file) throws IOException
+	{
+		updateLength(digest, file.length());
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				digest.update(buffer, 0, read);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static void updateLength(MessageDigest digest, long length)
+	{
+		for (int shift = 56; shift >= 0; shift -= 8)
+			digest.update((byte) (length >>> shift));
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder b = new StringBuilder(bytes.length * 2);
+		for (byte x : bytes)
+		{
+			b.append(Character.forDigit((x >> 4) & 0xF, 16));
+			b.append(Character.forDigit(x & 0xF, 16));
+		}
+
+		return b.toString();
+	}
+}
@@ -5,18 +5,29 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 import sas.util.SASException;
 import sas.util.UnsolveableProblemException;
 
+/**
+ * Runs the LAMA translator and preprocessor on a PDDL problem. Both are run directly with {@link ProcessBuilder},
+ * with the preprocessor's input redirected from the translator's "output.sas" file, so no shell or Perl wrapper
+ * is needed. The directory containing the "lama" directory is given by the "downward.home" system property, and
+ * defaults to the working directory.
+ * 
+ * @author David Pattison
+ *
+ */
 public abstract class SASTranslator
 {
 	
 	/**
-	 * Translate the specified PDDL domain and problem into a SAS+ representation. SAS+ output is passed to 
-	 * System.out.
+	 * Translate the specified PDDL domain and problem into a SAS+ representation. The output files are
+	 * written to the working directory, and the translator's output is passed to System.out.
 	 * @param domain
 	 * @param pfileNoGoal
 	 * @throws Exception
@@ -28,8 +39,8 @@ public abstract class SASTranslator
 	}
 	
 	/**
-	 * Translate the specified PDDL domain and problem into a SAS+ representation. SAS+ output is printed to
-	 * the specified print stream.
+	 * Translate the specified PDDL domain and problem into a SAS+ representation. The output files are
+	 * written to the working directory, and the translator's output is printed to the specified print stream.
 	 * @param domain
 	 * @param pfileNoGoal
 	 * @throws Exception
@@ -37,95 +48,169 @@ public abstract class SASTranslator
 	 */
 	public static void translateToSAS(File domain, File pfileNoGoal, PrintStream sasOutputStream) throws Exception, UnsolveableProblemException
 	{
-		String sasDirectory = ".";
-		if (System.getProperties().containsKey("downward.home"))
-		{
-			sasDirectory = System.getProperty("downward.home");
-		}
+		SASTranslator.translateToSAS(domain, pfileNoGoal, new File("."), sasOutputStream);
+	}
+	
+	/**
+	 * Translate the specified PDDL domain and problem into a SAS+ representation. The files "output.sas",
+	 * "test.groups", "all.groups" and "output" are written to the specified directory.
+	 * @param domain
+	 * @param pfileNoGoal
+	 * @param workingDirectory The directory the translator and preprocessor are run in.
+	 * @param sasOutputStream The stream the output of both processes is printed to.
+	 * @throws IOException Thrown if either process cannot be run or exits with a non-zero code.
+	 * @throws InterruptedException
+	 */
+	public static void translateToSAS(File domain, File pfileNoGoal, File workingDirectory, PrintStream sasOutputStream) throws IOException, InterruptedException
+	{
+		File sasDirectory = SASTranslator.getDownwardHome();
 		System.out.println("SAS+ directory is " + sasDirectory);
+		
+		SASTranslator.runProcess(getTranslateCommand(sasDirectory, domain, pfileNoGoal), workingDirectory, null, sasOutputStream);
+		SASTranslator.runProcess(getPreprocessCommand(sasDirectory), workingDirectory, new File(workingDirectory, "output.sas"), sasOutputStream);
+		
+		System.out.println("Finished translation");
+	}
+	
+	/**
+	 * Translates and parses the specified PDDL domain and problem. The translation is done in a new temporary
+	 * directory, which is deleted once the output has been parsed, so any number of problems can be translated
+	 * concurrently.
+	 * @param domain
+	 * @param pfileNoGoal
+	 * @param sasOutputStream The stream the output of the translator and preprocessor is printed to.
+	 * @return The parsed problems.
+	 * @throws IOException Thrown if either process cannot be run or exits with a non-zero code.
+	 * @throws InterruptedException
+	 * @throws ParseException
+	 * @see SASTranslationCache Caches translations of repeated problems on disk.
+	 */
+	public static SASParseResult translate(File domain, File pfileNoGoal, PrintStream sasOutputStream) throws IOException, InterruptedException, ParseException
+	{
+		File workingDirectory = Files.createTempDirectory("sas").toFile();
 		try
 		{
-			String translate, hack;
+			SASTranslator.translateToSAS(domain, pfileNoGoal, workingDirectory, sasOutputStream);
 			
-			String os = System.getProperty("os.name").toLowerCase();
-			if (os.contains("windows"))
-			{
-				//FIXME this will probably break on most systems! 
-				translate = "C:/Python27/python.exe " + sasDirectory
-						+ "/lama/translate/translate.py \"" + domain.getAbsolutePath() + "\" \""
-						+ pfileNoGoal.getAbsolutePath() + "\"";
-				hack = "perl " + sasDirectory + "/sas_hack_new_windows.pl";
-			}
-			else
-			{
-				translate = "python " + sasDirectory
-						+ "/lama/translate/translate.py \"" + domain.getAbsolutePath() + "\" \""
-						+ pfileNoGoal.getAbsolutePath() + "\"";
-				hack = "perl " + sasDirectory + "/sas_hack_new_linux.pl";
-			}
-
-			String[] commands = {translate, hack};
-			Process p;
-			BufferedReader reader;
-			int result;
+			return SASplusParser.parseProblem(new File(workingDirectory, "output.sas"), new File(workingDirectory, "test.groups"), 
+					new File(workingDirectory, "all.groups"), new File(workingDirectory, "output"));
+		}
+		finally
+		{
+			SASTranslator.delete(workingDirectory);
+		}
+	}
+	
+	/**
+	 * Translates and parses the specified PDDL domain and problem, printing the translator's output to System.out.
+	 * @see #translate(File, File, PrintStream)
+	 */
+	public static SASParseResult translate(File domain, File pfileNoGoal) throws IOException, InterruptedException, ParseException
+	{
+		return SASTranslator.translate(domain, pfileNoGoal, System.out);
+	}
+	
+	/**
+	 * Gets the directory containing the "lama" directory.
+	 * @return
+	 */
+	protected static File getDownwardHome()
+	{
+		return new File(System.getProperty("downward.home", "."));
+	}
+	
+	protected static List<String> getTranslateCommand(File sasDirectory, File domain, File pfileNoGoal)
+	{
+		List<String> command = new ArrayList<String>();
+		
+		String os = System.getProperty("os.name").toLowerCase();
+		if (os.contains("windows"))
+			command.add("C:/Python27/python.exe"); //FIXME this will probably break on most systems! 
+		else
+			command.add("python");
+		
+		command.add(new File(sasDirectory, "lama/translate/translate.py").getAbsolutePath());
+		command.add(domain.getAbsolutePath());
+		command.add(pfileNoGoal.getAbsolutePath());
+		
+		return command;
+	}
+	
+	protected static List<String> getPreprocessCommand(File sasDirectory)
+	{
+		List<String> command = new ArrayList<String>();
+		command.add(getPreprocessBinary(sasDirectory).getAbsolutePath());
+		
+		return command;
+	}
+	
+	/**
+	 * Gets the preprocessor binary for the current OS.
+	 * @param sasDirectory The directory containing the "lama" directory.
+	 * @return
+	 */
+	protected static File getPreprocessBinary(File sasDirectory)
+	{
+		String os = System.getProperty("os.name").toLowerCase();
+		if (os.contains("windows"))
+			return new File(sasDirectory, "lama/preprocess/preprocess.exe");
+		else
+			return new File(sasDirectory, "lama/preprocess/preprocess");
+	}
+	
+	/**
+	 * Runs the command in the directory and waits for it to finish. Its standard output and error are merged and 
+	 * printed to the output stream as they are produced, so it can never block on a full pipe.
+	 * @param command
+	 * @param directory
+	 * @param input The file to redirect to the process's standard input, or null if there is none.
+	 * @param output
+	 * @throws IOException Thrown if the process cannot be started or exits with a non-zero code.
+	 * @throws InterruptedException
+	 */
+	protected static void runProcess(List<String> command, File directory, File input, PrintStream output) throws IOException, InterruptedException
+	{
+		System.out.println("\nexecuting: " + command + "\n");
+		
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.directory(directory);
+		builder.redirectErrorStream(true);
+		if (input != null)
+			builder.redirectInput(input);
+		
+		Process p = builder.start();
+		try
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
 			String line;
+			while ((line = reader.readLine()) != null)
+				output.println(line);
+			reader.close();
 			
-			for (int i = 0; i < commands.length; i++)
-			{
-				System.out.println("\nexecuting: " + commands[i] + "\n");
-				p = Runtime.getRuntime().exec(commands[i]);
-				
-				StreamGobbler errorGobbler = new StdErrStreamGobbler(p.getErrorStream());
-
-				// any output?
-				StreamGobbler outputGobbler = new StdOutStreamGobbler(p.getInputStream());
-
-				// start gobblers
-				outputGobbler.start();
-				errorGobbler.start();
-				
-				result = p.waitFor();
-				if (result != 0)
-					throw new IOException(
-							"Process terminated with non 0 exit code.");
-
-//				reader = new BufferedReader(new InputStreamReader(p
-//						.getInputStream()));
-//				line = reader.readLine();
-//				while (line != null)
-//				{
-//					if (line.contains("No relaxed solution!"))
-//						throw new UnsolveableProblemException("Problem has no relaxed solution!");
-//					
-//					sasOutputStream.println(line);
-//					line = reader.readLine();
-//				}
-//				reader.close();
-			}
-			System.out.println("Finished perl translation");
+			int result = p.waitFor();
+			if (result != 0)
+				throw new IOException(command.get(0) + " terminated with exit code " + result);
 		}
-		catch (IOException e)
+		finally
 		{
-			System.err.println("IO Exception occurred: " + e.getMessage());
-			throw e;
+			p.destroy();
 		}
-//		catch (UnsolveableProblemException e)
-//		{
-//			throw e;
-//		}
-		catch (InterruptedException e)
+	}
+	
+	/**
+	 * Deletes the file, or the directory and all of its contents.
+	 * @param file
+	 */
+	protected static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
 		{
-			System.err.println("Translation process was interrupted: "
-					+ e.getMessage());
-			throw e;
+			for (File c : children)
+				SASTranslator.delete(c);
 		}
-		catch (Exception e)
-		{
-			System.err.println("Exception thrown during SAS translation: "
-					+ e.getMessage());
-			e.printStackTrace();
-			throw e;
-		}	
+		
+		file.delete();
 	}
 	
 	public static void errorReceived(Object sender, String output) throws SASException
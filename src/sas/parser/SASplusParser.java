@@ -29,115 +29,223 @@ import java.math.BigDecimal;
 
 public class SASplusParser implements SASplusParserConstants {
         /**
-	 * This problem contains all, infiltered information from the SAS translation, which comprised of the 
-	 * "output.sas", "test.group" and "all.groups". Some of the information in this is copied over to 
-	 * sasProblemOptimised. This has no DTGs or causal graph.
-	 */
+         * This problem contains all, infiltered information from the SAS translation, which comprised of the 
+         * "output.sas", "test.group" and "all.groups". Some of the information in this is copied over to 
+         * sasProblemOptimised. This has no DTGs or causal graph. Only set by {@link #parse(File, File, File, File)}.
+         */
         public static SASProblem sasProblemAll = new SASProblem();
-
+        
         /**
-	 * This problem is the filtered version of the "pure" problem which is parsed in from "output". It 
-	 * included DTGs and the causal graph.
-	 */
+         * This problem is the filtered version of the "pure" problem which is parsed in from "output". It 
+         * included DTGs and the causal graph. Only set by {@link #parse(File, File, File, File)}.
+         */
         public static SASProblem sasProblemOptimised = new SASProblem();
         /**
-	 *The translator doesn't guarantee the contents of the preprocess file will have its variables
-	 *in ascending order- something output.sas does seem to guarantee. Thus we need this incredibly
-	 *annoying index -> variable map for lookups.
-	 */
+         *The translator doesn't guarantee the contents of the preprocess file will have its variables
+         *in ascending order- something output.sas does seem to guarantee. Thus we need this incredibly
+         *annoying index -> variable map for lookups. Only set by {@link #parse(File, File, File, File)}.
+         */
         public static Map<Integer, Integer> varIndexMap = new HashMap<Integer, Integer>();
 
         /**
-	 * The default cost of an action in SAS+. The translator often parses these as zero, but
-	 * in reality we want a transition to cost *something*! In addition to this, it allows a
-	 * distinction between axioms which cost nothing. Defaults to 1.
-	 */
+         * The default cost of an action in SAS+. The translator often parses these as zero, but
+         * in reality we want a transition to cost *something*! In addition to this, it allows a
+         * distinction between axioms which cost nothing. Defaults to 1.
+         */
         private static double DefaultActionCost = 1d;
-
+        
+        /**
+         * Whether "output.sas" and the preprocessor's "output" are read by the hand-written {@link SASStreamingParser}
+         * when no parser is specified. The value of the "sas.parser.streaming" system property.
+         */
+        private static final boolean DefaultUseStreamingParser = Boolean.getBoolean("sas.parser.streaming");
+        
+        /**
+         * Returns true if problems are read by the hand-written streaming parser when no parser is specified.
+         * @return
+         * @see #parseProblem(File, File, File, File, boolean)
+         */
+        public static boolean isStreamingParserDefault()
+        {
+                return SASplusParser.DefaultUseStreamingParser;
+        }
+        
+        /**
+         * The problems and variable index map built up while parsing a single set of translator files, which
+         * are shared by the parser of each file, and which parser reads them.
+         */
+        static class ParseContext
+        {
+                final SASProblem all = new SASProblem();
+                final SASProblem optimised = new SASProblem();
+                final Map<Integer, Integer> varIndexMap = new HashMap<Integer, Integer>();
+                final boolean useStreamingParser;
+                
+                ParseContext()
+                {
+                        this(DefaultUseStreamingParser);
+                }
+                
+                ParseContext(boolean useStreamingParser)
+                {
+                        this.useStreamingParser = useStreamingParser;
+                }
+        }
+        
+        /**
+         * The context this parser adds to. Replaced by the static parsing methods before any file is parsed.
+         */
+        private ParseContext context = new ParseContext();
+        
+        /**
+         * Parses the files output by the translator in the working directory, storing the results in the static fields.
+         * @see #parseProblem(File, File, File, File) Parses without using any static state.
+         */
     public static SASProblem parse() throws FileNotFoundException, IOException, ParseException
     {
-        return SASplusParser.parse(new File("output.sas"), new File("test.groups"), new File("all.groups"), new File("output"));
-    }
-
-    public static SASProblem parse(File outputSas, File testGroups, File allGroups, File output) throws FileNotFoundException, IOException, ParseException
+            return SASplusParser.parse(new File("output.sas"), new File("test.groups"), new File("all.groups"), new File("output"));
+    } 
+    
+        /**
+         * Parses the files output by the translator, storing the results in the static fields.
+         * @return The optimised problem.
+         * @see #parseProblem(File, File, File, File) Parses without using any static state.
+         */
+    public static synchronized SASProblem parse(File outputSas, File testGroups, File allGroups, File output) throws FileNotFoundException, IOException, ParseException
     {
-                reset();
+            SASParseResult result = SASplusParser.parseProblem(outputSas, testGroups, allGroups, output);
+            
+                SASplusParser.sasProblemAll = result.getAllProblem();
+                SASplusParser.sasProblemOptimised = result.getOptimisedProblem();
+                SASplusParser.varIndexMap = new HashMap<Integer, Integer>(result.getVariableIndexMap());
 
-                parseOutputSAS(outputSas, SASplusParser.sasProblemAll);
+                return sasProblemOptimised; 
+        }
+    
+        /**
+         * Parses the files output by the translator, using the default parser. No static state is used, so any 
+         * number of problems can be parsed concurrently.
+         * @param outputSas The "output.sas" file.
+         * @param testGroups The "test.groups" file.
+         * @param allGroups The "all.groups" file.
+         * @param output The preprocessor's "output" file.
+         * @return The parsed problems.
+         * @see #isStreamingParserDefault()
+         */
+    public static SASParseResult parseProblem(File outputSas, File testGroups, File allGroups, File output) throws FileNotFoundException, IOException, ParseException
+    {
+            return SASplusParser.parseProblem(outputSas, testGroups, allGroups, output, DefaultUseStreamingParser);
+    }
+    
+        /**
+         * Parses the files output by the translator. No static state is used, so any number of problems
+         * can be parsed concurrently, each with either parser.
+         * @param outputSas The "output.sas" file.
+         * @param testGroups The "test.groups" file.
+         * @param allGroups The "all.groups" file.
+         * @param output The preprocessor's "output" file.
+         * @param useStreamingParser If true, "output.sas" and "output" are read by the hand-written 
+         * {@link SASStreamingParser}, which is considerably faster on large files, rather than the generated parser. 
+         * Both produce the same problems.
+         * @return The parsed problems.
+         */
+    public static SASParseResult parseProblem(File outputSas, File testGroups, File allGroups, File output, boolean useStreamingParser) throws FileNotFoundException, IOException, ParseException
+    {
+            ParseContext context = new ParseContext(useStreamingParser);
+            
+                parseOutputSAS(outputSas, context);
                 System.out.println("Successfully parsed output.sas");
-
-                parseTestGroups(testGroups, SASplusParser.sasProblemAll);
+                parseTestGroups(testGroups, context);
                 System.out.println("Successfully parsed test.groups");
-                parseAllGroups(allGroups, SASplusParser.sasProblemAll);
+                parseAllGroups(allGroups, context);
                 System.out.println("Successfully parsed all.groups");
-
+                
                 //need to add mutexes and variables to the optimised problem because they 
                 //will not be re-parsed
-                SASplusParser.sasProblemOptimised.mutexes = SASplusParser.sasProblemAll.mutexes;
-                SASplusParser.sasProblemOptimised.variables = SASplusParser.sasProblemAll.variables;
-                SASplusParser.sasProblemOptimised.axioms = SASplusParser.sasProblemAll.axioms;
-                SASplusParser.sasProblemOptimised.derivedPredicates = SASplusParser.sasProblemAll.derivedPredicates;
-
-                parsePreprocess(output, SASplusParser.sasProblemOptimised);
+                context.optimised.mutexes = context.all.mutexes;
+                context.optimised.variables = context.all.variables;
+                context.optimised.axioms = context.all.axioms;
+                context.optimised.derivedPredicates = context.all.derivedPredicates;
+                
+                parsePreprocess(output, context);
                 System.out.println("Successfully parsed output preprocess file");
 
-                setupDefaultActionCosts(sasProblemAll);
-                setupDefaultActionCosts(sasProblemOptimised);
-
-                sasProblemAll.setupInitialState();
+                setupDefaultActionCosts(context.all);
+                setupDefaultActionCosts(context.optimised);
+                
+                context.all.setupInitialState();
+                //the optimised problem's evaluator was built before its variables and axioms were added
+                context.optimised.resetAxiomEvaluator();
 
-                return sasProblemOptimised;
+                return new SASParseResult(context.all, context.optimised, context.varIndexMap); 
         }
-
-
+        
+            
     protected static SASProblem parseTranslationKey(File outputSas, File testGroups, File allGroups) throws FileNotFoundException, IOException, ParseException
     {
-                parseOutputSAS(outputSas, SASplusParser.sasProblemAll);
+            ParseContext context = new ParseContext();
+            
+                parseOutputSAS(outputSas, context);
                 System.out.println("Successfully parsed output.sas");
-
-                parseTestGroups(testGroups, SASplusParser.sasProblemAll);
+                
+                parseTestGroups(testGroups, context);
                 System.out.println("Successfully parsed test.groups");
-                parseAllGroups(allGroups, SASplusParser.sasProblemAll);
+                parseAllGroups(allGroups, context);
                 System.out.println("Successfully parsed all.groups");
+                context.all.resetAxiomEvaluator();
 
-                return sasProblemAll;
+                return context.all; 
         }
-
-        protected static SASProblem parsePreprocess(File file, SASProblem sp) throws FileNotFoundException, IOException, ParseException
+        
+        protected static void parsePreprocess(File file, ParseContext context) throws FileNotFoundException, IOException, ParseException
+        {
+        if (context.useStreamingParser)
         {
+                SASStreamingParser.parsePreprocess(file, context);
+                return;
+        }
+        
         FileReader tFileReader = new FileReader(file);
                 SASplusParser parser = new SASplusParser(tFileReader);
-        parser.parsePreprocess(sp);
+                parser.context = context;
+        parser.parsePreprocess(context.optimised);
         tFileReader.close();
-
-        return sasProblemOptimised;
         }
-
-        protected static void parseTestGroups(File file, SASProblem sp) throws FileNotFoundException, IOException, ParseException
+        
+        protected static void parseTestGroups(File file, ParseContext context) throws FileNotFoundException, IOException, ParseException
         {
         FileReader tFileReader = new FileReader(file);
                 SASplusParser parser = new SASplusParser(tFileReader);
-        parser.parseTestGroups(sp);
+                parser.context = context;
+        parser.parseTestGroups(context.all);
         tFileReader.close();
         }
 
-    protected static void parseAllGroups(File file, SASProblem sp) throws FileNotFoundException, IOException, ParseException
+    protected static void parseAllGroups(File file, ParseContext context) throws FileNotFoundException, IOException, ParseException
     {
         FileReader tFileReader = new FileReader(file);
                 SASplusParser parser = new SASplusParser(tFileReader);
-        parser.parseAllGroups(sp);
+                parser.context = context;
+        parser.parseAllGroups(context.all);
         tFileReader.close();
     }
+    
 
-
-    protected static void parseOutputSAS(File file, SASProblem sp) throws FileNotFoundException, IOException, ParseException
+    protected static void parseOutputSAS(File file, ParseContext context) throws FileNotFoundException, IOException, ParseException
     {
+        if (context.useStreamingParser)
+        {
+                SASStreamingParser.parseOutputSAS(file, context);
+                return;
+        }
+        
         FileReader tFileReader = new FileReader(file);
                 SASplusParser parser = new SASplusParser(tFileReader);
-        parser.parseOutputSAS(SASplusParser.sasProblemAll);
+                parser.context = context;
+        parser.parseOutputSAS(context.all);
         tFileReader.close();
-        }
-
+           }
+           
         protected static void detectVariableNames(SASProblem sp)
         {
                 // set up names for the variables in the DTGs. These are
@@ -239,7 +347,10 @@ public class SASplusParser implements SASplusParserConstants {
         }
 
 
-        public static void reset()
+        /**
+         * Resets the static fields set by {@link #parse(File, File, File, File)}.
+         */
+        public static synchronized void reset()
         {
                 SASplusParser.sasProblemAll = new SASProblem();
                 SASplusParser.sasProblemOptimised = new SASProblem();
@@ -247,6 +358,7 @@ public class SASplusParser implements SASplusParserConstants {
                 SASplusParser.varIndexMap = new HashMap<Integer, Integer>();
         }
 
+
 // ******************************************************************************
 // *																			*
 // * 							Parse the 3 sasProblemAll+ files							*
@@ -290,12 +402,12 @@ public class SASplusParser implements SASplusParserConstants {
       }
       //variable id
                       t = jj_consume_token(NUMBER);
-                        int varId = this.varIndexMap.get(varCounter);
+                        int varId = this.context.varIndexMap.get(varCounter);
                         int arcs = Integer.parseInt(t.toString());
                         for (int i = 0; i < arcs; i++)
                         {
                                 int[] arr = parseSASVariableValuePair();
-                                int target = this.varIndexMap.get(arr[0]);
+                                int target = this.context.varIndexMap.get(arr[0]);
                                 CausalGraphLink e = cg.addEdge(varId, target);
                                 e.setWeight(arr[1]);
                         }
@@ -325,8 +437,8 @@ public class SASplusParser implements SASplusParserConstants {
       } else {
         break label_2;
       }
-      dtg = parseDTG(this.varIndexMap.get(varCount), sp);
-                dtgs.put(this.varIndexMap.get(varCount), dtg);
+      dtg = parseDTG(this.context.varIndexMap.get(varCount), sp);
+                dtgs.put(this.context.varIndexMap.get(varCount), dtg);
 
                 varCount++;
     }
@@ -398,11 +510,11 @@ public class SASplusParser implements SASplusParserConstants {
                         // [layer --> [axiom_number --> axiom]]
                         //This is unfortunate for directly accessing the axiom itself, but useful
                         //for axiom evaluation  
-                        operator = sasProblemOptimised.getAxiom(operatorIndex);
+                        operator = this.context.optimised.getAxiom(operatorIndex);
                 }
                 else
                 {
-                        operator = sasProblemOptimised.actions.get(operatorIndex);
+                        operator = this.context.optimised.actions.get(operatorIndex);
                 }
 
 
@@ -414,7 +526,7 @@ public class SASplusParser implements SASplusParserConstants {
                         {
                                 varVal = parseSASVariableValuePair();
 
-                                int var = this.varIndexMap.get(varVal[0]);
+                                int var = this.context.varIndexMap.get(varVal[0]);
                                 //an associated precondition which does not reflect a value within the current variable
                                 SASLiteral associated = sp.variables.get(var).getValue(varVal[1]);
 
@@ -462,7 +574,7 @@ public class SASplusParser implements SASplusParserConstants {
                          for (int i = 0; i < conditionCountInt; i++)
                          {
                                  pcs = parseSASVariableValuePair();
-                                 realPcVar = this.varIndexMap.get(pcs[0]);
+                                 realPcVar = this.context.varIndexMap.get(pcs[0]);
                                  p.setEffectCondition(realPcVar, pcs[1]);
                          }
       label_5:
@@ -473,7 +585,7 @@ public class SASplusParser implements SASplusParserConstants {
           break label_5;
         }
         eff = parseSASEffect();
-                                realEffVar = this.varIndexMap.get(eff[0]);
+                                realEffVar = this.context.varIndexMap.get(eff[0]);
 
                                 p.setEffect(realEffVar, new SASEffect(eff[1], eff[2]));
       }
@@ -570,8 +682,8 @@ public class SASplusParser implements SASplusParserConstants {
         break label_9;
       }
       g = parseGroup(groupCount, sp);
-                sasProblemAll.mutexes.put(groupCount, g);
-                sasProblemOptimised.mutexes.put(groupCount, g);
+                this.context.all.mutexes.put(groupCount, g);
+                this.context.optimised.mutexes.put(groupCount, g);
 
                 groupCount++;
     }
@@ -598,8 +710,8 @@ public class SASplusParser implements SASplusParserConstants {
       tokVarId = jj_consume_token(NUMBER);
                         varId = Integer.parseInt(tokVarId.toString());
       p = parseSASProposition(varId);
-                                        sasProblemAll.reachableFacts.add(p);
-                                        sasProblemOptimised.reachableFacts.add(p);
+                                        this.context.all.reachableFacts.add(p);
+                                        this.context.optimised.reachableFacts.add(p);
 
                                         //variable may be normal Variable or Derived Predicate
                                         SASParameter var = sp.variables.get(varId).getObject();
@@ -784,8 +896,8 @@ public class SASplusParser implements SASplusParserConstants {
                                 int[] arr = parseSASVariableValuePair();
 
                                 //need to translate the var number into the var index for this file's variable list
-                                int var = this.varIndexMap.get(arr[0]);
-                                //int val = this.varIndexMap.get(arr[1]);
+                                int var = this.context.varIndexMap.get(arr[0]);
+                                //int val = this.context.varIndexMap.get(arr[1]);
 
                                 a.setPrevail(var, arr[1]);
                         }
@@ -804,7 +916,7 @@ public class SASplusParser implements SASplusParserConstants {
 
                         int[] arr = parseSASEffect();
                         //need to translate the var number into the var index for this file's variable list
-                        varId = this.varIndexMap.get(arr[0]);
+                        varId = this.context.varIndexMap.get(arr[0]);
                         oldVal = arr[1];
                         newVal = arr[2];
 
@@ -828,11 +940,11 @@ public class SASplusParser implements SASplusParserConstants {
 
                 if (effectConditions > 0)
                 {
-                        for (int i = 0; i < effectConditions; i+=2)
+                        for (int i = 0; i < effectConditions; i++)
                         {
                                 int[] pair = parseSASVariableValuePair();
-                                arr[i] = pair[0];
-                                arr[i+1] = pair[1];
+                                arr[i*2] = pair[0];
+                                arr[i*2+1] = pair[1];
                         }
                 }
                 {if (true) return arr;}
@@ -912,7 +1024,7 @@ public class SASplusParser implements SASplusParserConstants {
       t1 = jj_consume_token(NUMBER);
       t2 = jj_consume_token(NUMBER);
                         varId = Integer.parseInt(t1.toString());
-                        varId = this.varIndexMap.get(varId);
+                        varId = this.context.varIndexMap.get(varId);
                         varIndex = Integer.parseInt(t2.toString());
 
                         sp.goal.put(varId, varIndex);
@@ -933,7 +1045,7 @@ public class SASplusParser implements SASplusParserConstants {
     label_16:
     while (true) {
       t = jj_consume_token(NUMBER);
-                        varId = this.varIndexMap.get(count);
+                        varId = this.context.varIndexMap.get(count);
                         varIndex = Integer.parseInt(t.toString());
 
                         SASVariable v = sp.variables.get(varId);
@@ -971,7 +1083,7 @@ public class SASplusParser implements SASplusParserConstants {
                         StringTokenizer strTok = new StringTokenizer(var);
 
                         int variable = Integer.parseInt(strTok.nextToken().substring(3));
-                        this.varIndexMap.put(varCount, variable);
+                        this.context.varIndexMap.put(varCount, variable);
 
                         if (sp.variables.containsKey(variable) == false)
                         {
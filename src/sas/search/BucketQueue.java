@@ -0,0 +1,184 @@
+package sas.search;
+
+import java.util.Arrays;
+
+/**
+ * A bucket-based priority queue for non-negative integer priorities, such as arise when all action costs
+ * are small integers. Pushing and popping are constant time (amortised over the range of priorities
+ * scanned), compared to logarithmic for a heap. Entries with equal priority are returned in the order
+ * they were pushed.
+ * <p>
+ * Lowering the priority of a queued ID pushes it into the new bucket and leaves a stale entry behind,
+ * which is skipped when it is reached. Like {@link IndexedHeap}, queue membership is stamped with a
+ * generation counter, so membership tests are constant time.
+ *
+ * @author David Pattison
+ *
+ */
+public class BucketQueue implements IntPriorityQueue
+{
+	private int[][] buckets;
+	private int[] bucketHeads, bucketSizes;
+	private int current; //no live entry has a lower priority than this
+	private int highest; //the highest bucket used since the last clear
+
+	private int[] priorities; //indexed by ID
+	private int[] generation; //ID -> generation in which it was queued, only valid if also marked as queued
+	private boolean[] queued;
+	private int currentGeneration;
+	private int size;
+
+	/**
+	 * Creates a queue for IDs in the range [0, capacity).
+	 * @param capacity
+	 */
+	public BucketQueue(int capacity)
+	{
+		capacity = Math.max(1, capacity);
+		this.priorities = new int[capacity];
+		this.generation = new int[capacity];
+		this.queued = new boolean[capacity];
+		this.currentGeneration = 1;
+
+		this.buckets = new int[16][];
+		this.bucketHeads = new int[16];
+		this.bucketSizes = new int[16];
+		this.current = 0;
+		this.highest = -1;
+		this.size = 0;
+	}
+
+	@Override
+	public void ensureCapacity(int capacity)
+	{
+		if (capacity <= this.priorities.length)
+			return;
+
+		int length = Math.max(capacity, this.priorities.length * 2);
+		this.priorities = Arrays.copyOf(this.priorities, length);
+		this.generation = Arrays.copyOf(this.generation, length);
+		this.queued = Arrays.copyOf(this.queued, length);
+	}
+
+	@Override
+	public void clear()
+	{
+		for (int b = 0; b <= this.highest; b++)
+		{
+			this.bucketHeads[b] = 0;
+			this.bucketSizes[b] = 0;
+		}
+		this.current = 0;
+		this.highest = -1;
+		this.size = 0;
+
+		this.currentGeneration++;
+		if (this.currentGeneration == Integer.MAX_VALUE)
+		{
+			Arrays.fill(this.generation, 0);
+			this.currentGeneration = 1;
+		}
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return this.size;
+	}
+
+	@Override
+	public boolean contains(int id)
+	{
+		return this.generation[id] == this.currentGeneration && this.queued[id];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @throws IllegalArgumentException Thrown if the priority is negative or not an integer.
+	 */
+	@Override
+	public boolean push(int id, double priority)
+	{
+		int bucket = (int) priority;
+		if (bucket != priority || bucket < 0)
+			throw new IllegalArgumentException("Bucket queue priorities must be non-negative integers, found "+priority);
+
+		if (this.contains(id))
+		{
+			if (bucket >= this.priorities[id])
+				return false;
+		}
+		else
+		{
+			this.generation[id] = this.currentGeneration;
+			this.queued[id] = true;
+			this.size++;
+		}
+
+		this.priorities[id] = bucket;
+		this.append(bucket, id);
+		if (bucket < this.current)
+			this.current = bucket;
+
+		return true;
+	}
+
+	@Override
+	public int pop()
+	{
+		if (this.size == 0)
+			throw new IllegalStateException("Queue is empty");
+
+		while (true)
+		{
+			while (this.bucketHeads[this.current] == this.bucketSizes[this.current])
+			{
+				//exhausted, so reuse the bucket from the start
+				this.bucketHeads[this.current] = 0;
+				this.bucketSizes[this.current] = 0;
+				this.current++;
+			}
+
+			int id = this.buckets[this.current][this.bucketHeads[this.current]++];
+			//skip entries left behind when an ID's priority was lowered, or which have already been popped
+			if (this.contains(id) && this.priorities[id] == this.current)
+			{
+				this.queued[id] = false;
+				this.size--;
+				return id;
+			}
+		}
+	}
+
+	private void append(int bucket, int id)
+	{
+		if (bucket >= this.buckets.length)
+		{
+			int length = Math.max(bucket + 1, this.buckets.length * 2);
+			this.buckets = Arrays.copyOf(this.buckets, length);
+			this.bucketHeads = Arrays.copyOf(this.bucketHeads, length);
+			this.bucketSizes = Arrays.copyOf(this.bucketSizes, length);
+		}
+
+		int[] entries = this.buckets[bucket];
+		if (entries == null)
+		{
+			entries = new int[8];
+			this.buckets[bucket] = entries;
+		}
+		else if (this.bucketSizes[bucket] == entries.length)
+		{
+			entries = Arrays.copyOf(entries, entries.length * 2);
+			this.buckets[bucket] = entries;
+		}
+
+		entries[this.bucketSizes[bucket]++] = id;
+		this.highest = Math.max(this.highest, bucket);
+	}
+}
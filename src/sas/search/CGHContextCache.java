@@ -0,0 +1,445 @@
+package sas.search;
+
+import java.util.Arrays;
+
+import sas.data.CausalGraph;
+import sas.data.CompiledCausalGraph;
+import sas.data.CompiledDTG;
+import sas.data.DomainTransitionGraph;
+
+/**
+ * A bounded cache of local distances computed by the {@link CausalGraphHeuristic}. Each entry is keyed on
+ * the variable, its start and goal value, and the values in the state of only those variables which the
+ * distance depends upon -- the variable's ancestors in the (acyclic) causal graph. An entry can therefore be
+ * reused by any state which agrees on those ancestors, rather than only by an identical state.
+ * <p>
+ * Keys are packed into an array of longs, with each ancestor using just enough bits to hold its domain, and
+ * are hashed as primitives. Once the cache is full, entries are evicted using the CLOCK (second-chance)
+ * policy, an approximation of LRU which needs only a single bit per entry.
+ * <p>
+ * Variables which lie on, or depend upon, a cycle in the causal graph are never cached, as their
+ * distances depend upon the order in which the heuristic explores the graph.
+ *
+ * @author David Pattison
+ *
+ */
+public class CGHContextCache
+{
+	/**
+	 * Returned from {@link #get(int, int[], int, int)} when there is no entry for the key.
+	 */
+	public static final double NotFound = -1;
+
+	/**
+	 * The number of entries held if no capacity is specified.
+	 */
+	public static final int DefaultCapacity = 1 << 16;
+
+	private static final byte Unknown = 0, Cacheable = 1, Uncacheable = 2;
+	private static final int MaxValue = 0xFFFF; //start and goal values are packed into 16 bits each
+
+	private final CausalGraph cg;
+	private final int capacity;
+
+	//per-variable context layout, built on first use
+	private byte[] status;
+	private int[][] contextVars, contextWords, contextShifts;
+	private int[] keyLength;
+
+	//entries
+	private final long[][] entryKeys;
+	private final long[] entryHashes;
+	private final double[] entryValues;
+	private final boolean[] referenced;
+	private int count;
+	private int hand;
+
+	//hash index into entries, linear probing, entry index + 1 (0 is empty)
+	private final int[] table;
+	private final int mask;
+
+	private long[] scratch; //key being probed
+
+	/**
+	 * Creates a cache with the default capacity.
+	 * @param cg The acyclic causal graph used by the heuristic.
+	 */
+	public CGHContextCache(CausalGraph cg)
+	{
+		this(cg, DefaultCapacity);
+	}
+
+	/**
+	 * Creates a cache which holds at most the specified number of entries.
+	 * @param cg The acyclic causal graph used by the heuristic.
+	 * @param capacity
+	 */
+	public CGHContextCache(CausalGraph cg, int capacity)
+	{
+		this.cg = cg;
+		this.capacity = Math.max(1, capacity);
+
+		this.entryKeys = new long[this.capacity][];
+		this.entryHashes = new long[this.capacity];
+		this.entryValues = new double[this.capacity];
+		this.referenced = new boolean[this.capacity];
+
+		int tableSize = Integer.highestOneBit(this.capacity) << 2; //load factor of at most 0.5
+		this.table = new int[tableSize];
+		this.mask = tableSize - 1;
+
+		this.scratch = new long[1];
+		this.clear();
+	}
+
+	/**
+	 * Returns the maximum number of entries held.
+	 * @return
+	 */
+	public int getCapacity()
+	{
+		return this.capacity;
+	}
+
+	/**
+	 * Returns the number of entries currently held.
+	 * @return
+	 */
+	public int size()
+	{
+		return this.count;
+	}
+
+	/**
+	 * Removes all entries. The context of each variable is also recomputed on next use, so this should be
+	 * called if the causal graph or its DTGs are modified.
+	 */
+	public void clear()
+	{
+		Arrays.fill(this.table, 0);
+		Arrays.fill(this.entryKeys, null);
+		Arrays.fill(this.referenced, false);
+		this.count = 0;
+		this.hand = 0;
+
+		this.status = new byte[0];
+		this.contextVars = new int[0][];
+		this.contextWords = new int[0][];
+		this.contextShifts = new int[0][];
+		this.keyLength = new int[0];
+	}
+
+	/**
+	 * Determines whether distances in the specified variable's DTG can be cached.
+	 * @param var
+	 * @return
+	 */
+	public boolean isCacheable(int var)
+	{
+		if (var >= this.status.length || this.status[var] == Unknown)
+			this.setupContext(var);
+
+		return this.status[var] == Cacheable;
+	}
+
+	/**
+	 * Gets the cached distance between two values of a variable, in the context of the specified values.
+	 * @param var
+	 * @param values The value of each variable, indexed by variable ID.
+	 * @param startVal
+	 * @param goalVal
+	 * @return The distance, or {@link #NotFound} if it is not cached.
+	 */
+	public double get(int var, int[] values, int startVal, int goalVal)
+	{
+		if (this.isCacheable(var) == false || startVal < 0 || goalVal < 0)
+			return NotFound;
+
+		this.pack(var, values);
+		this.scratch[0] = this.header(var, startVal, goalVal);
+
+		int entry = this.find(this.hash(this.scratch, this.keyLength[var]), this.keyLength[var]);
+		if (entry < 0)
+			return NotFound;
+
+		this.referenced[entry] = true;
+		return this.entryValues[entry];
+	}
+
+	/**
+	 * Caches the distance from the start value to every other value of the variable, in the context
+	 * of the specified values.
+	 * @param var
+	 * @param values The value of each variable, indexed by variable ID.
+	 * @param startVal
+	 * @param dists The distance to each value of the variable, indexed by value.
+	 */
+	public void put(int var, int[] values, int startVal, double[] dists)
+	{
+		if (this.isCacheable(var) == false || startVal < 0)
+			return;
+
+		int length = this.keyLength[var];
+		this.pack(var, values);
+		for (int val = 0; val < dists.length; val++)
+		{
+			if (val == startVal)
+				continue;
+
+			this.scratch[0] = this.header(var, startVal, val);
+			long hash = this.hash(this.scratch, length);
+
+			int entry = this.find(hash, length);
+			if (entry < 0)
+				entry = this.insert(hash, length);
+
+			this.entryValues[entry] = dists[val];
+			this.referenced[entry] = true;
+		}
+	}
+
+	private long header(int var, int startVal, int goalVal)
+	{
+		return ((long) var << 32) | ((long) startVal << 16) | goalVal;
+	}
+
+	/**
+	 * Packs the values of the variable's context into words 1 onwards of the scratch key.
+	 */
+	private void pack(int var, int[] values)
+	{
+		int length = this.keyLength[var];
+		if (this.scratch.length < length)
+			this.scratch = new long[length];
+
+		Arrays.fill(this.scratch, 1, length, 0L);
+
+		int[] vars = this.contextVars[var];
+		int[] words = this.contextWords[var];
+		int[] shifts = this.contextShifts[var];
+		for (int i = 0; i < vars.length; i++)
+		{
+			//undefined values are stored as 0
+			long value = values[vars[i]] + 1;
+			this.scratch[words[i]] |= value << shifts[i];
+		}
+	}
+
+	private long hash(long[] key, int length)
+	{
+		long h = 0x9E3779B97F4A7C15L;
+		for (int i = 0; i < length; i++)
+		{
+			h = (h ^ key[i]) * 0xBF58476D1CE4E5B9L;
+			h ^= h >>> 31;
+		}
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+
+		return h;
+	}
+
+	/**
+	 * Finds the entry holding the scratch key.
+	 * @return The entry index, or -1 if there is none.
+	 */
+	private int find(long hash, int length)
+	{
+		int slot = (int) hash & this.mask;
+		while (this.table[slot] != 0)
+		{
+			int entry = this.table[slot] - 1;
+			if (this.entryHashes[entry] == hash && this.keyEquals(this.entryKeys[entry], length))
+				return entry;
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		return -1;
+	}
+
+	private boolean keyEquals(long[] key, int length)
+	{
+		if (key.length != length)
+			return false;
+
+		for (int i = 0; i < length; i++)
+		{
+			if (key[i] != this.scratch[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Stores the scratch key in a free entry, evicting one if the cache is full.
+	 * @return The entry index.
+	 */
+	private int insert(long hash, int length)
+	{
+		int entry;
+		if (this.count < this.capacity)
+		{
+			entry = this.count++;
+		}
+		else
+		{
+			//second chance -- skip over, and clear, entries which have been used since the hand last passed
+			while (this.referenced[this.hand])
+			{
+				this.referenced[this.hand] = false;
+				this.hand = (this.hand + 1) % this.capacity;
+			}
+			entry = this.hand;
+			this.hand = (this.hand + 1) % this.capacity;
+
+			this.remove(entry);
+		}
+
+		long[] key = this.entryKeys[entry];
+		if (key == null || key.length != length)
+			key = new long[length];
+		System.arraycopy(this.scratch, 0, key, 0, length);
+
+		this.entryKeys[entry] = key;
+		this.entryHashes[entry] = hash;
+
+		int slot = (int) hash & this.mask;
+		while (this.table[slot] != 0)
+		{
+			slot = (slot + 1) & this.mask;
+		}
+		this.table[slot] = entry + 1;
+
+		return entry;
+	}
+
+	/**
+	 * Removes an entry from the hash index, shifting back any entries which probed past it.
+	 */
+	private void remove(int entry)
+	{
+		int slot = (int) this.entryHashes[entry] & this.mask;
+		while (this.table[slot] != entry + 1)
+		{
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.table[slot] = 0;
+		int next = slot;
+		while (true)
+		{
+			next = (next + 1) & this.mask;
+			if (this.table[next] == 0)
+				break;
+
+			int home = (int) this.entryHashes[this.table[next] - 1] & this.mask;
+			//move the entry into the gap unless its home lies cyclically in (slot, next]
+			boolean between = slot <= next ? (home > slot && home <= next) : (home > slot || home <= next);
+			if (between == false)
+			{
+				this.table[slot] = this.table[next];
+				this.table[next] = 0;
+				slot = next;
+			}
+		}
+	}
+
+	/**
+	 * Finds the ancestors of the variable in the causal graph by following the associated preconditions
+	 * of its DTG's transitions, and determines the bit layout used to pack their values.
+	 */
+	private void setupContext(int var)
+	{
+		int varCount = this.status.length;
+		for (DomainTransitionGraph dtg : this.cg.getDTGs())
+		{
+			varCount = Math.max(varCount, dtg.getVariable().getId() + 1);
+		}
+		varCount = Math.max(varCount, var + 1);
+
+		if (varCount > this.status.length)
+		{
+			this.status = Arrays.copyOf(this.status, varCount);
+			this.contextVars = Arrays.copyOf(this.contextVars, varCount);
+			this.contextWords = Arrays.copyOf(this.contextWords, varCount);
+			this.contextShifts = Arrays.copyOf(this.contextShifts, varCount);
+			this.keyLength = Arrays.copyOf(this.keyLength, varCount);
+		}
+
+		//depth-first search -- 1 is on the stack, 2 is finished. Reaching a variable on the stack is a cycle.
+		byte[] colour = new byte[varCount];
+		boolean cyclic = this.visit(var, colour);
+
+		DomainTransitionGraph own = this.cg.getDTG(var);
+		if (cyclic || own == null || own.getVariable().getDomain().size() > MaxValue)
+		{
+			this.status[var] = Uncacheable;
+			return;
+		}
+
+		int ancestors = 0;
+		for (int v = 0; v < varCount; v++)
+		{
+			if (colour[v] != 0 && v != var)
+				++ancestors;
+		}
+
+		int[] vars = new int[ancestors];
+		int[] words = new int[ancestors];
+		int[] shifts = new int[ancestors];
+		int word = 1, bit = 0, i = 0;
+		for (int v = 0; v < varCount; v++)
+		{
+			if (colour[v] == 0 || v == var)
+				continue;
+
+			DomainTransitionGraph dtg = this.cg.getDTG(v);
+			int domain = dtg == null ? 1 : dtg.getVariable().getDomain().size();
+			int bits = 32 - Integer.numberOfLeadingZeros(domain); //holds value + 1
+			if (bit + bits > 64)
+			{
+				++word;
+				bit = 0;
+			}
+
+			vars[i] = v;
+			words[i] = word;
+			shifts[i] = bit;
+			bit += bits;
+			++i;
+		}
+
+		this.contextVars[var] = vars;
+		this.contextWords[var] = words;
+		this.contextShifts[var] = shifts;
+		this.keyLength[var] = bit == 0 ? word : word + 1;
+		this.status[var] = Cacheable;
+	}
+
+	private boolean visit(int var, byte[] colour)
+	{
+		colour[var] = 1;
+
+		boolean cyclic = false;
+		CompiledCausalGraph compiled = this.cg.getCompiledForm();
+		CompiledDTG dtg = var < compiled.getVariableCount() ? compiled.getDTG(var) : null;
+		if (dtg != null)
+		{
+			int end = dtg.getPcCount();
+			for (int pc = 0; pc < end; pc++)
+			{
+				int pcVar = dtg.getPcVariable(pc);
+				if (pcVar >= colour.length || colour[pcVar] == 1)
+					cyclic = true;
+				else if (colour[pcVar] == 0)
+					cyclic |= this.visit(pcVar, colour);
+			}
+		}
+
+		colour[var] = 2;
+		return cyclic;
+	}
+}
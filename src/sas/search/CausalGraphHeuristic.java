@@ -1,16 +1,11 @@
 package sas.search;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.Map.Entry;
-
-import org.jgrapht.alg.DijkstraShortestPath;
 
 import sas.data.*;
 import javaff.search.UnreachableGoalException;
@@ -19,7 +14,15 @@ import javaff.search.UnreachableGoalException;
  * An implementation of the causal graph heuristic as described in "A Planning Heuristic Based on Causal Graph Analysis" by Malte Helmert,
  * 2007. This implementation has a caching functionality to speed up computing estimates, as many 
  * facts can have their estimates computed by the side-effect of computing another goal's estimate. This
- * caching functionality is disabled by default, but can be enabled by {@link #setUseCache(boolean)}.
+ * caching functionality is disabled by default, but can be enabled by {@link #setUseCache(boolean)}. Cached
+ * distances are keyed on the values of the variable's causal graph ancestors, so remain valid across states.
+ * Distances in DTGs which have no associated preconditions are looked up in {@link DTGDistanceTables}, which
+ * are computed once per causal graph.
+ * <p>
+ * A single instance may be used by many threads at once, and the states it is given are never modified. 
+ * The acyclic causal graph and variable levels are shared, while the DTG nodes, queues, cache and the copy of 
+ * the state's values used during an estimate are held in a {@link Workspace} created for each thread on its 
+ * first estimate.
  * 
  * @author David Pattison
  *
@@ -30,11 +33,16 @@ public class CausalGraphHeuristic implements SASHeuristic
 	 * Whether the CG heuristic should cache results for faster lookups.
 	 */
 	private boolean useCache;
+	private int cacheCapacity;
 	
-	private int[] levels; //levels used in breaking cycles between vertices in CG
+	private int[] levels; //precondition counts used in breaking cycles between vertices in the same CG component
 	private CausalGraph acyclicCG; //the CG (once cycles have been broken)
-	private HashMap<DomainTransitionGraph, Map<Integer, DTGNode>> lookup; //Mapping of variables/nodes inside each DTG
-	private HashMap<CGHLookupTuple, Double> cache; //lookup cache for accessing previously computed estimates
+	private CompiledCausalGraph compiledCG; //the CSR form of the acyclic CG, walked during estimates
+	private DTGDistanceTables distanceTables; //distances in the DTGs which have no associated preconditions
+	
+	private final ThreadLocal<Workspace> workspaces; //the estimate state of each thread using this object
+	private volatile int version; //incremented when every thread's workspace must be rebuilt
+	private ParallelHeuristicEvaluator batchEvaluator; //created on first batch evaluation
 
 	/**
 	 * Initialises all fields. Sets the useCache flag to false.
@@ -43,8 +51,11 @@ public class CausalGraphHeuristic implements SASHeuristic
 	{
 		this.levels = null;
 		this.acyclicCG = null;
-		this.lookup = new HashMap<DomainTransitionGraph, Map<Integer,DTGNode>>();
-		this.cache = new HashMap<CausalGraphHeuristic.CGHLookupTuple, Double>();
+		this.compiledCG = null;
+		this.distanceTables = null;
+		this.workspaces = this.createWorkspaces();
+		this.version = 0;
+		this.cacheCapacity = CGHContextCache.DefaultCapacity;
 		
 		this.setUseCache(false);
 	}
@@ -61,8 +72,10 @@ public class CausalGraphHeuristic implements SASHeuristic
 	 */
 	public CausalGraphHeuristic(SASProblem problem, boolean breakCycles)
 	{
-		this.lookup = new HashMap<DomainTransitionGraph, Map<Integer, DTGNode>>();
-		this.cache = new HashMap<CausalGraphHeuristic.CGHLookupTuple, Double>();
+		this.workspaces = this.createWorkspaces();
+		this.version = 0;
+		this.cacheCapacity = CGHContextCache.DefaultCapacity;
+		this.useCache = false;
 		
 		this.setupVariableLevels(problem);
 
@@ -70,19 +83,22 @@ public class CausalGraphHeuristic implements SASHeuristic
 			problem.causalGraph = this.detectAndBreakCycles(problem.causalGraph);
 		
 		this.acyclicCG = problem.causalGraph;
+		this.compiledCG = this.acyclicCG.getCompiledForm();
+		this.distanceTables = DTGDistanceTables.get(this.compiledCG);
 	}
 	
 	/**
 	 * If true, the distances to side-effect goals found during computing estimates
 	 * for other goals are cached locally and returned if these are later asked for a 
 	 * heuristic estimate.
-	 * @see #resetCache() Clears the cache. Should be called after each state change.
+	 * @see #resetCache() Clears the cache. Only needed if the causal graph or DTGs are modified.
 	 * @see #isUsingCache()
 	 * @param useCache
 	 */
 	public void setUseCache(boolean useCache)
 	{
 		this.useCache = useCache;
+		this.version++;
 	}
 	
 	/**
@@ -97,78 +113,144 @@ public class CausalGraphHeuristic implements SASHeuristic
 		return useCache;
 	}
 	
+	/**
+	 * Sets the maximum number of distances which are cached. Once full, the least recently used
+	 * distances are evicted. Any cached distances are discarded. Each thread has its own cache of this capacity.
+	 * @param capacity
+	 */
+	public void setCacheCapacity(int capacity)
+	{
+		this.cacheCapacity = capacity;
+		this.version++;
+	}
+	
+	public int getCacheCapacity()
+	{
+		return this.cacheCapacity;
+	}
+	
 	public Object clone()
 	{
 		CausalGraphHeuristic clone = new CausalGraphHeuristic();
 		
 		clone.levels = this.levels.clone();
 		clone.acyclicCG = (CausalGraph) this.acyclicCG.clone();
-		clone.lookup = new HashMap<DomainTransitionGraph, Map<Integer,DTGNode>>(this.lookup);
-		clone.cache = new HashMap<CausalGraphHeuristic.CGHLookupTuple, Double>(this.cache);
+		clone.compiledCG = clone.acyclicCG.getCompiledForm();
+		clone.distanceTables = DTGDistanceTables.get(clone.compiledCG);
+		clone.cacheCapacity = this.cacheCapacity;
+		clone.useCache = this.useCache;
 		
 		return clone;
 	}
 	
-	public void resetCache()
+	/**
+	 * Creates a heuristic which shares the variable levels and acyclic causal graph of this object, but
+	 * whose threads have their own workspaces.
+	 * @return
+	 */
+	@Override
+	public CausalGraphHeuristic branch()
 	{
-		this.cache.clear();
+		CausalGraphHeuristic branch = new CausalGraphHeuristic();
+		
+		branch.levels = this.levels;
+		branch.acyclicCG = this.acyclicCG;
+		branch.compiledCG = this.compiledCG;
+		branch.distanceTables = this.distanceTables;
+		branch.cacheCapacity = this.cacheCapacity;
+		branch.useCache = this.useCache;
+		
+		return branch;
 	}
 	
 	/**
-	 * C++ allows for maps with X elements as they key -- Java does not, so this is needed to emulate the original CG Heuristic. I'm sure there is a more elegant way,
-	 * but I won't be looking for it.
-	 * 
-	 * @author David Pattison
-	 *
+	 * Gets the estimate of each state to the goals, evaluating them in parallel on branches of this object.
+	 * @see ParallelHeuristicEvaluator
 	 */
-	protected class CGHLookupTuple
+	@Override
+	public double[] getEstimates(List<SASState> states, Collection<SASLiteral> goals)
 	{
-		public int variableId;
-		public SASState state;
-		public int startVal;
-		public int val;
-		//public double dist;
-		
-		public CGHLookupTuple(int varId, SASState state, int startVal, int val)//, double dist)
+		synchronized (this)
 		{
-			this.variableId = varId;
-			this.state = state;
-			this.startVal = startVal;
-			this.val = val;
-			//this.dist = dist;
+			if (this.batchEvaluator == null)
+				this.batchEvaluator = new ParallelHeuristicEvaluator(this);
 		}
 		
-		@Override
-		public int hashCode()
+		return this.batchEvaluator.getEstimates(states, goals);
+	}
+	
+	/**
+	 * Discards the cached distances of every thread.
+	 */
+	public void resetCache()
+	{
+		this.version++;
+	}
+	
+	/**
+	 * Recompiles the causal graph and discards the node table of every thread, so that each creates a new one 
+	 * before its next estimate. This must be called if the causal graph or its DTGs are modified.
+	 * @see #createNodeTable()
+	 */
+	protected void setupDTGs() 
+	{
+		this.acyclicCG.invalidateCompiledForm();
+		this.compiledCG = this.acyclicCG.getCompiledForm();
+		this.distanceTables = DTGDistanceTables.get(this.compiledCG);
+		this.version++;
+	}
+	
+	private ThreadLocal<Workspace> createWorkspaces()
+	{
+		return new ThreadLocal<Workspace>()
 		{
-			//sweet baby jesus this is bad
-			return new String("V"+this.variableId+"S"+this.state.hashCode()+"SV"+this.startVal+"V"+this.val).hashCode();
-		}
-		
-		@Override
-		public boolean equals(Object obj)
+			@Override
+			protected Workspace initialValue()
+			{
+				return new Workspace(version);
+			}
+		};
+	}
+	
+	/**
+	 * Gets the workspace of the calling thread, replacing it if it has been invalidated since it was created. 
+	 * Must only be called at the start of an estimate.
+	 * @return
+	 */
+	protected Workspace workspace()
+	{
+		Workspace ws = this.workspaces.get();
+		int current = this.version;
+		if (ws.version != current)
 		{
-			CGHLookupTuple other = (CGHLookupTuple) obj;
-			return this.variableId == other.variableId && this.startVal == other.startVal &&
-					this.state.equals(other.state) && this.val == other.val;
+			ws = new Workspace(current);
+			this.workspaces.set(ws);
 		}
-	}
 		
+		return ws;
+	}
 	
-	protected void setupDTGs() 
+	/**
+	 * Creates the node table used by the local Dijkstra searches -- one node per value of each DTG in 
+	 * the causal graph. This is only done once per thread, as the nodes' distances are invalidated by 
+	 * advancing the evaluation counter, rather than by recreating the nodes.
+	 * @return The nodes, indexed by variable ID and value.
+	 */
+	protected DTGNode[][] createNodeTable() 
 	{
+		DTGNode[][] nodes = new DTGNode[this.compiledCG.getVariableCount()][];
 	    for (DomainTransitionGraph dtg : this.acyclicCG.getDTGs()) 
 	    {
-	    	HashMap<Integer, DTGNode> map = new HashMap<Integer, DTGNode>();
+	    	int domainSize = this.compiledCG.getDTG(dtg.getVariable().getId()).getValueCount();
+	    	DTGNode[] varNodes = new DTGNode[domainSize];
 	    	for (SASLiteral l : dtg.getVariable().getValues()) 
 	        {
-	    		DTGNode node = new DTGNode(l.getValueId());
-	    			
-	            map.put(l.getValueId(), node);
+	    		varNodes[l.getValueId()] = new DTGNode(l.getValueId(), domainSize);
 	        }
-	    	lookup.put(dtg, map);
+	    	nodes[dtg.getVariable().getId()] = varNodes;
 	    }
-	
+	    
+	    return nodes;
 	}
 	
 
@@ -183,10 +265,13 @@ public class CausalGraphHeuristic implements SASHeuristic
 	@Override
 	public double getEstimate(SASState state, Collection<SASLiteral> goals) throws UnreachableGoalException
 	{
+		Workspace ws = this.workspace();
+		ws.setValues(state);
+		
 		double cost = 0;
 		for (SASLiteral g : goals)
 		{
-			double h = this.solveProblem(state, new VarValuePair(g.getVariableId(), g.getValueId()));
+			double h = this.solveProblem(ws, new VarValuePair(g.getVariableId(), g.getValueId()));
 			
 			if (h == Unreachable)
 				return Unreachable;
@@ -197,289 +282,417 @@ public class CausalGraphHeuristic implements SASHeuristic
 		return cost;
 	}
 	
+	/**
+	 * Gets the estimate to the goals, along with the preferred actions. These are the first transitions 
+	 * on the cheapest DTG paths to each goal which are applicable in the state.
+	 * @see #markHelpfulTransitions(SASState, int, int, Set, Set)
+	 */
+	@Override
+	public SASHeuristicResult getResult(SASState state, Collection<SASLiteral> goals) throws UnreachableGoalException
+	{
+		double cost = 0;
+		Set<SASAction> preferred = new HashSet<SASAction>();
+		Set<DTGActionEdge> visited = new HashSet<DTGActionEdge>();
+		Workspace ws = this.workspace();
+		ws.setValues(state);
+		
+		for (SASLiteral g : goals)
+		{
+			double h = this.solveProblem(ws, new VarValuePair(g.getVariableId(), g.getValueId()));
+			
+			if (h == Unreachable)
+				return new SASHeuristicResult(Unreachable);
+			
+			cost += h;
+			if (h > 0)
+				this.markHelpfulTransitions(state, g.getVariableId(), g.getValueId(), preferred, visited);
+		}
+		
+		return new SASHeuristicResult(cost, preferred);
+	}
+	
 	public double solveProblem(SASState initial, VarValuePair goal) throws UnreachableGoalException
 	{
-		this.setupDTGs();
+		Workspace ws = this.workspace();
+		ws.setValues(initial);
 		
-		DomainTransitionGraph dtg = this.acyclicCG.getDTG(goal.variable);
-		double h = solveProblem(initial, dtg, initial.getValueIndex(goal.variable), goal.value);
+		return this.solveProblem(ws, goal);
+	}
+	
+	/**
+	 * Estimates the goal from the values currently held in the workspace, starting a new evaluation.
+	 * @param ws
+	 * @param goal
+	 * @return
+	 */
+	private double solveProblem(Workspace ws, VarValuePair goal)
+	{
+		ws.evaluation++;
+		if (ws.evaluation == Integer.MAX_VALUE)
+		{
+			//wrapped around, so old generations could match again
+			for (DTGNode[] varNodes : ws.nodes)
+			{
+				if (varNodes == null)
+					continue;
+				
+				for (DTGNode n : varNodes)
+				{
+					if (n != null)
+						n.generation = 0;
+				}
+			}
+			ws.evaluation = 1;
+		}
+		
+		CompiledDTG dtg = this.compiledCG.getDTG(goal.variable);
+		double h = solveProblem(ws.values, dtg, ws.values[goal.variable], goal.value);
 		
 		return h;
 	}
 	
-	protected double solveProblem(SASState state, DomainTransitionGraph dtg, int startVal, int goalVal) 
+	protected double solveProblem(int[] values, CompiledDTG dtg, int startVal, int goalVal) 
 	{
-	    int varId = dtg.getVariable().getId();
+	    int varId = dtg.getVariableId();
 	    
-	    if (startVal == goalVal || state.getValueIndex(varId) == goalVal)
+	    if (startVal == goalVal || values[varId] == goalVal)
 	        return 0d;
+	    
+	    //distances in DTGs without associated preconditions do not depend upon the state
+	    if (startVal >= 0 && this.distanceTables.isTabled(varId))
+	    	return this.distanceTables.getDistance(varId, startVal, goalVal);
 	
-	    DTGNode start = this.lookup.get(dtg).get(startVal);
+	    Workspace ws = this.workspaces.get();
+	    DTGNode start = ws.nodes[varId][startVal];
 	    assert(start != null);
 
 	    //check cache first
-	    if (this.isUsingCache())
+	    if (ws.cache != null)
 	    {
-	    	CGHLookupTuple toCheck = new CGHLookupTuple(varId, state, startVal, goalVal);
-	    	
-	    	Double dist = this.cache.get(toCheck);
-	    	if (dist != null)
+	    	double dist = ws.cache.get(varId, values, startVal, goalVal);
+	    	if (dist != CGHContextCache.NotFound)
 	    		return dist;
 	    }
 
-	    if (start.dists.isEmpty())
-	    {
-		    for (SASLiteral l : dtg.getVariable().getDomain().getLiterals())
-		    {
-		    	start.dists.put(l.getValueId(), Unreachable);
-		    }
-		    
-		    start.dists.put(startVal, 0d);
-		    
-		    PriorityQueue<DTGQueueNode> queue = new PriorityQueue<DTGQueueNode>();
-		    queue.add(new DTGQueueNode(start, 0d));
-		    while (queue.isEmpty() == false)
-		    {
-		    	DTGQueueNode best = queue.remove();
-		    	double sourceDist = best.dist;
-		    	DTGNode source = best.node;
-		    	
-		    	if (start.dists.get(source.value) < sourceDist)
-		    	{
-		    		continue;
-		    	}
-		    	
-
-		    	for (DTGActionEdge e : dtg.outgoingEdgesOf(dtg.getVariable().getValue(source.value)))
-		    	{
-		    		SASLiteral targetLiteral = e.getEffect();
-		    		DTGNode target = this.lookup.get(dtg).get(targetLiteral.getValueId());
-		    		
-		    		double targetDist = start.dists.get(target.value);
-		    		
-		    		double newDist = sourceDist + e.getAction().getCost();
-		    		for (SASLiteral pc : e.getAssociatedPcs())
-		    		{
-		    			if (newDist >= targetDist)
-		    				break;
-		    			
-		    			SASState childState = (SASState) state;//.clone();
-		    			childState.setValue(varId, source.value);
-		    			
-		    			int pcCurrentVal = childState.getValueIndex(pc.getVariableId());
-		    			int pcTargetVal = pc.getValueId();
-		    			DomainTransitionGraph pcDTG = this.acyclicCG.getDTG(pc.getVariableId());
-		    			
-		    			double recursiveCost = this.solveProblem(childState, pcDTG, pcCurrentVal, pcTargetVal);
-		    			
-		    			if (recursiveCost == Unreachable)
-		    				newDist = Unreachable;
-		    			else
-		    				newDist = newDist + recursiveCost;
-		    		}
-		    		
-		    		if (targetDist > newDist)
-		    		{
-		    			targetDist = newDist;
-
-		    			start.dists.put(targetLiteral.getValueId(), newDist);
-		    			
-		    			queue.add(new DTGQueueNode(target, newDist));
-		    		}
-		    	}
-		    			
-		    }
-	    }
+	    this.computeDistances(values, dtg, start);
+	    
+	    if (ws.cache != null)
+	    	ws.cache.put(varId, values, startVal, start.dists);
 	    
-	    if (this.isUsingCache())
+	    double h = start.dists[goalVal];
+	    return h;
+	}
+	
+	/**
+	 * Runs Dijkstra from the start node over its DTG, unless its distances are already current for this 
+	 * evaluation. The cost of each transition includes the cost of achieving its associated preconditions, 
+	 * which is computed recursively. The DTG's universal transitions can be taken from every value.
+	 * @param values The value of each variable, indexed by variable ID, which are modified during the search
+	 * but restored before returning.
+	 * @param dtg
+	 * @param start
+	 */
+	protected void computeDistances(int[] values, CompiledDTG dtg, DTGNode start)
+	{
+	    Workspace ws = this.workspaces.get();
+	    if (start.generation != ws.evaluation)
 	    {
-
-	    	for (Entry<Integer, Double> e : start.dists.entrySet())
+	    	int varId = dtg.getVariableId();
+	    	int startVal = start.value;
+	    	start.generation = ws.evaluation;
+	    	
+	    	double[] dists = start.dists;
+	    	Arrays.fill(dists, Unreachable);
+	    	Arrays.fill(start.reachedBy, null);
+	    	dists[startVal] = 0d;
+		    
+	    	//the values are modified during the search, but are always restored before returning
+	    	int originalVal = values[varId];
+	    	IndexedHeap queue = ws.getHeap(dists.length);
+	    	try
 	    	{
-	    		int val = e.getKey();
-	    		Double distance = e.getValue();
-	    		
-	    		if (val == startVal)
-	    			continue;
-	    		
-	    		CGHLookupTuple newTuple = new CGHLookupTuple(varId, state, startVal, val);
-
-	    		this.cache.put(newTuple, distance);
+			    queue.push(startVal, 0d);
+			    while (queue.isEmpty() == false)
+			    {
+			    	int source = queue.pop();
+			    	double sourceDist = dists[source];
+			    	values[varId] = source;
+	
+			    	int count = dtg.getTransitionCount(source);
+			    	for (int i = 0; i < count; i++)
+			    	{
+			    		int e = dtg.getTransition(source, i);
+			    		int target = dtg.getTarget(e);
+			    		double targetDist = dists[target];
+			    		
+			    		double newDist = sourceDist + dtg.getCost(e);
+			    		int pcEnd = dtg.getPcsEnd(e);
+			    		for (int pc = dtg.getPcsBegin(e); pc < pcEnd; pc++)
+			    		{
+			    			if (newDist >= targetDist)
+			    				break;
+			    			
+			    			int pcVar = dtg.getPcVariable(pc);
+			    			int pcCurrentVal = values[pcVar];
+			    			int pcTargetVal = dtg.getPcValue(pc);
+			    			CompiledDTG pcDTG = this.compiledCG.getDTG(pcVar);
+			    			
+			    			double recursiveCost = this.solveProblem(values, pcDTG, pcCurrentVal, pcTargetVal);
+			    			
+			    			if (recursiveCost == Unreachable)
+			    				newDist = Unreachable;
+			    			else
+			    				newDist = newDist + recursiveCost;
+			    		}
+			    		
+			    		if (targetDist > newDist)
+			    		{
+			    			dists[target] = newDist;
+			    			start.reachedFrom[target] = source;
+			    			start.reachedBy[target] = dtg.getEdge(e);
+			    			queue.push(target, newDist);
+			    		}
+			    	}
+			    }
+	    	}
+	    	finally
+	    	{
+	    		values[varId] = originalVal;
+	    		ws.depth--;
 	    	}
-	    	
-	    	
 	    }
-	    
-	    double h = start.dists.get(goalVal);
-	    return h;
 	}
 	
-	//TODO this is a messy way of getting the priority queue to store each node's value- could use the internal hashmap
-	protected class DTGQueueNode implements Comparable<DTGQueueNode>
+	/**
+	 * Follows the cheapest path found from the variable's current value to the goal value back to its first
+	 * transition. If the transition's action is applicable it is preferred, otherwise this is applied recursively
+	 * to each of the transition's unsatisfied associated preconditions. Must be called in the same evaluation
+	 * as the goal's estimate was computed.
+	 * @param state
+	 * @param var
+	 * @param goalVal
+	 * @param preferred The set to which preferred actions are added.
+	 * @param visited Transitions which have already been followed.
+	 */
+	protected void markHelpfulTransitions(SASState state, int var, int goalVal, Set<SASAction> preferred, Set<DTGActionEdge> visited)
 	{
-		public DTGNode node;
-		public double dist;
+		int startVal = state.getValueIndex(var);
+		if (startVal == goalVal || startVal < 0)
+			return;
+		
+		CompiledDTG dtg = this.compiledCG.getDTG(var);
+		Workspace ws = this.workspaces.get();
+		DTGNode start = ws.nodes[var][startVal];
+		//may have been skipped by a cache hit
+		this.computeDistances(ws.values, dtg, start);
+		if (start.dists[goalVal] == Unreachable)
+			return;
 		
-		public DTGQueueNode(DTGNode node, double dist)
+		int val = goalVal;
+		for (int steps = 0; start.reachedFrom[val] != startVal; steps++)
 		{
-			this.node = node;
-			this.dist = dist;
+			if (steps == start.dists.length)
+				return;
+			
+			val = start.reachedFrom[val];
 		}
-
-		@Override
-		public int compareTo(DTGQueueNode other)
-		{
-			if (this.dist < other.dist)
-				return -1;
-			else if (this.dist > other.dist)
-				return +1;
-			else
-				return 0;
-		}		
 		
+		DTGActionEdge first = start.reachedBy[val];
+		if (first == null || visited.add(first) == false)
+			return;
 		
-		@Override
-		public String toString()
+		SASAction a = first.getAction();
+		if (a.isApplicable(state))
+		{
+			if (a instanceof SASAxiom == false)
+				preferred.add(a);
+			
+			return;
+		}
+		
+		for (SASLiteral pc : first.getAssociatedPcs())
 		{
-			return this.node.value + ": " + this.dist;
+			if (state.getValueIndex(pc.getVariableId()) != pc.getValueId())
+				this.markHelpfulTransitions(state, pc.getVariableId(), pc.getValueId(), preferred, visited);
 		}
 	}
 	
 	/**
-	 * Finds a path to the goal value specified in the DTG specified. The start value is determined by the
-	 * state provided. Dijkstra is used to find the path.
-	 * @param dtg The DTG to search through.
-	 * @param state The state to start at.
-	 * @param goalValue The goal value of the DTG's variable
-	 * @return The shortest path between the current value and goal value in the DTG.
+	 * The state of a single thread's estimates.
 	 */
-	protected SASPlan findSingleDTGPath(DomainTransitionGraph dtg, SASState state, int goalValue)
+	protected class Workspace
 	{
-		if (state.containsVariable(dtg.getDTGIndex()) && state.getValue(dtg.getDTGIndex()).getValueId() == goalValue)
-			return new SASPlan();
+		final int version; //the heuristic's version when this was created
+		final DTGNode[][] nodes; //DTG nodes indexed by variable ID and value, reused by every evaluation
+		final CGHContextCache cache; //lookup cache for accessing previously computed estimates, or null if not in use
+		final List<IndexedHeap> heaps; //one Dijkstra queue per recursion depth, reused across calls
+		final DTGDijkstra paths; //used to find single DTG paths
+		final int[] values; //the values of the state being estimated, indexed by variable ID
+		int evaluation; //incremented per top-level call, DTGNodes with an older generation are stale
+		int depth;
 		
-		SASLiteral lowCurrentLiteral =  dtg.getVariable().getValue();
-		SASLiteral lowGoalLiteral = dtg.getVariable().getValue(goalValue);
-
-		List<DTGActionEdge> plan = null;
-		try
+		Workspace(int version)
 		{
-			plan = DijkstraShortestPath.findPathBetween(dtg, lowCurrentLiteral, lowGoalLiteral);
+			this.version = version;
+			this.nodes = createNodeTable();
+			this.cache = useCache ? new CGHContextCache(acyclicCG, cacheCapacity) : null;
+			this.heaps = new ArrayList<IndexedHeap>(compiledCG.getLevelCount()); //the recursion never goes deeper
+			this.paths = new DTGDijkstra();
+			this.values = new int[compiledCG.getVariableCount()];
+			this.evaluation = 0;
+			this.depth = 0;
 		}
-		catch (IllegalArgumentException e)
+		
+		/**
+		 * Copies the values of the state to be estimated, so that the search never modifies the state itself.
+		 * @param state
+		 */
+		void setValues(SASState state)
 		{
-			System.out.println("No path from "+lowCurrentLiteral+" to "+lowGoalLiteral);
+			for (int v = 0; v < this.values.length; v++)
+				this.values[v] = state.getValueIndex(v);
 		}
-
-
-		if (plan != null)
+		
+		/**
+		 * Gets the (cleared) Dijkstra queue for the current recursion depth, and moves to the next depth. The 
+		 * caller must decrement the depth once it has finished with the queue.
+		 * @param capacity The number of values in the DTG being searched.
+		 * @return
+		 */
+		IndexedHeap getHeap(int capacity)
 		{
-			SASPlan best = new SASPlan();
-			for (DTGActionEdge a : plan)
-				best.addAction(a.getAction());
-
+			if (this.depth == this.heaps.size())
+				this.heaps.add(new IndexedHeap(capacity));
 			
-			return best;
+			IndexedHeap heap = this.heaps.get(this.depth++);
+			heap.ensureCapacity(capacity);
+			heap.clear();
+			
+			return heap;
 		}
+	}
+	
+	/**
+	 * Finds a path to the goal value specified in the DTG specified. The start value is determined by the
+	 * state provided, or the variable's current value if the state does not contain it. Dijkstra is used to 
+	 * find the path, ignoring associated preconditions.
+	 * @param dtg The DTG to search through.
+	 * @param state The state to start at.
+	 * @param goalValue The goal value of the DTG's variable
+	 * @return The shortest path between the current value and goal value in the DTG, or null if there is none.
+	 * @see DTGDijkstra
+	 */
+	protected SASPlan findSingleDTGPath(DomainTransitionGraph dtg, SASState state, int goalValue)
+	{
+		int startValue;
+		if (state.containsVariable(dtg.getDTGIndex()))
+			startValue = state.getValue(dtg.getDTGIndex()).getValueId();
+		else
+			startValue = dtg.getVariable().getValue().getValueId();
+		
+		if (startValue == goalValue)
+			return new SASPlan();
+		
+		int varId = dtg.getVariable().getId();
+		CompiledDTG compiled = varId < this.compiledCG.getVariableCount() ? this.compiledCG.getDTG(varId) : null;
+		if (compiled == null || compiled.getDTG() != dtg)
+			compiled = new CompiledDTG(dtg);
+		
+		if (startValue < 0 || startValue >= compiled.getValueCount() || goalValue < 0 || goalValue >= compiled.getValueCount())
+			return null;
+		
+		DTGDijkstra paths = this.workspaces.get().paths;
+		paths.setGraph(compiled);
+		paths.execute(startValue, goalValue);
 		
-		return null;
+		return paths.getPlan(goalValue);
 	}
 	
 	/**
-	 * Breaks any cycles which exist between 2 vertices in the causal graph.
-	 * @see #breakCycle(CausalGraph, DomainTransitionGraph, DomainTransitionGraph, boolean)
+	 * Breaks every cycle in the causal graph. Cycles can only exist within a strongly connected component of 
+	 * the graph, so the DTG of each variable on a cycle ignores any associated preconditions on a variable in 
+	 * the same component which is higher than it, and the causal graph arc from that variable is removed. As
+	 * "higher" is a strict total order within each component, every cycle is broken, however long, so the 
+	 * recursion in {@link #solveProblem(int[], CompiledDTG, int, int)} can never revisit a variable. In the
+	 * resulting graph, every variable is higher than the variables it depends upon.
+	 * <p>
+	 * The DTGs are shared by the returned graph and the original, so the original's compiled form is discarded.
+	 * @see #isHigher(CompiledCausalGraph, int, int)
+	 * @see CompiledCausalGraph#getComponent(int)
 	 * @param cg
-	 * @return
+	 * @return A copy of the causal graph with no cycles.
 	 */
 	public CausalGraph detectAndBreakCycles(final CausalGraph cg)
 	{
+		CompiledCausalGraph compiled = cg.getCompiledForm();
 		CausalGraph clone = (CausalGraph) cg.clone();
-		for (DomainTransitionGraph v : clone.vertexSet())
+		for (DomainTransitionGraph dtg : clone.getDTGs())
 		{
-			Collection<DomainTransitionGraph> conn = clone.getIncomingVertices(v);
-			for (DomainTransitionGraph vPrime : conn)
+			int var = dtg.getVariable().getId();
+			if (compiled.isCyclic(var) == false)
+				continue;
+			
+			List<SASLiteral> toIgnore = new ArrayList<SASLiteral>();
+			for (DTGActionEdge e : dtg.edgeSet())
 			{
-				if (hasCyclicLink(clone, v, vPrime))
+				toIgnore.clear();
+				for (SASLiteral pc : e.getAssociatedPcs())
 				{
-					breakCycle(clone, v, vPrime, true);
+					int pcVar = pc.getVariableId();
+					if (compiled.getComponent(pcVar) == compiled.getComponent(var) && this.isHigher(compiled, pcVar, var))
+						toIgnore.add(pc);
 				}
+				
+				for (SASLiteral pc : toIgnore)
+					e.removeAssociatedPrecondition(pc);
 			}
 			
+			//remove the same arcs from the causal graph, including those which do not come from preconditions
+			for (DomainTransitionGraph in : new ArrayList<DomainTransitionGraph>(clone.getIncomingVertices(dtg)))
+			{
+				int inVar = in.getVariable().getId();
+				if (compiled.getComponent(inVar) == compiled.getComponent(var) && this.isHigher(compiled, inVar, var))
+					clone.removeEdge(in, dtg);
+			}
 		}
 		
+		cg.invalidateCompiledForm();
+		
 		return clone;
 	}
 	
 	/**
-	 * Determines whether the specified DTGs have a cyclic link in the causal graph. Note that
-	 * this only covers order-1 links, i.e. A is connected to B and B is connected to A -- intermediate
-	 * connections are not considered.
-	 * @param cg The causal graph
-	 * @param high The first DTG
-	 * @param low The second DTG
-	 * @return True if a cycle exists, false otherwise.
+	 * Is variable A higher than variable B in the causal graph. Variables in a greater topological level of the
+	 * graph's components are higher. Within a level, variables which appear in fewer preconditions are higher, 
+	 * with ties broken by variable ID.
+	 * @param layers The compiled causal graph whose levels are compared.
+	 * @param a
+	 * @param b
+	 * @return
+	 * @see CompiledCausalGraph#getLevel(int)
 	 */
-	protected boolean hasCyclicLink(CausalGraph cg, DomainTransitionGraph high, DomainTransitionGraph low)
+	protected boolean isHigher(CompiledCausalGraph layers, int a, int b)
 	{
-		Collection<DomainTransitionGraph> highConn = cg.getOutgoingVertices(high);
-		Collection<DomainTransitionGraph> lowConn = cg.getOutgoingVertices(low);
-		return lowConn.contains(high) && highConn.contains(low);
+		if (layers.getLevel(a) != layers.getLevel(b))
+			return layers.getLevel(a) > layers.getLevel(b);
+		
+		if (this.levels[a] != this.levels[b])
+			return this.levels[a] < this.levels[b];
+		
+		return a < b;
 	}
 	
 	/**
-	 * Breaks the cycle between two vertices in the CG, based upon the criteria set forth in 
-	 * Helmert's CG paper.
-	 * @param cg
-	 * @param v
-	 * @param vPrime
-	 * @param removePCs
+	 * Is variable A higher than variable B in the acyclic causal graph.
+	 * @param a
+	 * @param b
 	 * @return
 	 */
-	protected Set<SASLiteral> breakCycle(CausalGraph cg, DomainTransitionGraph v, DomainTransitionGraph vPrime, boolean removePCs)
+	protected boolean isHigher(int a, int b)
 	{
-		//find out which dtg is "higher" -- the higher var appears in fewer PCs than the other
-		//
-		boolean vHigher = this.isHigher(v.getVariable(), vPrime.getVariable());
-		if (vHigher == false)
-		{
-			return null;
-		}
-
-		HashSet<SASLiteral> toIgnore = new HashSet<SASLiteral>();
-		//detect if v appears as a PC
-		for (DTGActionEdge e : vPrime.edgeSet())
-		{
-			//no point in looking at e.getPC because it will be for a value of vPrime
-			for (SASLiteral ass : e.getAssociatedPcs())
-			{
-				if (ass.getVariableId() == v.getDTGIndex())
-				{
-					toIgnore.add(ass);
-					break;
-				}
-			}
-			
-			if (removePCs)
-			{
-				for (SASLiteral pc : toIgnore)
-					e.removeAssociatedPrecondition(pc);
-			}
-		}
-
-		cg.removeEdge(vPrime, v);
-//		cg.removeEdge(v, vPrime);
-		
-		return toIgnore;
-		
-		//sanity check
-//		for (SASLiteral ig : toIgnore)
-//		{
-//			if (ig.getVariableId() != v.index)
-//				throw new NullPointerException("Error in breaking cycles");
-//		}
+		return this.isHigher(this.compiledCG, a, b);
 	}
 	
-	
 	/**
 	 * Is A higher than B.
 	 * @param a
@@ -488,9 +701,7 @@ public class CausalGraphHeuristic implements SASHeuristic
 	 */
 	protected boolean isHigher(SASVariable a, SASVariable b)
 	{
-		int aLevel = this.levels[a.getId()];
-		int bLevel = this.levels[b.getId()];
-		return aLevel < bLevel;
+		return this.isHigher(a.getId(), b.getId());
 	}
 	
 	protected void setupVariableLevels(SASProblem problem)
@@ -499,11 +710,12 @@ public class CausalGraphHeuristic implements SASHeuristic
 		for (int i = 0; i < levels.length; i++)
 			levels[i] = 0;
 		
+		//effects which can be applied from any value (-1) count as an appearance of their variable
 		for (SASAction a : problem.actions.values())
 		{
-			for (Entry<Integer, Integer> pc : a.getPreconditions().entrySet())
+			for (int var : a.getPreconditions().keySet())
 			{
-				levels[pc.getKey()] = levels[pc.getKey()] + 1;
+				levels[var] = levels[var] + 1;
 			}			
 		}
 		
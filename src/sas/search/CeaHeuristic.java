@@ -11,13 +11,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.Comparator;
 
 import javaff.search.UnreachableGoalException;
 import sas.data.CausalGraph;
-import sas.data.DTGActionEdge;
+import sas.data.CompiledDTG;
 import sas.data.DomainTransitionGraph;
 import sas.data.NoneOfThoseProposition;
 import sas.data.SASAction;
@@ -33,24 +32,45 @@ import sas.util.UnreachableSASGoalException;
 
 /**
  * Direct C-to-Java translation of the Fast Downward implementation of the context-enhanced additive heuristic,
- * by Geffner and Helmert, 2008.
+ * by Geffner and Helmert, 2008. 
+ * <p>
+ * Local problem nodes are queued by integer ID in an {@link IntPriorityQueue}. If every action cost is
+ * a small non-negative integer, a {@link BucketQueue} is used, otherwise an {@link IndexedHeap}. A different
+ * queue can be set with {@link #setQueue(IntPriorityQueue)}.
+ * <p>
+ * Conditions on variables whose DTGs have no associated preconditions are costed by looking up their
+ * {@link DTGDistanceTables}, rather than by setting up and searching a local problem.
+ * <p>
+ * A single instance may be used by many threads at once. The value nodes, transition labels and variable
+ * maps built from the causal graph are shared, while the local problems and queue, which hold the
+ * state of an estimate, are held in a {@link Workspace} created for each thread on its first estimate.
  * @author David Pattison
  *
  */
 public class CeaHeuristic implements SASHeuristic
 {
 	private CausalGraph cg;
+	
+	/**
+	 * Distances in the DTGs which have no associated preconditions. Conditions on these variables are costed by
+	 * a lookup, rather than by setting up a local problem.
+	 */
+	private DTGDistanceTables distanceTables;
 
-	private PriorityQueue<LocalProblemNode> queue;
-	private List<LocalProblem> local_problems;
-	private LocalProblem[][] local_problem_index;
-	private LocalProblem goal_problem;
-	private LocalProblemNode goal_node;
-	private Collection<SASLiteral> goalLiterals;
+	/**
+	 * Action costs up to and including this are considered small enough for a bucket queue.
+	 */
+	public static final int MaxBucketQueueCost = 100;
 	
-	private Map<DomainTransitionGraph, ValueNode[]> globalNodes;
+	private static final int InitialNodeCapacity = 64;
 	
-	protected int numNodesExpanded;
+	private final ThreadLocal<Workspace> workspaces; //the estimate state of each thread using this object
+	
+	/**
+	 * Map of DTGs to their value nodes. Built lazily if pre-processing is not performed, so is only
+	 * accessed while holding its lock, which also guards {@link #dtg_cea_parents}.
+	 */
+	private Map<DomainTransitionGraph, ValueNode[]> globalNodes;
 
 	/**
 	 * Map of DTGs to the variable indices of their parents.
@@ -63,12 +83,14 @@ public class CeaHeuristic implements SASHeuristic
 	 * 0-indexed variable number encountered during parsing. TODO -- this should really just be in SASVariable
 	 */
 	private Map<Integer, Integer> global_to_local_var_map;
+	
+	private ParallelHeuristicEvaluator batchEvaluator; //created on first batch evaluation
 
 	/**
 	 * Creates an instance of the hCEA heuristic. Performs problem setup processing, which need
 	 * not be done again after instantiation, based upon the value of the flag passed in. Note
-	 * that this setup is required and will be performed at the first call of 
-	 * {@link #compute_heuristic(SASState)}.
+	 * that this setup is required and will be performed for each variable the first time its 
+	 * local problem is needed by {@link #compute_heuristic(SASState)}.
 	 * 
 	 * @param cg The causal graph to use.
 	 * @param doPreProcessing A flag indicating whether the initial setup processing should be performed.
@@ -77,26 +99,26 @@ public class CeaHeuristic implements SASHeuristic
 	public CeaHeuristic(CausalGraph cg, boolean doPreProcessing)
 	{
 		this.cg = cg;
-
-		this.queue = new PriorityQueue<LocalProblemNode>();
-		this.local_problems = new ArrayList<CeaHeuristic.LocalProblem>();
-		this.goal_node = null;
-		this.goal_problem = null;
-		this.goalLiterals = Collections.EMPTY_LIST;
+		this.distanceTables = DTGDistanceTables.get(cg.getCompiledForm());
 		
 		this.dtg_cea_parents = new HashMap<DomainTransitionGraph, List<Integer>>();
 		this.global_to_local_var_map = new HashMap<Integer, Integer>();
 		
 		this.globalNodes = new HashMap<DomainTransitionGraph, ValueNode[]>();
 		
-		this.numNodesExpanded = 0;
-
-		this.local_problem_index = null;
+		this.workspaces = new ThreadLocal<Workspace>()
+		{
+			@Override
+			protected Workspace initialValue()
+			{
+				return new Workspace();
+			}
+		};
+		
+		this.createLocalProblems();
 		
 		if (doPreProcessing)
 		{
-			this.createLocalProblems();
-		
 			for (DomainTransitionGraph dtg : cg.getDTGs())
 			{
 				ValueNode[] nodes = this.buildValueNodes(dtg);
@@ -117,46 +139,82 @@ public class CeaHeuristic implements SASHeuristic
 		this(cg, true);
 	}
 	
+	/**
+	 * Creates a bucket queue if all actions in the causal graph have small non-negative integer costs,
+	 * otherwise an indexed heap.
+	 * @return
+	 */
+	protected IntPriorityQueue createDefaultQueue()
+	{
+		for (DomainTransitionGraph dtg : this.cg.getDTGs())
+		{
+			CompiledDTG compiled = this.cg.getCompiledForm().getDTG(dtg.getVariable().getId());
+			for (int e = 0; e < compiled.getEdgeCount(); e++)
+			{
+				double cost = compiled.getCost(e);
+				if (cost < 0 || cost > MaxBucketQueueCost || cost != Math.floor(cost))
+					return new IndexedHeap(InitialNodeCapacity);
+			}
+		}
+		
+		return new BucketQueue(InitialNodeCapacity);
+	}
+	
+	/**
+	 * Gets the workspace of the calling thread, creating it if this is the thread's first estimate.
+	 * @return
+	 */
+	protected Workspace workspace()
+	{
+		return this.workspaces.get();
+	}
+	
+	/**
+	 * Sets the queue used by the calling thread to order local problem nodes. Other threads are 
+	 * unaffected. Any bucket queue must only be used if all action costs are non-negative integers.
+	 * @param queue
+	 */
+	public void setQueue(IntPriorityQueue queue)
+	{
+		Workspace ws = this.workspace();
+		queue.ensureCapacity(ws.nodeTable.length);
+		ws.queue = queue;
+	}
+	
+	/**
+	 * Gets the queue used by the calling thread.
+	 * @return
+	 */
+	public IntPriorityQueue getQueue()
+	{
+		return this.workspace().queue;
+	}
+	
+	/**
+	 * Gets the local problems built by the calling thread.
+	 * @return
+	 */
 	public List<LocalProblem> getLocalProblems()
 	{
-		return Collections.unmodifiableList(local_problems);
+		return Collections.unmodifiableList(this.workspace().local_problems);
 	}
 	
 	
 	/**
-	 * Create the LocalProblems used during planning. In Fast Downward this is done inside the DTGs themselves,
-	 * but this is a poor place to do this (even by the FD author's admission). So instead this method must be 
-	 * called prior to any estimate being produced. It need only be called once in order to set up the 
-	 * appropriate fields.
+	 * Create the map of global to local variable numbers used to index the LocalProblems. In Fast Downward the 
+	 * LocalProblems are created inside the DTGs themselves, but this is a poor place to do this (even by the FD 
+	 * author's admission). So instead each {@link Workspace} creates its own table of LocalProblems, indexed by
+	 * this map, which must be set up prior to any estimate being produced.
 	 */
 	protected void createLocalProblems()
 	{
-		int num_variables = this.cg.vertexSet().size();
-		this.local_problem_index = new LocalProblem[num_variables][];
-		
 		//don't iterate through the DTGs using a counter -- some may have been pruned.
 		//Use an iterator instead
-//		for (int var_no = 0; var_no < num_variables; ++var_no)
 		int c = 0;
 		for (DomainTransitionGraph dtg : this.cg.getDTGs())
 		{	
-			//use the domain size, as the number of vertices in the graph may be 
-			//less than this, as there may be values which have no transitions (this is really
-			//for IGRAPH's benefit, but makes sense nonetheless).
-			int num_values = dtg.getVariable().getDomain().size();
-			
-			 //num_values = dtg.vertexSet().size();
-			
 			this.global_to_local_var_map.put(dtg.getVariable().getId(), c);
 			
-			local_problem_index[c] = new LocalProblem[num_values];
-//			dtg.generateDotGraph(new File("dtg.dot"));
-
-			for (int i = 0; i < num_values; i++)
-			{
-				local_problem_index[c][i] = null;
-			}
-			
 			++c;
 		}
 	}
@@ -164,16 +222,9 @@ public class CeaHeuristic implements SASHeuristic
 	public Object clone()
 	{
 		CeaHeuristic clone = new CeaHeuristic((CausalGraph) this.cg.clone(), false);
-		clone.local_problem_index = Arrays.copyOf(this.local_problem_index, this.local_problem_index.length);
 		clone.global_to_local_var_map = this.global_to_local_var_map;
-		clone.goal_node = this.goal_node;
-		clone.goal_problem = this.goal_problem;
 		clone.dtg_cea_parents = this.dtg_cea_parents;
-		clone.goalLiterals = this.goalLiterals;
 		clone.globalNodes = this.globalNodes;
-		clone.local_problems = this.local_problems;
-		clone.numNodesExpanded = this.numNodesExpanded;
-		clone.queue = this.queue;
 		
 		return clone;
 	}
@@ -181,35 +232,36 @@ public class CeaHeuristic implements SASHeuristic
 	/**
 	 * Computes a partial shallow clone of this object. In the partial clone, all setup which is required at
 	 * class instantiation is skipped, as this process is deterministic and always produces the same
-	 * output. A new instance of {@link CeaHeuristic} is returned, with all read-only fields containing
-	 * shallow copies of this object's contents.
+	 * output. A new instance of {@link CeaHeuristic} is returned, which shares the causal graph, value nodes 
+	 * and variable maps of this object, but whose threads have their own workspaces.
 	 * @return
 	 */
+	@Override
 	public CeaHeuristic branch()
 	{
 		CeaHeuristic clone = new CeaHeuristic(this.cg, false);
-		
 		clone.global_to_local_var_map = this.global_to_local_var_map;
 		clone.dtg_cea_parents = this.dtg_cea_parents;
+		clone.globalNodes = this.globalNodes;
 		
-		clone.local_problem_index = new LocalProblem[this.local_problem_index.length][];
-		for (int i = 0; i < clone.local_problem_index.length; i++)
+		return clone;
+	}
+
+	/**
+	 * Gets the estimate of each state to the goals, evaluating them in parallel on branches of this object.
+	 * 
+	 * @see ParallelHeuristicEvaluator
+	 */
+	@Override
+	public double[] getEstimates(List<SASState> states, Collection<SASLiteral> goals)
+	{
+		synchronized (this)
 		{
-			clone.local_problem_index[i] = new LocalProblem[this.local_problem_index[i].length];
-			for (int j = 0; j < clone.local_problem_index[i].length; j++)
-			{
-				//may not have been constructed yet
-				if (this.local_problem_index[i][j] != null)
-				{
-					clone.local_problem_index[i][j] = (LocalProblem) this.local_problem_index[i][j].clone();
-				}
-			}
+			if (this.batchEvaluator == null)
+				this.batchEvaluator = new ParallelHeuristicEvaluator(this);
 		}
 		
-		clone.global_to_local_var_map = this.global_to_local_var_map;
-		clone.globalNodes = new HashMap<DomainTransitionGraph, CeaHeuristic.ValueNode[]>(this.globalNodes);
-		
-		return clone;
+		return this.batchEvaluator.getEstimates(states, goals);
 	}
 
 	/**
@@ -250,6 +302,79 @@ public class CeaHeuristic implements SASHeuristic
 		return h;
 	}
 	
+	/**
+	 * Gets the estimate to the goals provided, along with the preferred actions. These are the first 
+	 * transitions on the cheapest paths found to each goal which are applicable in the state. 
+	 * 
+	 * @see #mark_helpful_transitions(LocalProblemNode, SASState, Set)
+	 */
+	@Override
+	public SASHeuristicResult getResult(final SASState state, Collection<SASLiteral> goals) throws UnreachableGoalException
+	{
+		double h = this.getEstimate(state, goals);
+		
+		Set<SASAction> preferred = new HashSet<SASAction>();
+		if (h > 0)
+			this.mark_helpful_transitions(this.workspace().goal_node, state, preferred);
+		
+		return new SASHeuristicResult(h, preferred);
+	}
+	
+	/**
+	 * Follows the first transition on the cheapest path to the node. If it has no unsatisfied conditions 
+	 * its action is preferred, otherwise this is applied recursively to the nodes of each unsatisfied condition.
+	 * Must be called after the costs have been computed, and clears the reached_by field of the nodes visited.
+	 * 
+	 * @param node
+	 * @param state The state the costs were computed for.
+	 * @param preferred The set to which preferred actions are added.
+	 */
+	protected void mark_helpful_transitions(LocalProblemNode node, final SASState state, Set<SASAction> preferred)
+	{
+		LocalTransition first_on_path = node.reached_by;
+		if (first_on_path == null)
+			return;
+		
+		node.reached_by = null; // Clear to avoid revisiting this node later.
+		if (first_on_path.targetCost == first_on_path.actionCost)
+		{
+			// No possibly useful subgoals: must be applicable
+			SASAction op = first_on_path.label.op;
+			if (op instanceof SASNullAction == false && op instanceof SASAxiom == false && op.isApplicable(state))
+				preferred.add(op);
+			
+			return;
+		}
+		
+		// Recursively call on subgoals
+		List<Integer> parent_vars = first_on_path.source.owner.context_variables;
+		for (LocalAssignment pc : first_on_path.label.precond)
+		{
+			int precond_var_no = parent_vars.get(pc.local_var);
+			int current_val = state.getValueIndex(precond_var_no);
+			if (current_val == pc.value)
+				continue;
+			
+			if (this.distanceTables.isTabled(precond_var_no))
+			{
+				//a tabled DTG's transitions have no other conditions, so its first one is helpful if applicable
+				SASAction op = this.distanceTables.getFirstAction(precond_var_no, current_val, pc.value);
+				if (op != null && op instanceof SASAxiom == false && op.isApplicable(state))
+					preferred.add(op);
+				
+				continue;
+			}
+			
+			LocalProblem subproblem = get_local_problem(precond_var_no, current_val);
+			if (!is_local_problem_set_up(subproblem))
+				continue;
+			
+			LocalProblemNode subnode = subproblem.nodes[pc.value];
+			if (subnode != null && subnode.expanded)
+				mark_helpful_transitions(subnode, state, preferred);
+		}
+	}
+	
 //	/**
 //	 * Reset all learnt knowledge in the heuristic.
 //	 */
@@ -275,17 +400,18 @@ public class CeaHeuristic implements SASHeuristic
 	{
 //		this.resetFields();
 		
-		this.goalLiterals = goalset;
+		Workspace ws = this.workspace();
+		ws.goalLiterals = goalset;
 		
-		assert (goal_problem == null);
+		assert (ws.goal_problem == null);
 		
 
-		goal_problem = build_problem_for_goal(goalset);
-		goal_node = goal_problem.nodes[1]; // get the 1st node, which is the
+		ws.goal_problem = build_problem_for_goal(goalset);
+		ws.goal_node = ws.goal_problem.nodes[1]; // get the 1st node, which is the
 											// result of a stub action
 											// transition
 		
-		this.numNodesExpanded = 0;
+		ws.numNodesExpanded = 0;
 
 	}
 
@@ -322,15 +448,14 @@ public class CeaHeuristic implements SASHeuristic
 
 	protected double compute_heuristic(SASState state)
 	{
-		if (this.local_problem_index == null)
-			this.createLocalProblems();
+		Workspace ws = this.workspace();
 		
 		initialize_heap();
-		goal_problem.base_priority = -1;
-		for (int i = 0; i < local_problems.size(); ++i)
-			local_problems.get(i).base_priority = -1;
+		ws.goal_problem.base_priority = -1;
+		for (int i = 0; i < ws.local_problems.size(); ++i)
+			ws.local_problems.get(i).base_priority = -1;
 
-		set_up_local_problem(goal_problem, 0, 0, state);
+		set_up_local_problem(ws.goal_problem, 0, 0, state);
 
 		double heuristic = this.compute_costs(state);
 
@@ -339,9 +464,10 @@ public class CeaHeuristic implements SASHeuristic
 
 	protected double compute_costs(final SASState state)
 	{
-		while (!this.queue.isEmpty())
+		Workspace ws = this.workspace();
+		while (!ws.queue.isEmpty())
 		{
-			LocalProblemNode node = this.queue.remove();
+			LocalProblemNode node = ws.nodeTable[ws.queue.pop()];
 			double curr_priority = get_priority(node);
 
 			assert (is_local_problem_set_up(node.owner));
@@ -352,7 +478,7 @@ public class CeaHeuristic implements SASHeuristic
 //			if (node.equals(this.goal_node))
 //			if (isGoalMet(node))
 			// if (isGoalMetExpand(node, goal))
-			 if (node == goal_node)
+			 if (node == ws.goal_node)
 			{
 				return node.cost;
 			}
@@ -378,7 +504,7 @@ public class CeaHeuristic implements SASHeuristic
 		List<Integer> contextVariables = node.owner.context_variables;
 
 		
-		for (SASLiteral g : this.goalLiterals)
+		for (SASLiteral g : this.workspace().goalLiterals)
 		{
 			int goalVar = g.getVariableId();
 			int goalVal = g.getValueId();
@@ -440,6 +566,25 @@ public class CeaHeuristic implements SASHeuristic
 			{
 				continue;
 			}
+			
+			if (this.distanceTables.isTabled(precond_var_no))
+			{
+				double dist = this.distanceTables.getDistance(precond_var_no, current_val, precond_value);
+				if (dist == Unreachable)
+				{
+					//never reached, so the transition can never fire
+					++trans.unreachedConditions;
+					continue;
+				}
+				
+				trans.targetCost += dist;
+				if (trans.target.cost <= trans.targetCost)
+				{
+					// Transition cannot find a shorter path to target.
+					return;
+				}
+				continue;
+			}
 
 			LocalProblem subproblem = get_local_problem(precond_var_no, current_val);
 			assert(subproblem != null);
@@ -506,13 +651,14 @@ public class CeaHeuristic implements SASHeuristic
 		int local_var_no = this.global_to_local_var_map.get(global_var_no);
 //		int local_var_no = global_var_no;
 		
-		LocalProblem table_entry = local_problem_index[local_var_no][value];
+		Workspace ws = this.workspace();
+		LocalProblem table_entry = ws.local_problem_index[local_var_no][value];
 		if (table_entry == null)
 		{
 			table_entry = build_problem_for_variable(global_var_no);
 			
-			local_problem_index[local_var_no][value] = table_entry;
-			this.local_problems.add(table_entry);
+			ws.local_problem_index[local_var_no][value] = table_entry;
+			ws.local_problems.add(table_entry);
 		}
 		return table_entry;
 	}
@@ -524,18 +670,22 @@ public class CeaHeuristic implements SASHeuristic
 		DomainTransitionGraph dtg = this.cg.getDTG(var_no);
 		
 		ValueNode[] nodes;
-		if (this.globalNodes.containsKey(dtg))
-			nodes = this.globalNodes.get(dtg);
-		else
+		synchronized (this.globalNodes)
 		{
-			nodes = buildValueNodes(dtg);
-			this.globalNodes.put(dtg, nodes);
+			if (this.globalNodes.containsKey(dtg))
+				nodes = this.globalNodes.get(dtg);
+			else
+			{
+				nodes = buildValueNodes(dtg);
+				this.globalNodes.put(dtg, nodes);
+			}
+	
+			problem.context_variables = this.dtg_cea_parents.get(dtg);
 		}
 
-		problem.context_variables = this.dtg_cea_parents.get(dtg);
-
 		int num_parents = problem.context_variables.size();
 		int num_values = nodes.length;
+		int universal = this.cg.getCompiledForm().getDTG(var_no).getUniversalValue();
 		problem.nodes = new LocalProblemNode[num_values];
 		for (SASLiteral actualLiteral : dtg.vertexSet())
 		{
@@ -554,18 +704,16 @@ public class CeaHeuristic implements SASHeuristic
 			for (ValueTransition dtg_trans : dtg_node.transitions)
 			{
 				// ValueTransition dtg_trans = dtg_node.transitions[i];
-				int target_value = dtg_trans.target.value;
-				LocalProblemNode target = problem.nodes[target_value];
-				for (ValueTransitionLabel label : dtg_trans.cea_labels)
+				add_local_transitions(problem, node, dtg_trans);
+			}
+			
+			//universal transitions are only held by the NOTP node, but can be taken from every other value
+			if (universal >= 0 && value != universal)
+			{
+				for (ValueTransition dtg_trans : nodes[universal].transitions)
 				{
-					double action_cost = label.op.getCost();
-					if (label.op instanceof SASAxiom)
-					{
-						assert(action_cost == 0);
-					}
-					
-					LocalTransition trans = new LocalTransition(node, target, label, action_cost);
-					node.outgoing_transitions.add(trans);
+					if (dtg_trans.target.value != value)
+						add_local_transitions(problem, node, dtg_trans);
 				}
 			}
 		}
@@ -573,6 +721,26 @@ public class CeaHeuristic implements SASHeuristic
 		return problem;
 	}
 	
+	/**
+	 * Adds a local transition from the node for each CEA label of the DTG transition. The labels are shared
+	 * with the DTG's value nodes.
+	 */
+	protected void add_local_transitions(LocalProblem problem, LocalProblemNode node, ValueTransition dtg_trans)
+	{
+		LocalProblemNode target = problem.nodes[dtg_trans.target.value];
+		for (ValueTransitionLabel label : dtg_trans.cea_labels)
+		{
+			double action_cost = label.op.getCost();
+			if (label.op instanceof SASAxiom)
+			{
+				assert(action_cost == 0);
+			}
+			
+			LocalTransition trans = new LocalTransition(node, target, label, action_cost);
+			node.outgoing_transitions.add(trans);
+		}
+	}
+	
 //	/**
 //	 * Reset the heuristic for another goal, without destroying all the information built up for the problem.
 //	 */
@@ -598,9 +766,10 @@ public class CeaHeuristic implements SASHeuristic
 
 		ValueNode[] nodes = new ValueNode[dtg.vertexSet().size() + 1]; //FIXME + 1 for NOTP
 
+		CompiledDTG compiled = this.cg.getCompiledForm().getDTG(dtg.getVariable().getId());
 		for (SASLiteral v : dtg.vertexSet())
 		{
-			ValueNode node = new ValueNode(dtg, v);
+			ValueNode node = new ValueNode(dtg, v, compiled.getOutDegree(v.getValueId()));
 			nodes[v.getValueId()] = node;
 		}
 
@@ -613,10 +782,11 @@ public class CeaHeuristic implements SASHeuristic
 				continue;
 
 			int c = 0;
-			for (DTGActionEdge e : dtg.outgoingEdgesOf(source.literal))
+			int end = compiled.getEdgesEnd(source.value);
+			for (int e = compiled.getEdgesBegin(source.value); e < end; e++)
 			{
 
-				ValueNode target = nodes[e.getEffect().getValueId()];
+				ValueNode target = nodes[compiled.getTarget(e)];
 				
 				if (source.transitions[c] == null)
 				{
@@ -631,10 +801,11 @@ public class CeaHeuristic implements SASHeuristic
 				List<LocalAssignment> precond = new ArrayList<CeaHeuristic.LocalAssignment>();
 				List<LocalAssignment> cea_precond = new ArrayList<CeaHeuristic.LocalAssignment>();
 //				for (SASLiteral pc : e.getAllPreconditions())
-				for (SASLiteral pc : e.getAssociatedPcs()) //only want PCs of variables other than this DTG's var
+				int pcEnd = compiled.getPcsEnd(e);
+				for (int pc = compiled.getPcsBegin(e); pc < pcEnd; pc++) //only want PCs of variables other than this DTG's var
 				{
-					int global_var = pc.getVariableId();
-					assert(global_var != e.getPc().getVariableId());
+					int global_var = compiled.getPcVariable(pc);
+					assert(global_var != compiled.getVariableId());
 
 					if (global_to_cea_parent.containsKey(global_var) == false)
 					{
@@ -643,7 +814,7 @@ public class CeaHeuristic implements SASHeuristic
 					}
 					int cea_parent = global_to_cea_parent.get(global_var);
 
-					LocalAssignment ass = new LocalAssignment(cea_parent, pc.getValueId());
+					LocalAssignment ass = new LocalAssignment(cea_parent, compiled.getPcValue(pc));
 					precond.add(ass);
 					cea_precond.add(ass);
 				}
@@ -653,11 +824,15 @@ public class CeaHeuristic implements SASHeuristic
 				// the C++ code, as I have no idea what it does
 				// and it doesn't seem to have any effect on anything
 				List<LocalAssignment> cea_effects = new ArrayList<CeaHeuristic.LocalAssignment>();
-				for (Entry<Integer, SASEffect> effect : e.getAction().getEffects().entrySet())
+				SASAction action = compiled.getAction(e);
+				int[] effect_vars = action.getEffectVariables();
+				int[] effect_pres = action.getEffectPreconditions();
+				int[] effect_values = action.getEffectValues();
+				for (int eff_index = 0; eff_index < effect_vars.length; eff_index++)
 				{
-					int var_no = effect.getKey();
-					int pre = effect.getValue().precondition;
-					int post = effect.getValue().effect;
+					int var_no = effect_vars[eff_index];
+					int pre = effect_pres[eff_index];
+					int post = effect_values[eff_index];
 
 					if (pre == -1)
 					{
@@ -666,7 +841,7 @@ public class CeaHeuristic implements SASHeuristic
 
 					//only interested in recording this effect if it is not part of this DTG's underlying variable
 					//and it has an associated precondition 
-					if (var_no == e.getPc().getVariableId() || !global_to_cea_parent.containsKey(var_no))
+					if (var_no == compiled.getVariableId() || !global_to_cea_parent.containsKey(var_no))
 					{
 						// This is either an effect on the variable we're
 						// building the DTG for, or an effect on a variable we
@@ -681,8 +856,8 @@ public class CeaHeuristic implements SASHeuristic
 					cea_effects.add(eff);
 				}
 
-				transition.labels.add(new ValueTransitionLabel(e.getAction(), precond, no_effect));
-				transition.cea_labels.add(new ValueTransitionLabel(e.getAction(), cea_precond, cea_effects));
+				transition.labels.add(new ValueTransitionLabel(action, precond, no_effect));
+				transition.cea_labels.add(new ValueTransitionLabel(action, cea_precond, cea_effects));
 				// source.transitions.add(transition);
 				source.transitions[c++] = transition;
 			}
@@ -771,16 +946,16 @@ public class CeaHeuristic implements SASHeuristic
 //				System.out.println("Waiting transition "+trans.label.op.getOperatorName()+" did not fire");
 		}
 		node.waitingList.clear();
-		++numNodesExpanded;
+		++node.owner.workspace.numNodesExpanded;
 	}
 	
 	/**
-	 * Return the number of nodes which were expanded in the last search.
+	 * Return the number of nodes which were expanded in the last search by the calling thread.
 	 * @return
 	 */
 	public int getNumNodesExpanded()
 	{
-		return numNodesExpanded;
+		return this.workspace().numNodesExpanded;
 	}
 
 	protected boolean try_to_fire_transition(LocalTransition trans)
@@ -820,19 +995,33 @@ public class CeaHeuristic implements SASHeuristic
 
 	protected void initialize_heap()
 	{
-		this.queue.clear();
+		this.workspace().queue.clear();
 	}
 
 	protected void add_to_heap(LocalProblemNode node)
 	{
-		//don't want duplicates, and if LocalProblemNode.compareTo(x,y) == 0
-		//the PriorityQueue just keeps both in some undetermined order
-		//rather than ignoring duplicates.
+		//the queue never holds duplicates -- a queued node just has its priority lowered
 		assert(node != null);
-		if (!this.queue.contains(node))
-		{
-			this.queue.add(node);
-		}
+		node.owner.workspace.queue.push(node.id, get_priority(node));
+	}
+	
+	/**
+	 * Assigns an ID to a newly created node and records it in its workspace's node table. The goal problem is rebuilt
+	 * for each estimate, so its two nodes reuse IDs 0 and 1.
+	 * @param node
+	 * @return The node's ID.
+	 */
+	protected int register_node(LocalProblemNode node)
+	{
+		Workspace ws = node.owner.workspace;
+		int id = node.owner.variable == -1 ? node.val : ws.nodeCount++;
+		if (id >= ws.nodeTable.length)
+			ws.nodeTable = Arrays.copyOf(ws.nodeTable, Math.max(id + 1, ws.nodeTable.length * 2));
+		
+		ws.nodeTable[id] = node;
+		ws.queue.ensureCapacity(ws.nodeTable.length);
+		
+		return id;
 	}
 
 	/**
@@ -864,6 +1053,46 @@ public class CeaHeuristic implements SASHeuristic
 		// return node.cost;
 	}
 
+	/**
+	 * The state of a single thread's estimates. The local problems, whose nodes and transitions hold the 
+	 * costs found by the last estimate, are built lazily as they are needed, on top of the shared value nodes.
+	 */
+	protected class Workspace
+	{
+		IntPriorityQueue queue;
+		LocalProblemNode[] nodeTable; //local problem nodes indexed by ID
+		int nodeCount; //IDs 0 and 1 are reserved for the goal problem's nodes
+		List<LocalProblem> local_problems;
+		LocalProblem[][] local_problem_index;
+		LocalProblem goal_problem;
+		LocalProblemNode goal_node;
+		Collection<SASLiteral> goalLiterals;
+		int numNodesExpanded;
+		
+		Workspace()
+		{
+			this.nodeTable = new LocalProblemNode[InitialNodeCapacity];
+			this.nodeCount = 2;
+			this.queue = createDefaultQueue();
+			this.local_problems = new ArrayList<CeaHeuristic.LocalProblem>();
+			this.goal_node = null;
+			this.goal_problem = null;
+			this.goalLiterals = Collections.EMPTY_LIST;
+			this.numNodesExpanded = 0;
+			
+			this.local_problem_index = new LocalProblem[cg.vertexSet().size()][];
+			for (DomainTransitionGraph dtg : cg.getDTGs())
+			{
+				//use the domain size, as the number of vertices in the graph may be 
+				//less than this, as there may be values which have no transitions
+				int num_values = dtg.getVariable().getDomain().size();
+				int local_var_no = global_to_local_var_map.get(dtg.getVariable().getId());
+				
+				this.local_problem_index[local_var_no] = new LocalProblem[num_values];
+			}
+		}
+	}
+
 	public class LocalProblemNode implements Comparable<LocalProblemNode>
 	{
 		// Attributes fixed during initialization.
@@ -893,6 +1122,8 @@ public class CeaHeuristic implements SASHeuristic
 		
 		int hash;
 		
+		int id; //index into the heuristic's node table and queue
+		
 		private LocalProblemNode()
 		{
 			
@@ -914,7 +1145,7 @@ public class CeaHeuristic implements SASHeuristic
 				getContext()[i] = -1;
 			
 			this.val = val;
-
+			this.id = register_node(this);
 
 			this.reached_by = null;
 			this.outgoing_transitions = new ArrayList<CeaHeuristic.LocalTransition>();
@@ -930,6 +1161,7 @@ public class CeaHeuristic implements SASHeuristic
 			clone.cost = this.cost;
 			clone.expanded = this.expanded;
 			clone.hash = this.hash;
+			clone.id = this.id;
 			clone.outgoing_transitions = this.outgoing_transitions;
 			clone.owner = (LocalProblem) this.owner.clone();
 			clone.reached_by = (LocalTransition) this.reached_by.clone();
@@ -1090,6 +1322,7 @@ public class CeaHeuristic implements SASHeuristic
 	public class LocalProblem
 	{
 		final int variable;
+		final Workspace workspace; //the workspace of the thread which created this
 		double base_priority;
 		LocalProblemNode[] nodes;
 		/**
@@ -1105,6 +1338,7 @@ public class CeaHeuristic implements SASHeuristic
 		public LocalProblem(int variable)
 		{
 			this.variable = variable;
+			this.workspace = workspace();
 			this.base_priority = -1;
 			this.nodes = null;
 			this.context_variables = new ArrayList<Integer>();
@@ -1312,6 +1546,11 @@ public class CeaHeuristic implements SASHeuristic
 		}
 
 		public ValueNode(DomainTransitionGraph parent, SASLiteral val)
+		{
+			this(parent, val, parent.outDegreeOf(val));
+		}
+
+		public ValueNode(DomainTransitionGraph parent, SASLiteral val, int num_transitions)
 		{
 			this.parent_graph = parent;
 			this.literal = val;
@@ -1320,7 +1559,6 @@ public class CeaHeuristic implements SASHeuristic
 			this.reached_from = null;
 			this.reached_by = null;
 
-			int num_transitions = parent.outDegreeOf(val);
 			this.transitions = new ValueTransition[num_transitions];
 
 		}
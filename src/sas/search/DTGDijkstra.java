@@ -1,135 +1,345 @@
 package sas.search;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-import javaff.data.Action;
 
+import sas.data.CompiledDTG;
 import sas.data.DTGActionEdge;
 import sas.data.DomainTransitionGraph;
 import sas.data.SASLiteral;
+import sas.data.SASPlan;
 
+/**
+ * Finds the cheapest paths between the values of a DTG, where the cost of a transition is the cost of its action.
+ * Associated preconditions are ignored, and universal transitions can be taken from every value. Searches run over the adjacency arrays of a {@link CompiledDTG} using an
+ * {@link IndexedHeap}, so a search costs O(E log V).
+ * <p>
+ * Single-source searches settle every reachable value, while single-pair and multi-target searches stop as soon
+ * as their targets are settled. After a search which stopped early, only the distances and paths of settled
+ * values are final. The distance, predecessor and queue buffers are reused by every search, and grow to fit
+ * the largest DTG searched, so one instance can be used to search many DTGs by calling {@link #setGraph(CompiledDTG)}.
+ * An instance must only be used by one thread at a time.
+ *
+ * @author David Pattison
+ *
+ */
 public class DTGDijkstra
 {
+	private CompiledDTG graph;
+	private final IndexedHeap queue;
+
+	private double[] distances;
+	private int[] predecessors; //the value each value was reached from, only valid if reached
+	private int[] predecessorEdges; //the edge each value was reached by, only valid if reached
+	private int[] reached, settled; //stamped with the generation of the search which reached/settled each value
+	private int generation;
+	private int source;
 
-	private final List<SASLiteral> nodes;
-	private final List<DTGActionEdge> edges;
-	private Set<SASLiteral> settledNodes;
-	private Set<SASLiteral> unSettledNodes;
-	private Map<SASLiteral, SASLiteral> predecessors;
-	private Map<SASLiteral, Double> distance;
-	private DomainTransitionGraph graph;
+	/**
+	 * Creates a service with no graph. {@link #setGraph(CompiledDTG)} must be called before searching.
+	 */
+	public DTGDijkstra()
+	{
+		this.graph = null;
+		this.queue = new IndexedHeap(1);
+		this.distances = new double[0];
+		this.predecessors = new int[0];
+		this.predecessorEdges = new int[0];
+		this.reached = new int[0];
+		this.settled = new int[0];
+		this.generation = 0;
+		this.source = -1;
+	}
+
+	public DTGDijkstra(CompiledDTG graph)
+	{
+		this();
+		this.setGraph(graph);
+	}
 
+	/**
+	 * Compiles the DTG and creates a service which searches it. Later changes to the DTG are not seen.
+	 * @param graph
+	 */
 	public DTGDijkstra(DomainTransitionGraph graph)
 	{
-		// Create a copy of the array so that we can operate on this array
-		this.graph = graph;
-		this.nodes = new ArrayList<SASLiteral>(this.graph.vertexSet());
-		this.edges = new ArrayList<DTGActionEdge>(this.graph.edgeSet());
+		this(new CompiledDTG(graph));
 	}
 
-	public void execute(SASLiteral source)
+	/**
+	 * Sets the DTG which is searched, discarding the result of any previous search.
+	 * @param graph
+	 */
+	public void setGraph(CompiledDTG graph)
 	{
-		this.settledNodes = new HashSet<SASLiteral>();
-		this.unSettledNodes = new HashSet<SASLiteral>();
-		this.distance = new HashMap<SASLiteral, Double>();
-		this.predecessors = new HashMap<SASLiteral, SASLiteral>();
-		this.distance.put(source, 0d);
-		this.unSettledNodes.add(source);
-		while (this.unSettledNodes.size() > 0)
+		this.graph = graph;
+		this.source = -1;
+
+		int values = graph.getValueCount();
+		if (values > this.distances.length)
 		{
-			SASLiteral node = getMinimum(this.unSettledNodes);
-			this.settledNodes.add(node);
-			this.unSettledNodes.remove(node);
-			findMinimalDistances(node);
+			this.distances = new double[values];
+			this.predecessors = new int[values];
+			this.predecessorEdges = new int[values];
+			this.reached = new int[values];
+			this.settled = new int[values];
+			this.generation = 0;
 		}
+		this.queue.ensureCapacity(values);
 	}
 
-	private void findMinimalDistances(SASLiteral node)
+	public CompiledDTG getGraph()
 	{
-		List<SASLiteral> adjacentNodes = getNeighbors(node);
-		for (SASLiteral target : adjacentNodes)
-		{
-			if (getShortestDistance(target) > getShortestDistance(node)
-					+ getDistance(node, target))
-			{
-				this.distance.put(target,
-						getShortestDistance(node) + getDistance(node, target));
-				this.predecessors.put(target, node);
-				this.unSettledNodes.add(target);
-			}
-		}
+		return graph;
+	}
 
+	/**
+	 * Finds the cheapest path from the source to every value.
+	 * @param source The source value ID.
+	 */
+	public void execute(int source)
+	{
+		this.search(source, null);
 	}
 
-	private double getDistance(SASLiteral node, SASLiteral target)
+	/**
+	 * Finds the cheapest path from the source literal to every value.
+	 * @param source
+	 */
+	public void execute(SASLiteral source)
 	{
-		for (DTGActionEdge edge : this.edges)
-		{
-			if (this.graph.getEdgeSource(edge).equals(node)
-					&& this.graph.getEdgeTarget(edge).equals(target))
-			{
-				return edge.getWeight();
-			}
-		}
-		throw new RuntimeException("Should not happen");
+		this.execute(source.getValueId());
 	}
 
-	private List<SASLiteral> getNeighbors(SASLiteral node)
+	/**
+	 * Finds the cheapest path from the source to the target, stopping once the target is settled.
+	 * @param source The source value ID.
+	 * @param target The target value ID.
+	 * @return The distance to the target, or {@link SASHeuristic#Unreachable} if it cannot be reached.
+	 */
+	public double execute(int source, int target)
 	{
-		List<SASLiteral> neighbors = new ArrayList<SASLiteral>();
-		for (DTGActionEdge edge : this.edges)
+		this.search(source, new int[] { target });
+		return this.getDistance(target);
+	}
+
+	/**
+	 * Finds the cheapest path from the source to each of the targets, stopping once all of them are settled.
+	 * @param source The source value ID.
+	 * @param targets The target value IDs.
+	 * @return The target which is nearest to the source, or -1 if none can be reached.
+	 */
+	public int execute(int source, int[] targets)
+	{
+		this.search(source, targets);
+
+		int nearest = -1;
+		for (int t : targets)
 		{
-			if (this.graph.getEdgeSource(edge).equals(node)
-					&& !isSettled(this.graph.getEdgeTarget(edge)))
-			{
-				neighbors.add(this.graph.getEdgeTarget(edge));
-			}
+			if (this.isReachable(t) && (nearest < 0 || this.distances[t] < this.distances[nearest]))
+				nearest = t;
 		}
-		return neighbors;
+
+		return nearest;
 	}
 
-	private SASLiteral getMinimum(Set<SASLiteral> vertexes)
+	/**
+	 * Runs Dijkstra from the source until the queue is empty, or until each of the targets has been settled if
+	 * any are given.
+	 */
+	private void search(int source, int[] targets)
 	{
-		SASLiteral minimum = null;
-		for (SASLiteral vertex : vertexes)
+		if (++this.generation == Integer.MAX_VALUE)
 		{
-			if (minimum == null)
-			{
-				minimum = vertex;
-			}
-			else
+			Arrays.fill(this.reached, 0);
+			Arrays.fill(this.settled, 0);
+			this.generation = 1;
+		}
+		int gen = this.generation;
+		this.source = source;
+
+		int remaining = targets == null ? 0 : targets.length;
+
+		CompiledDTG dtg = this.graph;
+		this.queue.clear();
+		this.reached[source] = gen;
+		this.distances[source] = 0d;
+		this.predecessors[source] = -1;
+		this.predecessorEdges[source] = -1;
+		this.queue.push(source, 0d);
+		while (this.queue.isEmpty() == false)
+		{
+			int value = this.queue.pop();
+			this.settled[value] = gen;
+			if (targets != null && isTarget(value, targets) && --remaining == 0)
+				return;
+
+			double dist = this.distances[value];
+			int count = dtg.getTransitionCount(value);
+			for (int i = 0; i < count; i++)
 			{
-				if (this.getShortestDistance(vertex) < this.getShortestDistance(minimum))
+				int e = dtg.getTransition(value, i);
+				int target = dtg.getTarget(e);
+				if (this.settled[target] == gen)
+					continue;
+
+				double newDist = dist + dtg.getCost(e);
+				if (this.reached[target] != gen || newDist < this.distances[target])
 				{
-					minimum = vertex;
+					this.reached[target] = gen;
+					this.distances[target] = newDist;
+					this.predecessors[target] = value;
+					this.predecessorEdges[target] = e;
+					this.queue.push(target, newDist);
 				}
 			}
 		}
-		return minimum;
 	}
 
-	private boolean isSettled(SASLiteral vertex)
+	private static boolean isTarget(int value, int[] targets)
 	{
-		return this.settledNodes.contains(vertex);
+		for (int t : targets)
+		{
+			if (t == value)
+				return true;
+		}
+
+		return false;
 	}
 
-	private double getShortestDistance(SASLiteral destination)
+	/**
+	 * Returns true if the value was reached by the last search.
+	 * @param value
+	 * @return
+	 */
+	public boolean isReachable(int value)
 	{
-		Double d = this.distance.get(destination);
-		if (d == null)
-		{
-			return Integer.MAX_VALUE;
-		}
-		else
+		return this.source >= 0 && this.reached[value] == this.generation;
+	}
+
+	/**
+	 * Returns true if the distance to the value is final -- always the case for reachable values after a
+	 * single-source search.
+	 * @param value
+	 * @return
+	 */
+	public boolean isSettled(int value)
+	{
+		return this.source >= 0 && this.settled[value] == this.generation;
+	}
+
+	/**
+	 * Gets the distance from the source of the last search to the value.
+	 * @param value
+	 * @return The distance, or {@link SASHeuristic#Unreachable} if the value was not reached.
+	 */
+	public double getDistance(int value)
+	{
+		if (this.isReachable(value) == false)
+			return SASHeuristic.Unreachable;
+
+		return this.distances[value];
+	}
+
+	/**
+	 * Gets the value preceding the value on its cheapest path.
+	 * @param value
+	 * @return The preceding value, or -1 if the value is the source or was not reached.
+	 */
+	public int getPredecessor(int value)
+	{
+		if (this.isReachable(value) == false)
+			return -1;
+
+		return this.predecessors[value];
+	}
+
+	/**
+	 * Gets the index in the compiled DTG of the transition which the value is reached by on its cheapest path.
+	 * @param value
+	 * @return The edge index, or -1 if the value is the source or was not reached.
+	 */
+	public int getPredecessorEdgeIndex(int value)
+	{
+		if (this.isReachable(value) == false)
+			return -1;
+
+		return this.predecessorEdges[value];
+	}
+
+	/**
+	 * Gets the transition which the value is reached by on its cheapest path.
+	 * @param value
+	 * @return The transition, or null if the value is the source or was not reached.
+	 */
+	public DTGActionEdge getPredecessorEdge(int value)
+	{
+		if (this.isReachable(value) == false || this.predecessorEdges[value] < 0)
+			return null;
+
+		return this.graph.getEdge(this.predecessorEdges[value]);
+	}
+
+	/**
+	 * Gets the indices of the edges on the cheapest path to the target, in order from the source.
+	 * @param target
+	 * @return The edge indices, which are empty if the target is the source, or null if the target was not reached.
+	 */
+	protected int[] getEdgeIndexPath(int target)
+	{
+		if (this.isReachable(target) == false)
+			return null;
+
+		int length = 0;
+		for (int v = target; this.predecessors[v] >= 0; v = this.predecessors[v])
+			++length;
+
+		int[] path = new int[length];
+		int v = target;
+		for (int i = length - 1; i >= 0; i--)
 		{
-			return d;
+			path[i] = this.predecessorEdges[v];
+			v = this.predecessors[v];
 		}
+
+		return path;
+	}
+
+	/**
+	 * Gets the transitions on the cheapest path to the target, in order from the source.
+	 * @param target
+	 * @return The transitions, which are empty if the target is the source, or null if the target was not reached.
+	 */
+	public List<DTGActionEdge> getEdgePath(int target)
+	{
+		int[] indices = this.getEdgeIndexPath(target);
+		if (indices == null)
+			return null;
+
+		List<DTGActionEdge> path = new ArrayList<DTGActionEdge>(indices.length);
+		for (int e : indices)
+			path.add(this.graph.getEdge(e));
+
+		return path;
+	}
+
+	/**
+	 * Gets the actions on the cheapest path to the target, in order from the source.
+	 * @param target
+	 * @return The plan, which is empty if the target is the source, or null if the target was not reached.
+	 */
+	public SASPlan getPlan(int target)
+	{
+		int[] indices = this.getEdgeIndexPath(target);
+		if (indices == null)
+			return null;
+
+		SASPlan plan = new SASPlan();
+		for (int e : indices)
+			plan.addAction(this.graph.getAction(e));
+
+		return plan;
 	}
 
 	/*
@@ -138,22 +348,16 @@ public class DTGDijkstra
 	 */
 	public LinkedList<SASLiteral> getPath(SASLiteral target)
 	{
-		LinkedList<SASLiteral> path = new LinkedList<SASLiteral>();
-		SASLiteral step = target;
-		// Check if a path exists
-		if (this.predecessors.get(step) == null)
-		{
+		int[] indices = this.getEdgeIndexPath(target.getValueId());
+		if (indices == null || indices.length == 0)
 			return null;
-		}
-		path.add(step);
-		while (this.predecessors.get(step) != null)
-		{
-			step = this.predecessors.get(step);
-			path.add(step);
-		}
-		// Put it into the correct order
-		Collections.reverse(path);
+
+		//the first transition may be universal, so its precondition is not necessarily the source
+		LinkedList<SASLiteral> path = new LinkedList<SASLiteral>();
+		path.add(this.graph.getLiteral(this.source));
+		for (int e : indices)
+			path.add(this.graph.getEdge(e).getEffect());
+
 		return path;
 	}
-
 }
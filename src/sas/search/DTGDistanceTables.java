@@ -0,0 +1,255 @@
+package sas.search;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import sas.data.CompiledCausalGraph;
+import sas.data.CompiledDTG;
+import sas.data.SASAction;
+
+/**
+ * Dense all-pairs distance tables for the context-free DTGs of a causal graph -- those whose transitions have no
+ * associated preconditions, such as the roots of the causal graph. The distance between two values of such a DTG
+ * never depends upon the state, so it is computed once here and then looked up, rather than being found by a
+ * search during every estimate. Along with each distance, the first transition on a cheapest path is recorded,
+ * so that preferred actions can be found without a search.
+ * <p>
+ * The tables are computed by running {@link DTGDijkstra} from every value of each DTG, with the DTGs split across
+ * the threads of a {@link ForkJoinPool}. DTGs with more than {@link #DefaultMaxValueCount} values are not tabled,
+ * as the size of their table grows with the square of their domain. Once created the tables are immutable, so
+ * may be shared by any number of heuristics and threads.
+ *
+ * @author David Pattison
+ * @see #get(CompiledCausalGraph)
+ */
+public class DTGDistanceTables
+{
+	/**
+	 * The largest domain of a DTG which is tabled.
+	 */
+	public static final int DefaultMaxValueCount = 512;
+
+	/**
+	 * The number of DTGs tabled by each task.
+	 */
+	private static final int Threshold = 8;
+
+	/**
+	 * The tables of each compiled causal graph requested through {@link #get(CompiledCausalGraph)}. Nothing held
+	 * by an entry refers back to its compiled causal graph, so the entry is discarded along with it.
+	 */
+	private static final Map<CompiledCausalGraph, SharedTables> shared = new WeakHashMap<CompiledCausalGraph, SharedTables>();
+
+	private final CompiledDTG[] dtgs; //indexed by variable, null if not tabled
+	private final double[][] distances; //indexed by variable, then from * values + to. Null if not tabled
+	private final int[][] firstEdges; //the first edge on a cheapest path, laid out as the distances. -1 if none
+
+	/**
+	 * Tables every context-free DTG with no more than the default number of values, using the default pool.
+	 * @param cg
+	 * @see ParallelHeuristicEvaluator#getDefaultPool()
+	 */
+	public DTGDistanceTables(CompiledCausalGraph cg)
+	{
+		this(cg, DefaultMaxValueCount, ParallelHeuristicEvaluator.getDefaultPool());
+	}
+
+	/**
+	 * Tables every context-free DTG with no more than the specified number of values.
+	 * @param cg
+	 * @param maxValueCount
+	 * @param pool The pool used to compute the tables. If it has a parallelism of 1, they are computed in the calling thread.
+	 */
+	public DTGDistanceTables(CompiledCausalGraph cg, int maxValueCount, ForkJoinPool pool)
+	{
+		this.dtgs = new CompiledDTG[cg.getVariableCount()];
+		this.distances = new double[cg.getVariableCount()][];
+		this.firstEdges = new int[cg.getVariableCount()][];
+
+		int count = 0;
+		int[] vars = new int[cg.getVariableCount()];
+		for (int v = 0; v < cg.getVariableCount(); v++)
+		{
+			CompiledDTG dtg = cg.getDTG(v);
+			if (dtg != null && dtg.hasAssociatedPcs() == false && dtg.getValueCount() <= maxValueCount)
+				vars[count++] = v;
+		}
+		vars = Arrays.copyOf(vars, count);
+
+		TableTask task = new TableTask(cg, vars, 0, count);
+		if (count <= Threshold || pool.getParallelism() <= 1)
+			task.compute();
+		else
+			pool.invoke(task);
+	}
+
+	/**
+	 * Gets the tables of the compiled causal graph, computing them with the default settings the first time they
+	 * are requested. Later calls for the same compiled causal graph return the same tables. The tables of 
+	 * different compiled causal graphs can be computed concurrently.
+	 * @param cg
+	 * @return
+	 */
+	public static DTGDistanceTables get(CompiledCausalGraph cg)
+	{
+		SharedTables entry;
+		synchronized (shared)
+		{
+			entry = shared.get(cg);
+			if (entry == null)
+			{
+				entry = new SharedTables();
+				shared.put(cg, entry);
+			}
+		}
+
+		return entry.get(cg);
+	}
+
+	/**
+	 * Computes the tables of a compiled causal graph the first time they are requested. Only threads requesting
+	 * the same tables wait for each other.
+	 */
+	private static class SharedTables
+	{
+		private DTGDistanceTables tables;
+
+		public synchronized DTGDistanceTables get(CompiledCausalGraph cg)
+		{
+			if (this.tables == null)
+				this.tables = new DTGDistanceTables(cg);
+
+			return this.tables;
+		}
+	}
+
+	/**
+	 * Returns true if the variable's DTG has been tabled.
+	 * @param var
+	 * @return
+	 */
+	public boolean isTabled(int var)
+	{
+		return var < this.distances.length && this.distances[var] != null;
+	}
+
+	/**
+	 * Gets the cost of the cheapest path between two values of a tabled DTG.
+	 * @param var
+	 * @param from
+	 * @param to
+	 * @return The distance, or {@link SASHeuristic#Unreachable} if there is no path.
+	 */
+	public double getDistance(int var, int from, int to)
+	{
+		return this.distances[var][from * this.dtgs[var].getValueCount() + to];
+	}
+
+	/**
+	 * Gets the index in the compiled DTG of the first transition on a cheapest path between two values of a
+	 * tabled DTG.
+	 * @param var
+	 * @param from
+	 * @param to
+	 * @return The edge index, or -1 if the values are equal or there is no path.
+	 */
+	public int getFirstEdge(int var, int from, int to)
+	{
+		return this.firstEdges[var][from * this.dtgs[var].getValueCount() + to];
+	}
+
+	/**
+	 * Gets the action of the first transition on a cheapest path between two values of a tabled DTG.
+	 * @param var
+	 * @param from
+	 * @param to
+	 * @return The action, or null if the values are equal or there is no path.
+	 */
+	public SASAction getFirstAction(int var, int from, int to)
+	{
+		int e = this.getFirstEdge(var, from, to);
+		if (e < 0)
+			return null;
+
+		return this.dtgs[var].getAction(e);
+	}
+
+	/**
+	 * Tables the DTG using the search, which is reused between DTGs.
+	 */
+	private void table(CompiledDTG dtg, DTGDijkstra search)
+	{
+		int var = dtg.getVariableId();
+		int n = dtg.getValueCount();
+		double[] dists = new double[n * n];
+		int[] first = new int[n * n];
+		Arrays.fill(first, -1);
+
+		search.setGraph(dtg);
+		for (int from = 0; from < n; from++)
+		{
+			search.execute(from);
+
+			int row = from * n;
+			for (int to = 0; to < n; to++)
+			{
+				dists[row + to] = search.getDistance(to);
+				if (to == from || search.isReachable(to) == false)
+					continue;
+
+				//walk back to the source, then fill in the first edge of each value on the way
+				int v = to;
+				while (search.getPredecessor(v) != from && first[row + v] < 0)
+					v = search.getPredecessor(v);
+
+				int e = first[row + v] < 0 ? search.getPredecessorEdgeIndex(v) : first[row + v];
+				for (int w = to; w != v; w = search.getPredecessor(w))
+					first[row + w] = e;
+				first[row + v] = e;
+			}
+		}
+
+		this.dtgs[var] = dtg;
+		this.distances[var] = dists;
+		this.firstEdges[var] = first;
+	}
+
+	/**
+	 * Tables the variables in the range [from, to), splitting it in half until it is no larger than the threshold.
+	 */
+	private class TableTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = -6306410785402251452L;
+
+		private final CompiledCausalGraph cg;
+		private final int[] vars;
+		private final int from, to;
+
+		public TableTask(CompiledCausalGraph cg, int[] vars, int from, int to)
+		{
+			this.cg = cg;
+			this.vars = vars;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (this.to - this.from <= Threshold)
+			{
+				DTGDijkstra search = new DTGDijkstra();
+				for (int i = this.from; i < this.to; i++)
+					table(this.cg.getDTG(this.vars[i]), search);
+
+				return;
+			}
+
+			int mid = (this.from + this.to) >>> 1;
+			invokeAll(new TableTask(this.cg, this.vars, this.from, mid), new TableTask(this.cg, this.vars, mid, this.to));
+		}
+	}
+}
@@ -1,19 +1,32 @@
 package sas.search;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 import sas.data.DTGActionEdge;
-import sas.data.SASAction;
 
 public class DTGNode
 {
 	public int value;
-	public final HashMap<Integer, Double> dists;
+	/**
+	 * The distance from this node to every other value of the DTG, indexed by value. Only valid if
+	 * {@link #generation} matches the current evaluation of whoever owns the node.
+	 */
+	public final double[] dists;
+	/**
+	 * The value preceding each value on the cheapest path found from this node, and the transition used to 
+	 * reach it from there. Both are indexed by value and valid under the same conditions as {@link #dists}.
+	 */
+	public final int[] reachedFrom;
+	public final DTGActionEdge[] reachedBy;
+	public int generation;
 	public DTGNode parent;
 	
-	public DTGNode(int value)
+	public DTGNode(int value, int domainSize)
 	{
-		this.dists = new HashMap<Integer, Double>();
+		this.dists = new double[domainSize];
+		this.reachedFrom = new int[domainSize];
+		this.reachedBy = new DTGActionEdge[domainSize];
+		this.generation = 0;
 		this.parent = null;
 		this.value = value;
 	}
@@ -21,6 +34,6 @@ public class DTGNode
 	@Override
 	public String toString()
 	{
-		return this.value + ": " + this.dists.toString();
+		return this.value + ": " + Arrays.toString(this.dists);
 	}
-}
\ No newline at end of file
+}
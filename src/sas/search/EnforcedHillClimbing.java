@@ -0,0 +1,278 @@
+package sas.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import javaff.search.UnreachableGoalException;
+import sas.data.SASAction;
+import sas.data.SASLiteral;
+import sas.data.SASPlan;
+import sas.data.SASProblem;
+import sas.data.SASState;
+import sas.util.UnreachableSASGoalException;
+
+/**
+ * Enforced hill-climbing, as used in FF. From the current state, a breadth-first search is run until a
+ * state with a strictly better heuristic estimate is found, at which point the path to it is committed
+ * to and the search restarts from there. Plateaus and local minima are therefore escaped by exhaustively
+ * searching them, rather than by choosing randomly between equally good successors. States are only
+ * visited once per breadth-first search.
+ * <p>
+ * If helpful action pruning is enabled, only the heuristic's preferred actions are followed from each state,
+ * unless it has none. If a breadth-first search is exhausted without finding a better state (which happens
+ * if a dead end has been committed to, or pruning removes every route to the goal), a
+ * {@link GreedyBestFirstSearch} is run from the initial state, if fall back is enabled.
+ *
+ * @author David Pattison
+ *
+ */
+public class EnforcedHillClimbing extends SearchEngine
+{
+	private boolean useHelpfulActions;
+	private boolean useFallback;
+	private boolean fellBack;
+	private GreedyBestFirstSearch fallback;
+
+	private int[] visitedIteration; //state ID -> the last breadth-first search in which it was visited
+	private int iteration;
+	private SASHeuristicResult foundResult; //the result of the state found by the last breadth-first search
+
+	public EnforcedHillClimbing(SASProblem problem, SASHeuristic heuristic)
+	{
+		this(problem, heuristic, problem.getGoalLiterals());
+	}
+
+	public EnforcedHillClimbing(SASProblem problem, SASHeuristic heuristic, Collection<SASLiteral> goals)
+	{
+		super(problem, heuristic, goals);
+
+		this.useHelpfulActions = true;
+		this.useFallback = true;
+		this.fellBack = false;
+		this.fallback = null;
+		this.foundResult = null;
+
+		this.visitedIteration = new int[1024];
+		this.iteration = 0;
+	}
+
+	/**
+	 * If true, only the preferred actions of a state are followed during breadth-first search, unless it
+	 * has none. Enabled by default.
+	 * @param useHelpfulActions
+	 * @see SASHeuristic#getResult(SASState, Collection)
+	 */
+	public void setUseHelpfulActions(boolean useHelpfulActions)
+	{
+		this.useHelpfulActions = useHelpfulActions;
+	}
+
+	public boolean isUsingHelpfulActions()
+	{
+		return useHelpfulActions;
+	}
+
+	/**
+	 * If true, a greedy best-first search is run from the initial state if hill-climbing fails. Enabled
+	 * by default.
+	 * @param useFallback
+	 */
+	public void setUseFallback(boolean useFallback)
+	{
+		this.useFallback = useFallback;
+	}
+
+	public boolean isUsingFallback()
+	{
+		return useFallback;
+	}
+
+	/**
+	 * Returns true if the last search had to fall back to best-first search.
+	 * @return
+	 */
+	public boolean fellBack()
+	{
+		return fellBack;
+	}
+
+	@Override
+	protected void reset()
+	{
+		super.reset();
+
+		Arrays.fill(this.visitedIteration, 0);
+		this.iteration = 0;
+		this.fellBack = false;
+		this.fallback = null;
+	}
+
+	@Override
+	public SASPlan search() throws UnreachableGoalException
+	{
+		this.reset();
+
+		SASState current = this.getInitialState();
+		int currentId = this.register(current, -1, -1);
+		SASHeuristicResult currentResult = this.evaluateState(current);
+
+		SASPlan plan = new SASPlan();
+		while (this.isGoal(current) == false)
+		{
+			if (currentResult.isUnreachable())
+			{
+				this.deadEnds++;
+				return this.fallBack("Hill-climbing reached a dead end");
+			}
+
+			int better = this.breadthFirstSearch(currentId, currentResult);
+			if (better < 0)
+				return this.fallBack("Hill-climbing failed to escape plateau");
+
+			plan.append(this.extractPath(currentId, better));
+
+			currentId = better;
+			current = this.getState(currentId);
+			currentResult = this.foundResult;
+		}
+
+		return plan;
+	}
+
+	/**
+	 * Searches breadth-first from the state for a state with a lower estimate, or a goal state. The
+	 * heuristic result of the state found is stored in {@link #foundResult}.
+	 * @return The ID of the state found, or -1 if there is none.
+	 */
+	private int breadthFirstSearch(int startId, SASHeuristicResult startResult)
+	{
+		this.iteration++;
+		this.markVisited(startId);
+
+		double bestH = startResult.getEstimate();
+
+		List<Integer> layer = new ArrayList<Integer>();
+		List<SASHeuristicResult> layerResults = new ArrayList<SASHeuristicResult>();
+		layer.add(startId);
+		layerResults.add(startResult);
+
+		while (layer.isEmpty() == false)
+		{
+			List<Integer> next = new ArrayList<Integer>();
+			List<SASHeuristicResult> nextResults = new ArrayList<SASHeuristicResult>();
+			for (int i = 0; i < layer.size(); i++)
+			{
+				int id = layer.get(i);
+				SASState s = this.getState(id);
+				this.expanded++;
+
+				for (SASAction a : this.getSearchActions(s, layerResults.get(i)))
+				{
+					SASState succ = this.getSuccessor(s, a);
+					int op = this.operators.getIndex(a);
+					int succId = this.register(succ, id, op);
+					if (this.isVisited(succId))
+						continue;
+
+					this.markVisited(succId);
+					//the parent from any previous search is replaced, so the path back leads to the start
+					this.setParent(succId, id, op);
+
+					if (this.isGoal(succ))
+					{
+						this.foundResult = new SASHeuristicResult(0);
+						return succId;
+					}
+
+					SASHeuristicResult result = this.evaluateState(succ);
+					if (result.isUnreachable())
+					{
+						this.deadEnds++;
+						continue;
+					}
+
+					if (result.getEstimate() < bestH)
+					{
+						this.foundResult = result;
+						return succId;
+					}
+
+					next.add(succId);
+					nextResults.add(result);
+				}
+			}
+
+			layer = next;
+			layerResults = nextResults;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the actions to follow from a state -- its preferred actions if pruning is enabled and it has
+	 * any, otherwise all applicable actions.
+	 */
+	private Collection<SASAction> getSearchActions(SASState s, SASHeuristicResult result)
+	{
+		if (this.useHelpfulActions && result.getPreferredActions().isEmpty() == false)
+			return result.getPreferredActions();
+
+		return this.getApplicableActions(s);
+	}
+
+	private SASHeuristicResult evaluateState(SASState s)
+	{
+		if (this.useHelpfulActions)
+			return this.evaluateWithPreferred(s);
+
+		return new SASHeuristicResult(this.evaluate(s));
+	}
+
+	/**
+	 * Extracts the actions on the path from one state to another found by the last breadth-first search.
+	 */
+	private List<SASAction> extractPath(int fromId, int toId)
+	{
+		SASPlan path = new SASPlan();
+		for (int curr = toId; curr != fromId; curr = this.getParent(curr))
+		{
+			path.prepend(this.operators.getAction(this.getParentOperator(curr)));
+		}
+
+		return path.getActions();
+	}
+
+	private SASPlan fallBack(String reason) throws UnreachableGoalException
+	{
+		if (this.useFallback == false)
+			throw new UnreachableSASGoalException(this.goals, reason);
+
+		this.fellBack = true;
+		this.fallback = new GreedyBestFirstSearch(this.problem, this.heuristic, this.goals);
+		this.fallback.setUsePreferredOperators(this.useHelpfulActions);
+
+		SASPlan plan = this.fallback.search();
+		this.expanded += this.fallback.getExpandedCount();
+		this.evaluated += this.fallback.getEvaluatedCount();
+		this.generated += this.fallback.getGeneratedCount();
+		this.deadEnds += this.fallback.getDeadEndCount();
+
+		return plan;
+	}
+
+	private boolean isVisited(int id)
+	{
+		return id < this.visitedIteration.length && this.visitedIteration[id] == this.iteration;
+	}
+
+	private void markVisited(int id)
+	{
+		if (id >= this.visitedIteration.length)
+			this.visitedIteration = Arrays.copyOf(this.visitedIteration, Math.max(id + 1, this.visitedIteration.length * 2));
+
+		this.visitedIteration[id] = this.iteration;
+	}
+}
@@ -0,0 +1,176 @@
+package sas.search;
+
+import java.util.Collection;
+import java.util.PriorityQueue;
+
+import javaff.search.UnreachableGoalException;
+import sas.data.SASAction;
+import sas.data.SASLiteral;
+import sas.data.SASPlan;
+import sas.data.SASProblem;
+import sas.data.SASState;
+import sas.util.UnreachableSASGoalException;
+
+/**
+ * Greedy best-first search with lazy (deferred) heuristic evaluation. Rather than evaluating every successor
+ * when its parent is expanded, the open list holds (parent, action) pairs ordered by the parent's estimate.
+ * A successor is only generated and evaluated when its pair is removed from the open list, so states which
+ * are never reached are never evaluated.
+ * <p>
+ * If preferred operators are enabled, pairs whose action was preferred by the heuristic in the parent are
+ * also placed in a second open list, and the two lists are expanded from alternately.
+ *
+ * @author David Pattison
+ *
+ */
+public class GreedyBestFirstSearch extends SearchEngine
+{
+	private boolean usePreferredOperators;
+	private PriorityQueue<OpenEntry> open, preferredOpen;
+	private long pushed; //used to break ties in insertion order
+
+	public GreedyBestFirstSearch(SASProblem problem, SASHeuristic heuristic)
+	{
+		this(problem, heuristic, problem.getGoalLiterals());
+	}
+
+	public GreedyBestFirstSearch(SASProblem problem, SASHeuristic heuristic, Collection<SASLiteral> goals)
+	{
+		super(problem, heuristic, goals);
+
+		this.open = new PriorityQueue<OpenEntry>();
+		this.preferredOpen = new PriorityQueue<OpenEntry>();
+		this.usePreferredOperators = false;
+	}
+
+	/**
+	 * If true, successors reached by the heuristic's preferred actions are placed in a second open list,
+	 * which is expanded from alternately with the main one.
+	 * @param usePreferredOperators
+	 * @see SASHeuristic#getResult(SASState, Collection)
+	 */
+	public void setUsePreferredOperators(boolean usePreferredOperators)
+	{
+		this.usePreferredOperators = usePreferredOperators;
+	}
+
+	public boolean isUsingPreferredOperators()
+	{
+		return usePreferredOperators;
+	}
+
+	@Override
+	protected void reset()
+	{
+		super.reset();
+
+		this.open.clear();
+		this.preferredOpen.clear();
+		this.pushed = 0;
+	}
+
+	@Override
+	public SASPlan search() throws UnreachableGoalException
+	{
+		this.reset();
+
+		SASState initial = this.getInitialState();
+		int initialId = this.register(initial, -1, -1);
+		if (this.isGoal(initial))
+			return this.extractPlan(initialId);
+
+		if (this.expand(initialId, initial) == false)
+			throw new UnreachableSASGoalException(this.goals, "Initial state is a dead end");
+
+		boolean preferredTurn = true;
+		while (this.open.isEmpty() == false || this.preferredOpen.isEmpty() == false)
+		{
+			OpenEntry entry;
+			if (this.preferredOpen.isEmpty() == false && (preferredTurn || this.open.isEmpty()))
+				entry = this.preferredOpen.poll();
+			else
+				entry = this.open.poll();
+			preferredTurn = !preferredTurn;
+
+			SASState parent = this.getState(entry.parent);
+			SASAction a = this.operators.getAction(entry.op);
+			SASState succ = this.getSuccessor(parent, a);
+
+			//closed
+			if (this.lookup(succ) >= 0)
+				continue;
+
+			int id = this.register(succ, entry.parent, entry.op);
+			if (this.isGoal(succ))
+				return this.extractPlan(id);
+
+			this.expand(id, succ);
+		}
+
+		throw new UnreachableSASGoalException(this.goals, "Search space exhausted without reaching goal");
+	}
+
+	/**
+	 * Evaluates the state and adds a pair for each applicable action to the open list(s).
+	 * @return False if the state is a dead end, true otherwise.
+	 */
+	private boolean expand(int id, SASState s)
+	{
+		double h;
+		SASHeuristicResult result = null;
+		if (this.usePreferredOperators)
+		{
+			result = this.evaluateWithPreferred(s);
+			h = result.getEstimate();
+		}
+		else
+		{
+			h = this.evaluate(s);
+		}
+
+		if (h == SASHeuristic.Unreachable)
+		{
+			this.deadEnds++;
+			return false;
+		}
+
+		this.expanded++;
+		for (SASAction a : this.getApplicableActions(s))
+		{
+			OpenEntry entry = new OpenEntry(id, this.operators.getIndex(a), h, this.pushed++);
+			this.open.add(entry);
+			if (result != null && result.isPreferred(a))
+				this.preferredOpen.add(entry);
+		}
+
+		return true;
+	}
+
+	/**
+	 * An unevaluated successor -- the parent state and the action to apply to it.
+	 */
+	private static class OpenEntry implements Comparable<OpenEntry>
+	{
+		public final int parent, op;
+		public final double h;
+		public final long order;
+
+		public OpenEntry(int parent, int op, double h, long order)
+		{
+			this.parent = parent;
+			this.op = op;
+			this.h = h;
+			this.order = order;
+		}
+
+		@Override
+		public int compareTo(OpenEntry o)
+		{
+			int c = Double.compare(this.h, o.h);
+			if (c != 0)
+				return c;
+
+			return this.order < o.order ? -1 : (this.order > o.order ? 1 : 0);
+		}
+	}
+}
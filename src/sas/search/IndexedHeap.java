@@ -0,0 +1,247 @@
+package sas.search;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap over integer IDs in the range [0, capacity), keyed on primitive doubles. Each ID may be in the heap
+ * at most once, and its key can be decreased in place, so no stale entries are ever pushed. An optional secondary key
+ * is used to break ties between equal primary keys (lower is better).
+ * <p>
+ * Clearing the heap is O(1) -- the position of each ID is stamped with a generation counter, so entries from a previous
+ * use are simply ignored rather than being reset. This allows a single heap to be reused across many searches without
+ * allocation.
+ *
+ * @author David Pattison
+ *
+ */
+public class IndexedHeap implements IntPriorityQueue
+{
+	private int[] heap; //heap position -> id
+	private double[] keys, ties; //indexed by id
+	private int[] position; //id -> heap position, only valid if the generation matches
+	private int[] generation; //id -> generation in which it was last inserted
+	private int currentGeneration;
+	private int size;
+
+	/**
+	 * Creates a heap for IDs in the range [0, capacity).
+	 * @param capacity
+	 */
+	public IndexedHeap(int capacity)
+	{
+		capacity = Math.max(1, capacity);
+		this.heap = new int[capacity];
+		this.keys = new double[capacity];
+		this.ties = new double[capacity];
+		this.position = new int[capacity];
+		this.generation = new int[capacity];
+		this.currentGeneration = 1;
+		this.size = 0;
+	}
+
+	/**
+	 * Ensures that IDs in the range [0, capacity) can be inserted. The heap contents are preserved.
+	 * @param capacity
+	 */
+	@Override
+	public void ensureCapacity(int capacity)
+	{
+		if (capacity <= this.keys.length)
+			return;
+
+		int length = Math.max(capacity, this.keys.length * 2);
+		this.heap = Arrays.copyOf(this.heap, length);
+		this.keys = Arrays.copyOf(this.keys, length);
+		this.ties = Arrays.copyOf(this.ties, length);
+		this.position = Arrays.copyOf(this.position, length);
+		this.generation = Arrays.copyOf(this.generation, length);
+	}
+
+	/**
+	 * Returns the largest ID which can be held, plus one.
+	 * @return
+	 */
+	public int getCapacity()
+	{
+		return this.keys.length;
+	}
+
+	/**
+	 * Removes all entries from the heap in constant time.
+	 */
+	@Override
+	public void clear()
+	{
+		this.size = 0;
+		this.currentGeneration++;
+		if (this.currentGeneration == Integer.MAX_VALUE)
+		{
+			Arrays.fill(this.generation, 0);
+			this.currentGeneration = 1;
+		}
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Determines whether the specified ID is currently in the heap.
+	 * @param id
+	 * @return
+	 */
+	@Override
+	public boolean contains(int id)
+	{
+		return this.generation[id] == this.currentGeneration && this.position[id] >= 0;
+	}
+
+	/**
+	 * Gets the key of an ID which is in the heap.
+	 * @param id
+	 * @return
+	 */
+	public double getKey(int id)
+	{
+		return this.keys[id];
+	}
+
+	/**
+	 * Inserts the ID with the specified key, or updates its key if it is already present and the new key is
+	 * lower.
+	 * @param id
+	 * @param key
+	 * @return True if the ID was inserted or its key decreased, false if it was already present with a key at least
+	 * as good.
+	 */
+	@Override
+	public boolean push(int id, double key)
+	{
+		return this.push(id, key, 0);
+	}
+
+	/**
+	 * Inserts the ID with the specified key and tie-breaking key, or updates both if it is already present
+	 * and the new keys are better (lower key, or equal key and lower tie).
+	 * @param id
+	 * @param key
+	 * @param tie Used to order entries with equal keys.
+	 * @return True if the ID was inserted or its keys decreased, false if it was already present with keys at least
+	 * as good.
+	 */
+	public boolean push(int id, double key, double tie)
+	{
+		if (this.contains(id))
+		{
+			if (key > this.keys[id] || (key == this.keys[id] && tie >= this.ties[id]))
+				return false;
+
+			this.keys[id] = key;
+			this.ties[id] = tie;
+			this.siftUp(this.position[id]);
+			return true;
+		}
+
+		this.generation[id] = this.currentGeneration;
+		this.keys[id] = key;
+		this.ties[id] = tie;
+		this.heap[this.size] = id;
+		this.position[id] = this.size;
+		this.size++;
+		this.siftUp(this.size - 1);
+
+		return true;
+	}
+
+	/**
+	 * Returns the ID with the lowest key, without removing it.
+	 * @return
+	 */
+	public int peek()
+	{
+		return this.heap[0];
+	}
+
+	/**
+	 * Returns the lowest key in the heap.
+	 * @return
+	 */
+	public double peekKey()
+	{
+		return this.keys[this.heap[0]];
+	}
+
+	/**
+	 * Removes and returns the ID with the lowest key. Its key is still available through {@link #getKey(int)}
+	 * until it is reinserted or the heap is cleared.
+	 * @return
+	 */
+	@Override
+	public int pop()
+	{
+		int top = this.heap[0];
+		this.size--;
+		if (this.size > 0)
+		{
+			this.heap[0] = this.heap[this.size];
+			this.position[this.heap[0]] = 0;
+			this.siftDown(0);
+		}
+		this.position[top] = -1;
+
+		return top;
+	}
+
+	private boolean less(int a, int b)
+	{
+		return this.keys[a] < this.keys[b] || (this.keys[a] == this.keys[b] && this.ties[a] < this.ties[b]);
+	}
+
+	private void siftUp(int pos)
+	{
+		int id = this.heap[pos];
+		while (pos > 0)
+		{
+			int parent = (pos - 1) >>> 1;
+			int parentId = this.heap[parent];
+			if (this.less(id, parentId) == false)
+				break;
+
+			this.heap[pos] = parentId;
+			this.position[parentId] = pos;
+			pos = parent;
+		}
+		this.heap[pos] = id;
+		this.position[id] = pos;
+	}
+
+	private void siftDown(int pos)
+	{
+		int id = this.heap[pos];
+		int half = this.size >>> 1;
+		while (pos < half)
+		{
+			int child = 2 * pos + 1;
+			int right = child + 1;
+			if (right < this.size && this.less(this.heap[right], this.heap[child]))
+				child = right;
+
+			if (this.less(this.heap[child], id) == false)
+				break;
+
+			this.heap[pos] = this.heap[child];
+			this.position[this.heap[pos]] = pos;
+			pos = child;
+		}
+		this.heap[pos] = id;
+		this.position[id] = pos;
+	}
+}
@@ -0,0 +1,49 @@
+package sas.search;
+
+/**
+ * A min-priority queue over integer IDs in the range [0, capacity). Each ID is held at most once -- pushing
+ * an ID which is already queued lowers its priority if the new priority is better, rather than adding
+ * a duplicate. 
+ * 
+ * @author David Pattison
+ * @see IndexedHeap
+ * @see BucketQueue
+ */
+public interface IntPriorityQueue
+{
+	/**
+	 * Ensures that IDs in the range [0, capacity) can be pushed. The queue contents are preserved.
+	 * @param capacity
+	 */
+	public void ensureCapacity(int capacity);
+	
+	/**
+	 * Removes all entries from the queue.
+	 */
+	public void clear();
+	
+	public boolean isEmpty();
+	
+	public int size();
+	
+	/**
+	 * Determines whether the specified ID is currently queued. This is a constant time operation.
+	 * @param id
+	 * @return
+	 */
+	public boolean contains(int id);
+	
+	/**
+	 * Queues the ID with the specified priority, or lowers its priority if it is already queued with a higher one.
+	 * @param id
+	 * @param priority
+	 * @return True if the ID was queued or its priority lowered, false otherwise.
+	 */
+	public boolean push(int id, double priority);
+	
+	/**
+	 * Removes and returns the ID with the lowest priority.
+	 * @return
+	 */
+	public int pop();
+}
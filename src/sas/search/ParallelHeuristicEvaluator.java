@@ -0,0 +1,172 @@
+package sas.search;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javaff.search.UnreachableGoalException;
+import sas.data.SASLiteral;
+import sas.data.SASState;
+
+/**
+ * Evaluates a batch of states in parallel on a {@link ForkJoinPool}. Heuristics need not be thread-safe, as
+ * each worker thread evaluates states with its own instance, created on first use by calling 
+ * {@link SASHeuristic#branch()} on the prototype heuristic.
+ * Branched instances share all read-only problem data with the prototype.
+ * <p>
+ * Small batches are evaluated sequentially by the prototype in the calling thread. The prototype must
+ * not be used by any other thread while a batch is being evaluated.
+ *
+ * @author David Pattison
+ * @see SASHeuristic#getEstimates(List, Collection)
+ */
+public class ParallelHeuristicEvaluator
+{
+	/**
+	 * The number of states evaluated by each task. Batches no larger than this are evaluated sequentially.
+	 */
+	public static final int DefaultThreshold = 4;
+
+	private static ForkJoinPool defaultPool = null;
+
+	private final SASHeuristic prototype;
+	private final ForkJoinPool pool;
+	private final ThreadLocal<SASHeuristic> heuristics;
+	private int threshold;
+
+	/**
+	 * Creates an evaluator which uses the default pool.
+	 * @param prototype
+	 * @see #getDefaultPool()
+	 */
+	public ParallelHeuristicEvaluator(SASHeuristic prototype)
+	{
+		this(prototype, getDefaultPool());
+	}
+
+	public ParallelHeuristicEvaluator(final SASHeuristic prototype, ForkJoinPool pool)
+	{
+		this.prototype = prototype;
+		this.pool = pool;
+		this.threshold = DefaultThreshold;
+
+		this.heuristics = new ThreadLocal<SASHeuristic>()
+		{
+			@Override
+			protected SASHeuristic initialValue()
+			{
+				synchronized (prototype)
+				{
+					return prototype.branch();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Gets the pool shared by all evaluators which were not given one, which has one thread per
+	 * available processor.
+	 * @return
+	 */
+	public static synchronized ForkJoinPool getDefaultPool()
+	{
+		if (defaultPool == null)
+			defaultPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+		return defaultPool;
+	}
+
+	/**
+	 * Sets the number of states evaluated by each task.
+	 * @param threshold
+	 */
+	public void setThreshold(int threshold)
+	{
+		this.threshold = Math.max(1, threshold);
+	}
+
+	public int getThreshold()
+	{
+		return threshold;
+	}
+
+	public SASHeuristic getPrototype()
+	{
+		return prototype;
+	}
+
+	/**
+	 * Gets the estimate of each state to the goals.
+	 * @param states
+	 * @param goals
+	 * @return The estimate of each state, in the same order as the states. Unreachable states have an
+	 * estimate of {@link SASHeuristic#Unreachable}.
+	 */
+	public double[] getEstimates(List<SASState> states, Collection<SASLiteral> goals)
+	{
+		double[] estimates = new double[states.size()];
+		if (states.size() <= this.threshold || this.pool.getParallelism() <= 1)
+		{
+			for (int i = 0; i < estimates.length; i++)
+				estimates[i] = estimate(this.prototype, states.get(i), goals);
+		}
+		else
+		{
+			this.pool.invoke(new EvaluationTask(states, goals, estimates, 0, estimates.length));
+		}
+
+		return estimates;
+	}
+
+	private static double estimate(SASHeuristic heuristic, SASState state, Collection<SASLiteral> goals)
+	{
+		try
+		{
+			return heuristic.getEstimate(state, goals);
+		}
+		catch (UnreachableGoalException e)
+		{
+			return SASHeuristic.Unreachable;
+		}
+	}
+
+	/**
+	 * Evaluates the states in the range [from, to), splitting it in half until it is no larger than the threshold.
+	 */
+	private class EvaluationTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 3316495203442934731L;
+
+		private final List<SASState> states;
+		private final Collection<SASLiteral> goals;
+		private final double[] estimates;
+		private final int from, to;
+
+		public EvaluationTask(List<SASState> states, Collection<SASLiteral> goals, double[] estimates, int from, int to)
+		{
+			this.states = states;
+			this.goals = goals;
+			this.estimates = estimates;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (this.to - this.from <= threshold)
+			{
+				SASHeuristic heuristic = heuristics.get();
+				for (int i = this.from; i < this.to; i++)
+					this.estimates[i] = estimate(heuristic, this.states.get(i), this.goals);
+
+				return;
+			}
+
+			int mid = (this.from + this.to) >>> 1;
+			invokeAll(new EvaluationTask(this.states, this.goals, this.estimates, this.from, mid),
+					new EvaluationTask(this.states, this.goals, this.estimates, mid, this.to));
+		}
+	}
+}
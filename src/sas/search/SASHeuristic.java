@@ -1,6 +1,7 @@
 package sas.search;
 
 import java.util.Collection;
+import java.util.List;
 
 import javaff.search.UnreachableGoalException;
 import sas.data.SASLiteral;
@@ -26,5 +27,34 @@ public interface SASHeuristic
 	 * @throws UnreachableGoalException Thrown if any of the goals are unreachable.
 	 */
 	public double getEstimate(SASState initial, Collection<SASLiteral> goals) throws UnreachableGoalException;
+	
+	/**
+	 * Get the heuristic estimate from the state to the specified goals, along with the preferred 
+	 * (helpful) actions found while computing it.
+	 * @param state The state to evaluate.
+	 * @param goals The goals.
+	 * @return The estimate and preferred actions.
+	 * @throws UnreachableGoalException Thrown if any of the goals are unreachable.
+	 * @see #getEstimate(SASState, Collection)
+	 */
+	public SASHeuristicResult getResult(SASState state, Collection<SASLiteral> goals) throws UnreachableGoalException;
+	
+	/**
+	 * Get the heuristic estimate of each state to the specified goals. The states may be evaluated in 
+	 * parallel.
+	 * @param states The states to evaluate.
+	 * @param goals The goals.
+	 * @return The estimate of each state, in the same order as the states. States from which the goals are 
+	 * unreachable have an estimate of {@link #Unreachable}.
+	 * @see ParallelHeuristicEvaluator
+	 */
+	public double[] getEstimates(List<SASState> states, Collection<SASLiteral> goals);
+	
+	/**
+	 * Creates a new instance of this heuristic which shares any read-only problem data with this object,
+	 * but which can be used to compute estimates concurrently with it.
+	 * @return
+	 */
+	public SASHeuristic branch();
 
 }
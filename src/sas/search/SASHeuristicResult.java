@@ -0,0 +1,70 @@
+package sas.search;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import sas.data.SASAction;
+
+/**
+ * The result of evaluating a {@link SASHeuristic} in a state -- the estimate, plus the set of preferred 
+ * (helpful) actions which the heuristic found at the start of its cheapest relaxed paths to the goal. 
+ * Preferred actions are always applicable in the state which was evaluated.
+ * 
+ * @author David Pattison
+ *
+ */
+public class SASHeuristicResult
+{
+	private double estimate;
+	private Set<SASAction> preferredActions;
+	
+	/**
+	 * Creates a result with no preferred actions.
+	 * @param estimate
+	 */
+	public SASHeuristicResult(double estimate)
+	{
+		this(estimate, new HashSet<SASAction>());
+	}
+	
+	public SASHeuristicResult(double estimate, Set<SASAction> preferredActions)
+	{
+		this.estimate = estimate;
+		this.preferredActions = preferredActions;
+	}
+	
+	public double getEstimate()
+	{
+		return estimate;
+	}
+	
+	/**
+	 * Returns true if the estimate is {@link SASHeuristic#Unreachable}.
+	 * @return
+	 */
+	public boolean isUnreachable()
+	{
+		return this.estimate == SASHeuristic.Unreachable;
+	}
+	
+	/**
+	 * Returns the preferred actions. This set cannot be modified.
+	 * @return
+	 */
+	public Set<SASAction> getPreferredActions()
+	{
+		return Collections.unmodifiableSet(this.preferredActions);
+	}
+	
+	public boolean isPreferred(SASAction a)
+	{
+		return this.preferredActions.contains(a);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "h = "+this.estimate+", preferred "+this.preferredActions;
+	}
+}
@@ -0,0 +1,343 @@
+package sas.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import javaff.search.UnreachableGoalException;
+import sas.data.OperatorTable;
+import sas.data.SASAction;
+import sas.data.SASLiteral;
+import sas.data.SASPlan;
+import sas.data.SASProblem;
+import sas.data.SASState;
+import sas.data.StateRegistry;
+
+/**
+ * Base class for forward state-space search over a {@link SASProblem}, guided by any {@link SASHeuristic}.
+ * States are interned in a {@link StateRegistry}, so duplicate detection is a hash lookup, and each state
+ * records the ID of its parent and the index of the action which reached it, from which the plan is
+ * reconstructed. Applicable actions are found with a {@link SuccessorGenerator}, and successors are produced
+ * with {@link SASProblem#getSuccessorState(SASState, SASAction)} so that derived predicates stay correct.
+ * <p>
+ * A state whose estimate is {@link SASHeuristic#Unreachable}, or for which the heuristic throws an
+ * {@link UnreachableGoalException}, is treated as a dead end.
+ *
+ * @author David Pattison
+ *
+ */
+public abstract class SearchEngine
+{
+	protected final SASProblem problem;
+	protected final SASHeuristic heuristic;
+	protected final Collection<SASLiteral> goals;
+
+	protected final StateRegistry registry;
+	protected final SuccessorGenerator successorGenerator;
+	protected final OperatorTable operators;
+
+	private int[] parents; //state ID -> parent state ID, or -1
+	private int[] parentOps; //state ID -> index of the action applied to the parent, or -1
+
+	protected int expanded, evaluated, generated, deadEnds;
+
+	/**
+	 * Creates a search for the problem's goal.
+	 * @param problem
+	 * @param heuristic
+	 */
+	public SearchEngine(SASProblem problem, SASHeuristic heuristic)
+	{
+		this(problem, heuristic, problem.getGoalLiterals());
+	}
+
+	/**
+	 * Creates a search for the specified goals.
+	 * @param problem
+	 * @param heuristic
+	 * @param goals
+	 */
+	public SearchEngine(SASProblem problem, SASHeuristic heuristic, Collection<SASLiteral> goals)
+	{
+		this.problem = problem;
+		this.heuristic = heuristic;
+		this.goals = goals;
+
+		this.registry = new StateRegistry(problem);
+		this.successorGenerator = new SuccessorGenerator(problem);
+		this.operators = problem.getOperatorTable();
+
+		this.parents = new int[1024];
+		this.parentOps = new int[1024];
+
+		this.resetStatistics();
+	}
+
+	/**
+	 * Searches from the problem's current state for a plan which achieves the goals.
+	 * @return The plan found.
+	 * @throws UnreachableGoalException Thrown if the search space is exhausted without reaching the goals.
+	 */
+	public abstract SASPlan search() throws UnreachableGoalException;
+
+	/**
+	 * Clears all registered states and statistics, so that a new search can be run.
+	 */
+	protected void reset()
+	{
+		this.registry.clear();
+		this.resetStatistics();
+	}
+
+	protected void resetStatistics()
+	{
+		this.expanded = 0;
+		this.evaluated = 0;
+		this.generated = 0;
+		this.deadEnds = 0;
+	}
+
+	/**
+	 * Gets the state the search starts from -- the problem's current state.
+	 * @return
+	 */
+	protected SASState getInitialState()
+	{
+		return this.problem.getCurrentState();
+	}
+
+	/**
+	 * Determines whether all goals are true in the state.
+	 * @param s
+	 * @return
+	 */
+	protected boolean isGoal(SASState s)
+	{
+		for (SASLiteral g : this.goals)
+		{
+			if (s.getValueIndex(g.getVariableId()) != g.getValueId())
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Registers the state, recording its parent and the action which reached it if it is new.
+	 * @param s
+	 * @param parent The ID of the parent state, or -1 for the initial state.
+	 * @param op The index of the action in the {@link OperatorTable}, or -1 for the initial state.
+	 * @return The ID of the state.
+	 */
+	protected int register(SASState s, int parent, int op)
+	{
+		int previousSize = this.registry.size();
+		int id = this.registry.insert(s);
+		if (id == previousSize)
+			this.setParent(id, parent, op);
+
+		return id;
+	}
+
+	/**
+	 * Looks up the ID of a state.
+	 * @param s
+	 * @return The ID, or {@link StateRegistry#NotFound} if it has not been registered.
+	 */
+	protected int lookup(SASState s)
+	{
+		return this.registry.lookup(s);
+	}
+
+	/**
+	 * Sets the parent of a state, replacing any previous parent.
+	 * @param id
+	 * @param parent
+	 * @param op
+	 */
+	protected void setParent(int id, int parent, int op)
+	{
+		if (id >= this.parents.length)
+		{
+			int length = Math.max(id + 1, this.parents.length * 2);
+			this.parents = Arrays.copyOf(this.parents, length);
+			this.parentOps = Arrays.copyOf(this.parentOps, length);
+		}
+
+		this.parents[id] = parent;
+		this.parentOps[id] = op;
+	}
+
+	protected int getParent(int id)
+	{
+		return this.parents[id];
+	}
+
+	/**
+	 * Gets the index of the action which reached the state from its parent.
+	 * @param id
+	 * @return The action's index in the {@link OperatorTable}, or -1 if the state has no parent.
+	 */
+	protected int getParentOperator(int id)
+	{
+		return this.parentOps[id];
+	}
+
+	protected SASState getState(int id)
+	{
+		return this.registry.getState(id);
+	}
+
+	/**
+	 * Follows parent pointers back from the state to the initial state to build the plan which reaches it.
+	 * @param id
+	 * @return
+	 */
+	protected SASPlan extractPlan(int id)
+	{
+		List<SASAction> actions = new ArrayList<SASAction>();
+		for (int curr = id; this.parents[curr] >= 0; curr = this.parents[curr])
+		{
+			actions.add(this.operators.getAction(this.parentOps[curr]));
+		}
+
+		SASPlan plan = new SASPlan();
+		for (int i = actions.size() - 1; i >= 0; i--)
+			plan.addAction(actions.get(i));
+
+		return plan;
+	}
+
+	/**
+	 * Gets the heuristic estimate of the state.
+	 * @param s
+	 * @return The estimate, or {@link SASHeuristic#Unreachable} if the state is a dead end.
+	 */
+	protected double evaluate(SASState s)
+	{
+		this.evaluated++;
+		try
+		{
+			return this.heuristic.getEstimate(s, this.goals);
+		}
+		catch (UnreachableGoalException e)
+		{
+			return SASHeuristic.Unreachable;
+		}
+	}
+
+	/**
+	 * Gets the heuristic estimates of a batch of states, which may be evaluated in parallel.
+	 * @param states
+	 * @return The estimate of each state, in the same order as the states.
+	 * @see SASHeuristic#getEstimates(List, Collection)
+	 */
+	protected double[] evaluate(List<SASState> states)
+	{
+		this.evaluated += states.size();
+		return this.heuristic.getEstimates(states, this.goals);
+	}
+	
+	/**
+	 * Gets the heuristic estimate and preferred actions of the state.
+	 * @param s
+	 * @return The result, which has an estimate of {@link SASHeuristic#Unreachable} if the state is a dead end.
+	 */
+	protected SASHeuristicResult evaluateWithPreferred(SASState s)
+	{
+		this.evaluated++;
+		try
+		{
+			return this.heuristic.getResult(s, this.goals);
+		}
+		catch (UnreachableGoalException e)
+		{
+			return new SASHeuristicResult(SASHeuristic.Unreachable);
+		}
+	}
+
+	/**
+	 * Returns the actions applicable in the state.
+	 * @param s
+	 * @return
+	 */
+	protected List<SASAction> getApplicableActions(SASState s)
+	{
+		return this.successorGenerator.getApplicableActions(s);
+	}
+
+	/**
+	 * Applies the action to the state, producing a new state.
+	 * @param s
+	 * @param a
+	 * @return
+	 */
+	protected SASState getSuccessor(SASState s, SASAction a)
+	{
+		this.generated++;
+		return this.problem.getSuccessorState(s, a);
+	}
+
+	/**
+	 * Returns the number of states which have been expanded.
+	 * @return
+	 */
+	public int getExpandedCount()
+	{
+		return this.expanded;
+	}
+
+	/**
+	 * Returns the number of heuristic evaluations performed.
+	 * @return
+	 */
+	public int getEvaluatedCount()
+	{
+		return this.evaluated;
+	}
+
+	/**
+	 * Returns the number of successor states generated.
+	 * @return
+	 */
+	public int getGeneratedCount()
+	{
+		return this.generated;
+	}
+
+	/**
+	 * Returns the number of evaluated states which were found to be dead ends.
+	 * @return
+	 */
+	public int getDeadEndCount()
+	{
+		return this.deadEnds;
+	}
+
+	/**
+	 * Returns the number of unique states registered.
+	 * @return
+	 */
+	public int getRegisteredCount()
+	{
+		return this.registry.size();
+	}
+
+	public SASProblem getProblem()
+	{
+		return problem;
+	}
+
+	public SASHeuristic getHeuristic()
+	{
+		return heuristic;
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.getClass().getSimpleName()+": expanded "+this.expanded+", evaluated "+this.evaluated+
+				", generated "+this.generated+", dead ends "+this.deadEnds+", registered "+this.registry.size();
+	}
+}
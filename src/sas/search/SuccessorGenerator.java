@@ -0,0 +1,248 @@
+package sas.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+
+import sas.data.SASAction;
+import sas.data.SASProblem;
+import sas.data.SASState;
+
+/**
+ * Generates the applicable actions for a state without testing every action in the problem. This is
+ * the decision tree used in Fast Downward -- each internal node switches on the value of a single variable,
+ * with one child per value of that variable, plus a default child for actions which have no precondition
+ * on the variable. Actions are stored at the node where all their preconditions have been satisfied. Variables
+ * are switched on in ascending ID order along any path through the tree.
+ * <p>
+ * Retrieving the applicable actions for a state therefore visits only those nodes consistent with the state,
+ * rather than every action.
+ *
+ * @author David Pattison
+ *
+ */
+public class SuccessorGenerator
+{
+	private GeneratorNode root;
+	private int actionCount;
+
+	/**
+	 * Builds a successor generator for all actions in the problem.
+	 * @param problem
+	 */
+	public SuccessorGenerator(SASProblem problem)
+	{
+		this(problem.actions.values());
+	}
+
+	/**
+	 * Builds a successor generator for the specified actions.
+	 * @param actions
+	 */
+	public SuccessorGenerator(Collection<SASAction> actions)
+	{
+		List<OperatorCursor> cursors = new ArrayList<OperatorCursor>(actions.size());
+		for (SASAction a : actions)
+		{
+			cursors.add(new OperatorCursor(a));
+		}
+
+		this.actionCount = actions.size();
+		this.root = this.construct(cursors);
+	}
+
+	/**
+	 * Returns all actions which are applicable in the specified state.
+	 * @param state
+	 * @return
+	 */
+	public List<SASAction> getApplicableActions(SASState state)
+	{
+		List<SASAction> applicable = new ArrayList<SASAction>();
+		this.getApplicableActions(state, applicable);
+		return applicable;
+	}
+
+	/**
+	 * Adds all actions which are applicable in the specified state to the list provided.
+	 * @param state
+	 * @param applicable The list to which applicable actions are appended. This is not cleared first.
+	 */
+	public void getApplicableActions(SASState state, List<SASAction> applicable)
+	{
+		this.collect(this.root, state, applicable);
+	}
+
+	/**
+	 * Returns the number of actions this generator was built from.
+	 * @return
+	 */
+	public int getActionCount()
+	{
+		return this.actionCount;
+	}
+
+	private void collect(GeneratorNode node, SASState state, List<SASAction> applicable)
+	{
+		//the default child is followed iteratively, values recursively
+		while (node != null)
+		{
+			for (SASAction a : node.immediate)
+			{
+				applicable.add(a);
+			}
+
+			if (node.variable < 0)
+				return;
+
+			int value = state.getValueIndex(node.variable);
+			if (value >= 0 && value < node.children.length && node.children[value] != null)
+			{
+				this.collect(node.children[value], state, applicable);
+			}
+
+			node = node.defaultChild;
+		}
+	}
+
+	private GeneratorNode construct(List<OperatorCursor> operators)
+	{
+		if (operators.isEmpty())
+			return null;
+
+		List<SASAction> immediate = new ArrayList<SASAction>();
+		int switchVar = Integer.MAX_VALUE;
+		for (OperatorCursor c : operators)
+		{
+			if (c.isFinished())
+				immediate.add(c.action);
+			else
+				switchVar = Math.min(switchVar, c.currentVariable());
+		}
+
+		GeneratorNode node = new GeneratorNode();
+		node.immediate = immediate.toArray(new SASAction[immediate.size()]);
+		if (switchVar == Integer.MAX_VALUE)
+			return node;
+
+		node.variable = switchVar;
+
+		//partition the remaining operators on their value of the switch variable
+		List<List<OperatorCursor>> byValue = new ArrayList<List<OperatorCursor>>();
+		List<OperatorCursor> defaults = new ArrayList<OperatorCursor>();
+		for (OperatorCursor c : operators)
+		{
+			if (c.isFinished())
+				continue;
+
+			if (c.currentVariable() != switchVar)
+			{
+				defaults.add(c);
+				continue;
+			}
+
+			int value = c.currentValue();
+			while (byValue.size() <= value)
+			{
+				byValue.add(null);
+			}
+			if (byValue.get(value) == null)
+				byValue.set(value, new ArrayList<OperatorCursor>());
+
+			byValue.get(value).add(c.advance());
+		}
+
+		node.children = new GeneratorNode[byValue.size()];
+		for (int i = 0; i < byValue.size(); i++)
+		{
+			if (byValue.get(i) != null)
+				node.children[i] = this.construct(byValue.get(i));
+		}
+		node.defaultChild = this.construct(defaults);
+
+		return node;
+	}
+
+	/**
+	 * A node in the decision tree.
+	 */
+	private static class GeneratorNode
+	{
+		private static final GeneratorNode[] NoChildren = new GeneratorNode[0];
+
+		public int variable = -1; //-1 if this is a leaf
+		public SASAction[] immediate;
+		public GeneratorNode[] children = NoChildren;
+		public GeneratorNode defaultChild;
+	}
+
+	/**
+	 * An action along with the position of the next precondition to be switched on. Preconditions
+	 * are sorted by variable ID. Effects with an undefined (-1) precondition are ignored.
+	 */
+	private static class OperatorCursor
+	{
+		public final SASAction action;
+		private final int[] vars, values;
+		private final int position;
+
+		public OperatorCursor(SASAction action)
+		{
+			this.action = action;
+
+			int count = 0;
+			for (Entry<Integer, Integer> pc : action.getPreconditions().entrySet())
+			{
+				if (pc.getValue() >= 0)
+					++count;
+			}
+
+			int[] sortedVars = new int[count];
+			int c = 0;
+			for (Entry<Integer, Integer> pc : action.getPreconditions().entrySet())
+			{
+				if (pc.getValue() >= 0)
+					sortedVars[c++] = pc.getKey();
+			}
+			Arrays.sort(sortedVars);
+
+			this.vars = sortedVars;
+			this.values = new int[count];
+			for (int i = 0; i < count; i++)
+			{
+				this.values[i] = action.getPreconditions().get(sortedVars[i]);
+			}
+			this.position = 0;
+		}
+
+		private OperatorCursor(OperatorCursor other, int position)
+		{
+			this.action = other.action;
+			this.vars = other.vars;
+			this.values = other.values;
+			this.position = position;
+		}
+
+		public boolean isFinished()
+		{
+			return this.position >= this.vars.length;
+		}
+
+		public int currentVariable()
+		{
+			return this.vars[this.position];
+		}
+
+		public int currentValue()
+		{
+			return this.values[this.position];
+		}
+
+		public OperatorCursor advance()
+		{
+			return new OperatorCursor(this, this.position + 1);
+		}
+	}
+}
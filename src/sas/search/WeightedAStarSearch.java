@@ -0,0 +1,240 @@
+package sas.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import javaff.search.UnreachableGoalException;
+import sas.data.SASAction;
+import sas.data.SASLiteral;
+import sas.data.SASPlan;
+import sas.data.SASProblem;
+import sas.data.SASState;
+import sas.util.UnreachableSASGoalException;
+
+/**
+ * Weighted A* search, which expands states in order of f = g + w * h, where g is the total cost of the
+ * actions used to reach the state. A weight of 1 gives standard A*, which returns optimal plans when the
+ * heuristic is admissible. Ties in f are broken in favour of the lower h.
+ * <p>
+ * Successors are evaluated when generated, with all new successors of a state evaluated as one batch by
+ * {@link SASHeuristic#getEstimates(List, Collection)}. If a cheaper path to a state is found, its g value and parent
+ * are updated and it is reopened if it has already been expanded. The g and h values and closed flag of each
+ * state are held in primitive arrays indexed by state ID, and the open list is an {@link IndexedHeap} over
+ * state IDs, so a state is never in the open list more than once.
+ *
+ * @author David Pattison
+ *
+ */
+public class WeightedAStarSearch extends SearchEngine
+{
+	private static final double Pending = -1; //the h value of a state generated but not yet evaluated
+
+	private double weight;
+
+	private IndexedHeap open;
+	private double[] gValues, hValues; //indexed by state ID
+	private boolean[] closed;
+	private int reopened;
+	private double planCost;
+
+	/**
+	 * Creates an A* search (weight 1).
+	 * @param problem
+	 * @param heuristic
+	 */
+	public WeightedAStarSearch(SASProblem problem, SASHeuristic heuristic)
+	{
+		this(problem, heuristic, 1);
+	}
+
+	public WeightedAStarSearch(SASProblem problem, SASHeuristic heuristic, double weight)
+	{
+		this(problem, heuristic, problem.getGoalLiterals(), weight);
+	}
+
+	public WeightedAStarSearch(SASProblem problem, SASHeuristic heuristic, Collection<SASLiteral> goals, double weight)
+	{
+		super(problem, heuristic, goals);
+
+		this.setWeight(weight);
+		this.open = new IndexedHeap(1024);
+		this.gValues = new double[1024];
+		this.hValues = new double[1024];
+		this.closed = new boolean[1024];
+		this.reopened = 0;
+		this.planCost = -1;
+	}
+
+	/**
+	 * Sets the weight applied to heuristic estimates.
+	 * @param weight
+	 * @throws IllegalArgumentException Thrown if the weight is negative.
+	 */
+	public void setWeight(double weight)
+	{
+		if (weight < 0)
+			throw new IllegalArgumentException("Weight must be non-negative, found "+weight);
+
+		this.weight = weight;
+	}
+
+	public double getWeight()
+	{
+		return weight;
+	}
+
+	/**
+	 * Returns the number of times an expanded state was reopened because a cheaper path to it was found.
+	 * @return
+	 */
+	public int getReopenedCount()
+	{
+		return reopened;
+	}
+
+	/**
+	 * Returns the cost of the plan found by the last search, or -1 if no plan was found.
+	 * @return
+	 */
+	public double getPlanCost()
+	{
+		return planCost;
+	}
+
+	@Override
+	protected void reset()
+	{
+		super.reset();
+
+		this.open.clear();
+		this.reopened = 0;
+		this.planCost = -1;
+	}
+
+	@Override
+	public SASPlan search() throws UnreachableGoalException
+	{
+		this.reset();
+
+		SASState initial = this.getInitialState();
+		int initialId = this.register(initial, -1, -1);
+		this.ensureStateCapacity(initialId + 1);
+		this.gValues[initialId] = 0;
+		this.closed[initialId] = false;
+		if (this.open(initialId, initial) == false)
+			throw new UnreachableSASGoalException(this.goals, "Initial state is a dead end");
+
+		while (this.open.isEmpty() == false)
+		{
+			int id = this.open.pop();
+			this.closed[id] = true;
+
+			SASState s = this.getState(id);
+			if (this.isGoal(s))
+			{
+				this.planCost = this.gValues[id];
+				return this.extractPlan(id);
+			}
+
+			this.expanded++;
+			double g = this.gValues[id];
+			List<SASState> newStates = new ArrayList<SASState>();
+			List<Integer> newIds = new ArrayList<Integer>();
+			for (SASAction a : this.getApplicableActions(s))
+			{
+				int op = this.operators.getIndex(a);
+				double succG = g + this.operators.getCost(op);
+
+				SASState succ = this.getSuccessor(s, a);
+				int previousSize = this.registry.size();
+				int succId = this.register(succ, id, op);
+				if (succId == previousSize)
+				{
+					this.ensureStateCapacity(succId + 1);
+					this.gValues[succId] = succG;
+					this.hValues[succId] = Pending;
+					this.closed[succId] = false;
+					newStates.add(succ);
+					newIds.add(succId);
+				}
+				else if (this.hValues[succId] == Pending)
+				{
+					//reached again by this expansion, and is opened once evaluated
+					if (succG < this.gValues[succId])
+					{
+						this.gValues[succId] = succG;
+						this.setParent(succId, id, op);
+					}
+				}
+				else if (succG < this.gValues[succId] && this.hValues[succId] != SASHeuristic.Unreachable)
+				{
+					this.gValues[succId] = succG;
+					this.setParent(succId, id, op);
+					if (this.closed[succId])
+					{
+						this.closed[succId] = false;
+						this.reopened++;
+					}
+
+					this.open.push(succId, this.getF(succId), this.hValues[succId]);
+				}
+			}
+
+			//new successors are evaluated as a batch, which the heuristic may do in parallel
+			if (newStates.isEmpty() == false)
+			{
+				double[] estimates = this.evaluate(newStates);
+				for (int i = 0; i < estimates.length; i++)
+					this.open(newIds.get(i), estimates[i]);
+			}
+		}
+
+		throw new UnreachableSASGoalException(this.goals, "Search space exhausted without reaching goal");
+	}
+
+	/**
+	 * Evaluates a newly registered state and adds it to the open list.
+	 * @return False if the state is a dead end, true otherwise.
+	 */
+	private boolean open(int id, SASState s)
+	{
+		return this.open(id, this.evaluate(s));
+	}
+
+	/**
+	 * Adds a newly registered state with the estimate given to the open list.
+	 * @return False if the state is a dead end, true otherwise.
+	 */
+	private boolean open(int id, double h)
+	{
+		this.hValues[id] = h;
+		if (h == SASHeuristic.Unreachable)
+		{
+			this.closed[id] = true;
+			this.deadEnds++;
+			return false;
+		}
+
+		this.open.ensureCapacity(id + 1);
+		this.open.push(id, this.getF(id), h);
+		return true;
+	}
+
+	private double getF(int id)
+	{
+		return this.gValues[id] + this.weight * this.hValues[id];
+	}
+
+	private void ensureStateCapacity(int capacity)
+	{
+		if (capacity <= this.gValues.length)
+			return;
+
+		int length = Math.max(capacity, this.gValues.length * 2);
+		this.gValues = Arrays.copyOf(this.gValues, length);
+		this.hValues = Arrays.copyOf(this.hValues, length);
+		this.closed = Arrays.copyOf(this.closed, length);
+	}
+}
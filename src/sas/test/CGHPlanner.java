@@ -3,18 +3,10 @@ package sas.test;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Random;
-import java.util.Set;
 import java.util.Map.Entry;
 
 import sas.data.DomainTransitionGraph;
 import sas.data.SASAction;
-import sas.data.SASLiteral;
 import sas.data.SASPlan;
 import sas.data.SASProblem;
 import sas.data.SASState;
@@ -22,6 +14,7 @@ import sas.parser.ParseException;
 import sas.parser.SASTranslator;
 import sas.parser.SASplusParser;
 import sas.search.CausalGraphHeuristic;
+import sas.search.EnforcedHillClimbing;
 import javaff.search.UnreachableGoalException;
 
 /**
@@ -32,111 +25,35 @@ import javaff.search.UnreachableGoalException;
 public class CGHPlanner
 {
 	private SASProblem problem;
-	private Random rand;
 	
 	public CGHPlanner(SASProblem problem)
 	{
 		this.problem = problem;
-		this.rand = new Random();
 		
 		for (Entry<Integer, DomainTransitionGraph> dtg : problem.causalGraph.getDTGsMap().entrySet())
 		{
 			dtg.getValue().decompileUniversalTransitions();
 		}
+		problem.causalGraph.invalidateCompiledForm();
 	}
 	
+	/**
+	 * Finds a plan using enforced hill-climbing with helpful actions, guided by the CG heuristic.
+	 * @return
+	 * @throws UnreachableGoalException
+	 * @see EnforcedHillClimbing
+	 */
 	public SASPlan plan() throws UnreachableGoalException
 	{
 		CausalGraphHeuristic heuristic = new CausalGraphHeuristic(this.problem, true);
-		SASState initial = this.problem.getCurrentState();
-
-		Set<SASLiteral> goal = this.problem.getGoalLiterals();
-		
-		SASPlan plan = new SASPlan();
-		double bestH = heuristic.getEstimate(initial, goal);
-//		int bestH = heuristic.getPlan(initial).getPlanLength();
-		HashSet<SASState> closed = new HashSet<SASState>();
-		LinkedList<SASState> open = new LinkedList<SASState>();
-		open.add(initial);
 		
-		while (open.isEmpty() == false)
-		{
-			SASState current = open.remove(); //pop head state
-			closed.add(current);
-			
-			Map<SASAction, SASState> succs = this.getSuccessors(current);
-			Map<SASAction, Integer> hValues = new HashMap<SASAction, Integer>();
-			double bestSeen = bestH; //change to Integer.MAX_VALUE to stop HC
-			ArrayList<SASAction> bestActions = new ArrayList<SASAction>();
-			out: for (Entry<SASAction, SASState> e : succs.entrySet())
-			{
-				for (SASState s : closed)
-					if (s.equals(e.getValue()))
-						continue out;
-				
-				double succH = heuristic.getEstimate(e.getValue(), goal);
-				if(succH == 0)
-					return plan;
-
-				if (succH < bestSeen)
-				{
-					bestSeen = succH;
-					bestActions.clear();
-					bestActions.add(e.getKey());
-				}
-				else if (succH == bestSeen)
-				{
-					bestActions.add(e.getKey());
-				}
-			}
-			
-			if (bestActions.size() == 0)
-				throw new NullPointerException("Planning failed: Dead end");
-			else if (bestActions.size() == 1)
-			{
-				SASAction best = bestActions.iterator().next();
-				plan.addAction(best);
-				
-				SASState next = current.apply(best);
-				System.out.println("Chose "+best);
-				
-				open.add(next);			
-			}
-			else
-			{
-//				System.out.println("Multiple best actions. Selecting at random");
-				SASAction best = bestActions.get(this.rand.nextInt(bestActions.size()));
-				plan.addAction(best);
-				
-				SASState next = ((SASState) current.clone()).apply(best);
-				System.out.println("Chose "+best);
-				
-				open.add(next);	
-			}
-			
-			bestH = bestSeen;
-			System.out.println("h(G) = "+bestSeen);
-		}
+		EnforcedHillClimbing ehc = new EnforcedHillClimbing(this.problem, heuristic);
+		SASPlan plan = ehc.search();
+		System.out.println(ehc);
 		
 		return plan;
 	}
 	
-	private Map<SASAction, SASState> getSuccessors(SASState s)
-	{
-		Map<SASAction, SASState> succs = new HashMap<SASAction, SASState>();
-		for (SASAction a : this.problem.actions.values())
-		{
-			if (a.isApplicable(s))
-			{
-				SASState successor = s.apply(a);
-				succs.put(a, successor);
-			}
-			
-		}
-		
-		return succs;
-	}
-	
 	private boolean goalMet(SASState s)
 	{
 		for (Entry<Integer, Integer> g : this.problem.goal.entrySet())
@@ -270,24 +270,30 @@ public class CachedStandardGraph<V, E> extends StandardGraph<V, E>
 	{
 		if (this.outEdgeSets.containsKey(sourceVertex))
 		{
-			this.outEdgeSets.get(sourceVertex).add(edge);
+			this.outEdgeSets.get(sourceVertex).remove(edge);
 		}
 		
 		if (this.inEdgeSets.containsKey(targetVertex))
 		{
-			this.inEdgeSets.get(targetVertex).add(edge);
+			this.inEdgeSets.get(targetVertex).remove(edge);
 		}
 		
 
-		//vertex lookups
+		//vertex lookups -- only removed if no other edge joins the vertices
+		for (E e : this.outgoingEdgesOf(sourceVertex))
+		{
+			if (super.getEdgeTarget(e).equals(targetVertex))
+				return;
+		}
+		
 		if (this.outVertexSets.containsKey(sourceVertex))
 		{
-			this.outVertexSets.get(sourceVertex).add(targetVertex);
+			this.outVertexSets.get(sourceVertex).remove(targetVertex);
 		}
 		
 		if (this.inVertexSets.containsKey(targetVertex))
 		{
-			this.inVertexSets.get(targetVertex).add(sourceVertex);
+			this.inVertexSets.get(targetVertex).remove(sourceVertex);
 		}
 	}
 	
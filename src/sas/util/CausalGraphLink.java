@@ -1,5 +1,7 @@
 package sas.util;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Stub class
  * @author David Pattison
@@ -7,7 +9,7 @@ package sas.util;
  */
 public class CausalGraphLink
 {
-	private static int counter = 1;
+	private static final AtomicInteger counter = new AtomicInteger(1); //shared by concurrent parses
 	
 	private int id; //graph package wont allow the same edge multiple times, so this is a hack to make edges unique
 	private float weight;
@@ -20,7 +22,7 @@ public class CausalGraphLink
 	
 	protected static int getId()
 	{
-		return CausalGraphLink.counter++;
+		return CausalGraphLink.counter.getAndIncrement();
 	}
 	
 	public CausalGraphLink(float weight)